@@ -0,0 +1,62 @@
+package io.github.xtman.ssh.client.benchmarks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.core.CoreModuleProperties;
+import org.apache.sshd.scp.server.ScpCommandFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+
+import io.github.xtman.ssh.client.Connection;
+import io.github.xtman.ssh.client.ConnectionBuilder;
+
+/**
+ * SSH server (scp and sftp) listening on loopback, serving the specified root
+ * directory.
+ */
+public class EmbeddedSshServer implements Closeable {
+
+    public static final String HOST = "127.0.0.1";
+    public static final String USERNAME = "bench";
+    public static final String PASSWORD = "bench";
+
+    private SshServer _sshd;
+
+    public EmbeddedSshServer(Path rootDir) throws IOException {
+        _sshd = SshServer.setUpDefaultServer();
+        _sshd.setHost(HOST);
+        // any free port
+        _sshd.setPort(0);
+        // in memory host key. JSch 0.1.54 fails to verify the default EC key.
+        SimpleGeneratorHostKeyProvider hostKeyProvider = new SimpleGeneratorHostKeyProvider();
+        hostKeyProvider.setAlgorithm("RSA");
+        _sshd.setKeyPairProvider(hostKeyProvider);
+        _sshd.setPasswordAuthenticator((username, password, session) -> USERNAME.equals(username)
+                && PASSWORD.equals(password));
+        _sshd.setFileSystemFactory(new VirtualFileSystemFactory(rootDir));
+        _sshd.setCommandFactory(new ScpCommandFactory.Builder().build());
+        _sshd.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+        // otherwise the acknowledgements of the small messages are delayed.
+        CoreModuleProperties.TCP_NODELAY.set(_sshd, true);
+        _sshd.start();
+    }
+
+    public int port() {
+        return _sshd.getPort();
+    }
+
+    public Connection connect() throws Throwable {
+        return new ConnectionBuilder().setServer(HOST, port(), null).setUserCredentials(USERNAME, PASSWORD).build();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _sshd.stop(true);
+    }
+
+}
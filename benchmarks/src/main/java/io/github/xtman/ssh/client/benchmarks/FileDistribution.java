@@ -0,0 +1,73 @@
+package io.github.xtman.ssh.client.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Sets of files to transfer.
+ */
+public enum FileDistribution {
+
+    /**
+     * Many tiny files: the per file (protocol round trip) cost dominates.
+     */
+    TINY_MANY(2000, 4 * 1024),
+
+    /**
+     * Few huge files: the throughput of the data path dominates.
+     */
+    HUGE_FEW(4, 64 * 1024 * 1024);
+
+    public static final int FILES_PER_DIRECTORY = 100;
+
+    private final int _files;
+    private final int _fileSize;
+
+    FileDistribution(int files, int fileSize) {
+        _files = files;
+        _fileSize = fileSize;
+    }
+
+    public int files() {
+        return _files;
+    }
+
+    public long totalBytes() {
+        return (long) _files * _fileSize;
+    }
+
+    /**
+     * Creates the files (with random content) in the directory. Returns the
+     * relative paths of the files.
+     */
+    public List<String> generate(Path dir) throws IOException {
+        Random random = new Random(_files);
+        byte[] buffer = new byte[Math.min(_fileSize, 1024 * 1024)];
+        List<String> paths = new ArrayList<String>(_files);
+        for (int i = 0; i < _files; i++) {
+            String path = String.format("d%03d/f%05d.bin", i / FILES_PER_DIRECTORY, i);
+            Path file = dir.resolve(path);
+            Files.createDirectories(file.getParent());
+            OutputStream out = Files.newOutputStream(file);
+            try {
+                long remaining = _fileSize;
+                while (remaining > 0) {
+                    random.nextBytes(buffer);
+                    int n = (int) Math.min(buffer.length, remaining);
+                    out.write(buffer, 0, n);
+                    remaining -= n;
+                }
+            } finally {
+                out.close();
+            }
+            paths.add(path);
+        }
+        return paths;
+    }
+
+}
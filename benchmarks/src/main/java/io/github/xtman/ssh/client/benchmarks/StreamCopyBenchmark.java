@@ -0,0 +1,109 @@
+package io.github.xtman.ssh.client.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.github.xtman.io.util.StreamUtils;
+
+/**
+ * {@link StreamUtils#copy(InputStream, long, OutputStream)} from memory and
+ * from a file (as the transfer clients read local files) to a discarding
+ * output stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StreamCopyBenchmark {
+
+    @Param({ "4096", "1048576", "67108864" })
+    public int size;
+
+    private byte[] _bytes;
+    private File _file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        _bytes = new byte[size];
+        new Random(size).nextBytes(_bytes);
+        _file = File.createTempFile("stream-copy-bench", ".bin");
+        Files.write(_file.toPath(), _bytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _file.delete();
+    }
+
+    @Benchmark
+    public void copyFromMemory(TransferCounters counters, Blackhole bh) throws Throwable {
+        copy(new ByteArrayInputStream(_bytes), bh);
+        counters.add(1, size);
+    }
+
+    @Benchmark
+    public void copyFromFile(TransferCounters counters, Blackhole bh) throws Throwable {
+        copy(new FileInputStream(_file), bh);
+        counters.add(1, size);
+    }
+
+    @Benchmark
+    public void copyFromBufferedFile(TransferCounters counters, Blackhole bh) throws Throwable {
+        copy(new BufferedInputStream(new FileInputStream(_file)), bh);
+        counters.add(1, size);
+    }
+
+    private void copy(InputStream in, Blackhole bh) throws Throwable {
+        try {
+            StreamUtils.copy(in, size, new BlackholeOutputStream(bh));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static class BlackholeOutputStream extends OutputStream {
+
+        private Blackhole _bh;
+
+        BlackholeOutputStream(Blackhole bh) {
+            _bh = bh;
+        }
+
+        @Override
+        public void write(int b) {
+            _bh.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            _bh.consume(b);
+            _bh.consume(len);
+        }
+    }
+
+}
@@ -0,0 +1,232 @@
+package io.github.xtman.ssh.client.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.xtman.ssh.client.Connection;
+import io.github.xtman.ssh.client.ParallelTransferClient;
+import io.github.xtman.ssh.client.ScpClient;
+import io.github.xtman.ssh.client.SftpClient;
+import io.github.xtman.ssh.client.TransferClient;
+
+/**
+ * Transfers a set of files (see {@link FileDistribution}) to/from the
+ * embedded SSH server. Each operation transfers the whole set. Besides ops/s,
+ * the "megabytes" and "files" secondary results give MB/s and files/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TransferBenchmark {
+
+    public static final String SRC_DIR = "src";
+    public static final String DST_DIR = "dst";
+
+    @Param({ "TINY_MANY", "HUGE_FEW" })
+    public FileDistribution distribution;
+
+    /**
+     * Pipelines the scp transfer: one round trip per file instead of two.
+     */
+    @Param({ "false" })
+    public boolean scpPipelined;
+
+    /**
+     * Number of channels of the parallel sftp benchmark.
+     */
+    @Param({ "4" })
+    public int channels;
+
+    private Path _serverRoot;
+    private Path _localSrc;
+    private Path _localDst;
+    private List<String> _paths;
+    private EmbeddedSshServer _server;
+    private Connection _cxn;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        _serverRoot = Files.createTempDirectory("ssh-bench-server");
+        _localSrc = Files.createTempDirectory("ssh-bench-src");
+        _localDst = Files.createTempDirectory("ssh-bench-dst");
+        _paths = distribution.generate(_localSrc);
+        // the source of the get benchmarks
+        copyDirectory(_localSrc, _serverRoot.resolve(SRC_DIR));
+        Files.createDirectories(_serverRoot.resolve(DST_DIR));
+        _server = new EmbeddedSshServer(_serverRoot);
+        _cxn = _server.connect();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        try {
+            _cxn.close();
+        } finally {
+            try {
+                _server.close();
+            } finally {
+                deleteDirectory(_serverRoot);
+                deleteDirectory(_localSrc);
+                deleteDirectory(_localDst);
+            }
+        }
+    }
+
+    @Benchmark
+    public void scpPut(TransferCounters counters) throws Throwable {
+        ScpClient scp = _cxn.createScpClient(DST_DIR);
+        try {
+            scp.setPipelined(scpPipelined);
+            putFiles(scp);
+        } finally {
+            scp.close();
+        }
+        counters.add(distribution.files(), distribution.totalBytes());
+    }
+
+    @Benchmark
+    public void sftpPut(TransferCounters counters) throws Throwable {
+        SftpClient sftp = _cxn.createSftpClient(DST_DIR);
+        try {
+            putFiles(sftp);
+        } finally {
+            sftp.close();
+        }
+        counters.add(distribution.files(), distribution.totalBytes());
+    }
+
+    @Benchmark
+    public void scpPutDirectory(TransferCounters counters) throws Throwable {
+        ScpClient scp = _cxn.createScpClient(DST_DIR);
+        try {
+            scp.setPipelined(scpPipelined);
+            scp.putDirectory(_localSrc, false);
+        } finally {
+            scp.close();
+        }
+        counters.add(distribution.files(), distribution.totalBytes());
+    }
+
+    @Benchmark
+    public void sftpPutDirectory(TransferCounters counters) throws Throwable {
+        SftpClient sftp = _cxn.createSftpClient(DST_DIR);
+        try {
+            sftp.putDirectory(_localSrc, false);
+        } finally {
+            sftp.close();
+        }
+        counters.add(distribution.files(), distribution.totalBytes());
+    }
+
+    @Benchmark
+    public void parallelSftpPutDirectory(TransferCounters counters) throws Throwable {
+        SftpClient control = _cxn.createSftpClient(DST_DIR);
+        try {
+            List<TransferClient> workers = new ArrayList<TransferClient>(channels);
+            for (int i = 0; i < channels; i++) {
+                workers.add(_cxn.createSftpClient(DST_DIR));
+            }
+            ParallelTransferClient parallel = new ParallelTransferClient(control, workers, channels);
+            try {
+                parallel.putDirectory(_localSrc, false);
+            } finally {
+                parallel.close();
+            }
+            if (!parallel.pollFailures().isEmpty()) {
+                throw parallel.pollFailures().get(0);
+            }
+        } finally {
+            control.close();
+        }
+        counters.add(distribution.files(), distribution.totalBytes());
+    }
+
+    @Benchmark
+    public void scpGet(TransferCounters counters) throws Throwable {
+        ScpClient scp = _cxn.createScpClient();
+        try {
+            scp.get(SRC_DIR, _localDst.toFile());
+        } finally {
+            scp.close();
+        }
+        counters.add(distribution.files(), distribution.totalBytes());
+    }
+
+    @Benchmark
+    public void sftpGet(TransferCounters counters) throws Throwable {
+        SftpClient sftp = _cxn.createSftpClient();
+        try {
+            sftp.get(SRC_DIR, _localDst.toFile());
+        } finally {
+            sftp.close();
+        }
+        counters.add(distribution.files(), distribution.totalBytes());
+    }
+
+    private void putFiles(TransferClient client) throws Throwable {
+        for (String path : _paths) {
+            client.put(new File(_localSrc.toFile(), path), path);
+        }
+    }
+
+    static void copyDirectory(final Path src, final Path dst) throws IOException {
+        Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(dst.resolve(src.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.copy(file, dst.resolve(src.relativize(file)));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    static void deleteDirectory(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException e) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,31 @@
+package io.github.xtman.ssh.client.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary results, reported by JMH as rates: MB/s and files/s.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class TransferCounters {
+
+    public double megabytes;
+
+    public long files;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        megabytes = 0;
+        files = 0;
+    }
+
+    public void add(long nbFiles, long nbBytes) {
+        files += nbFiles;
+        megabytes += nbBytes / (1024.0 * 1024.0);
+    }
+
+}
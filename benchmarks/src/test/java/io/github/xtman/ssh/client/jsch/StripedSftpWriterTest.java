@@ -0,0 +1,138 @@
+package io.github.xtman.ssh.client.jsch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.github.xtman.ssh.client.TransferClient;
+import io.github.xtman.ssh.client.benchmarks.EmbeddedSshServer;
+
+/**
+ * Runs against the embedded SSH server of the benchmarks (Apache MINA SSHD),
+ * which does not allow remote commands.
+ */
+public class StripedSftpWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EmbeddedSshServer _server;
+    private JschConnection _cxn;
+    private List<JschSftpClient> _workers;
+
+    @Before
+    public void setUp() throws Throwable {
+        _server = new EmbeddedSshServer(folder.getRoot().toPath());
+        _cxn = (JschConnection) _server.connect();
+        _workers = new ArrayList<JschSftpClient>();
+    }
+
+    @After
+    public void tearDown() throws Throwable {
+        try {
+            for (JschSftpClient worker : _workers) {
+                worker.close();
+            }
+            _cxn.close();
+        } finally {
+            _server.close();
+        }
+    }
+
+    private JschSftpClient createSftpClient() throws Throwable {
+        JschSftpClient sftp = _cxn.createSftpClient("/", "UTF-8", TransferClient.DEFAULT_DIRECTORY_MODE,
+                TransferClient.DEFAULT_FILE_MODE, false, false);
+        _workers.add(sftp);
+        return sftp;
+    }
+
+    private static byte[] content(int length) {
+        byte[] b = new byte[length];
+        new Random(length).nextBytes(b);
+        return b;
+    }
+
+    private static String sha256(byte[] b) throws Throwable {
+        StringBuilder sb = new StringBuilder();
+        for (byte d : MessageDigest.getInstance("SHA-256").digest(b)) {
+            sb.append(String.format("%02x", d));
+        }
+        return sb.toString();
+    }
+
+    /*
+     * the chunks are written in place, at their offsets: the file is neither
+     * truncated nor appended to.
+     */
+    @Test
+    public void testOffsetWriteMode() throws Throwable {
+        File f = folder.newFile("f.txt");
+        Files.write(f.toPath(), "aaaaaaaaaa".getBytes("UTF-8"));
+        JschSftpClient sftp = createSftpClient();
+
+        OutputStream os = sftp.channel.put("f.txt", null, StripedSftpWriter.OFFSET_WRITE_MODE, 4);
+        os.write("bb".getBytes("UTF-8"));
+        os.close();
+        assertEquals("aaaabbaaaa", new String(Files.readAllBytes(f.toPath()), "UTF-8"));
+
+        // past the end of the file.
+        os = sftp.channel.put("f.txt", null, StripedSftpWriter.OFFSET_WRITE_MODE, 12);
+        os.write("cc".getBytes("UTF-8"));
+        os.close();
+        assertArrayEquals("aaaabbaaaa\0\0cc".getBytes("UTF-8"), Files.readAllBytes(f.toPath()));
+    }
+
+    @Test
+    public void testWrite() throws Throwable {
+        // not a multiple of the chunk size.
+        byte[] b = content(1024 * 1024 + 123);
+        File f = folder.newFile("f.bin");
+        List<JschSftpClient> workers = Arrays.asList(createSftpClient(), createSftpClient(), createSftpClient());
+
+        String sha256 = new StripedSftpWriter(workers, 64 * 1024, true).write(new ByteArrayInputStream(b), b.length,
+                "f.bin");
+        assertArrayEquals(b, Files.readAllBytes(f.toPath()));
+        assertEquals(sha256(b), sha256);
+    }
+
+    @Test
+    public void testWriteWithoutDigest() throws Throwable {
+        byte[] b = content(300 * 1024);
+        File f = folder.newFile("f.bin");
+        List<JschSftpClient> workers = Arrays.asList(createSftpClient(), createSftpClient());
+
+        assertNull(new StripedSftpWriter(workers, 64 * 1024, false).write(new ByteArrayInputStream(b), b.length,
+                "f.bin"));
+        assertArrayEquals(b, Files.readAllBytes(f.toPath()));
+    }
+
+    /*
+     * the checksum is skipped if the server does not allow remote commands.
+     */
+    @Test
+    public void testStripedPutWithoutRemoteCommands() throws Throwable {
+        byte[] b = content(512 * 1024);
+        JschSftpClient sftp = createSftpClient();
+        sftp.setStriping(3, 256 * 1024, true);
+
+        sftp.put(new ByteArrayInputStream(b), b.length, "g.bin");
+        assertArrayEquals(b, Files.readAllBytes(new File(folder.getRoot(), "g.bin").toPath()));
+    }
+
+}
@@ -0,0 +1,75 @@
+package daris.ssh.plugin;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import io.github.xtman.util.FileNameUtils;
+
+/**
+ * Decides whether the transport compression is worth it for the content: the
+ * content already compressed (archives, compressed images, audio and video)
+ * does not shrink further, so compressing it only costs CPU.
+ */
+public class CompressionPolicy {
+
+    private static final Set<String> COMPRESSED_MIME_TYPES = new HashSet<String>(Arrays.asList("application/zip",
+            "application/x-zip-compressed", "application/gzip", "application/x-gzip", "application/x-bzip2",
+            "application/x-xz", "application/x-7z-compressed", "application/x-rar-compressed",
+            "application/arc-archive", "application/x-compressed-tar", "image/jpeg", "image/jp2", "image/png",
+            "image/gif", "image/webp", "application/pdf"));
+
+    private static final Set<String> COMPRESSED_MIME_TYPE_PREFIXES = new HashSet<String>(
+            Arrays.asList("video/", "audio/"));
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<String>(Arrays.asList("zip", "gz", "tgz",
+            "bz2", "xz", "7z", "rar", "aar", "jpg", "jpeg", "jp2", "png", "gif", "webp", "pdf", "mp3", "mp4", "mov",
+            "avi", "mkv"));
+
+    /**
+     * Checks if the content is already compressed, by its MIME type or, if
+     * the MIME type is not conclusive, by its file extension.
+     *
+     * @param mimeType
+     *            may be null.
+     * @param path
+     *            the file path. May be null.
+     * @return
+     */
+    public static boolean isCompressed(String mimeType, String path) {
+        if (mimeType != null) {
+            String type = mimeType.toLowerCase();
+            if (COMPRESSED_MIME_TYPES.contains(type)) {
+                return true;
+            }
+            for (String prefix : COMPRESSED_MIME_TYPE_PREFIXES) {
+                if (type.startsWith(prefix)) {
+                    return true;
+                }
+            }
+        }
+        if (path != null) {
+            String ext = FileNameUtils.getFileExtension(path);
+            return ext != null && COMPRESSED_EXTENSIONS.contains(ext.toLowerCase());
+        }
+        return false;
+    }
+
+    /**
+     * The compression level to use for the content.
+     *
+     * @param level
+     *            the configured level (0 for none).
+     * @param mimeType
+     * @param path
+     * @return the configured level, or 0 if the content is already
+     *         compressed.
+     */
+    public static int compressionLevel(int level, String mimeType, String path) {
+        if (level <= 0 || isCompressed(mimeType, path)) {
+            return 0;
+        }
+        return level;
+    }
+
+}
@@ -8,7 +8,9 @@ import arc.mf.plugin.ConfigurationResolver;
 import arc.mf.plugin.DataSinkRegistry;
 import arc.mf.plugin.PluginModule;
 import arc.mf.plugin.PluginService;
+import daris.ssh.plugin.services.SvcConnectionPoolDescribe;
 import daris.ssh.plugin.services.SvcHostKeyScan;
+import daris.ssh.plugin.services.SvcMetricsDescribe;
 import daris.ssh.plugin.services.SvcScpGet;
 import daris.ssh.plugin.services.SvcScpPut;
 import daris.ssh.plugin.services.SvcSftpGet;
@@ -30,6 +32,8 @@ public class DaRISSSHPluginModule implements PluginModule {
         _services.add(new SvcSftpPut());
         _services.add(new SvcScpGet());
         _services.add(new SvcScpPut());
+        _services.add(new SvcConnectionPoolDescribe());
+        _services.add(new SvcMetricsDescribe());
     }
 
     public String description() {
@@ -62,6 +66,8 @@ public class DaRISSSHPluginModule implements PluginModule {
         } catch (Throwable e) {
             e.printStackTrace(System.out);
             throw e;
+        } finally {
+            SshConnectionPool.drain();
         }
     }
 
@@ -0,0 +1,145 @@
+package daris.ssh.plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import arc.archive.ArchiveInput;
+import io.github.xtman.ssh.client.ParallelTransferClient;
+import io.github.xtman.ssh.client.TransferClient;
+import io.github.xtman.util.PathUtils;
+
+/**
+ * Extracts an archive to the remote server over multiple channels: the calling
+ * (decoder) thread reads the entries into memory buffers and submits them to
+ * the worker channels of the parallel transfer client, so that the small
+ * entries are uploaded concurrently.
+ *
+ * The total size of the buffered entries is capped: the decoder blocks when
+ * the cap is reached until the workers have sent enough entries. An entry
+ * larger than a quarter of the cap (or of unknown size) is not buffered; it is
+ * streamed by the control client from the decoder thread.
+ *
+ * The failures of the buffered entries are collected by the parallel transfer
+ * client.
+ */
+public class ParallelArchiveExtractor {
+
+    public static final int DEFAULT_MAX_BUFFER_SIZE_MB = 64;
+
+    public static final int MAX_BUFFER_SIZE_MB = 1024;
+
+    private ParallelTransferClient _parallel;
+    private long _maxBufferSize;
+    private long _maxEntrySize;
+    private long _buffered;
+
+    /**
+     *
+     * @param parallel
+     *            the parallel transfer client. It is not closed.
+     * @param maxBufferSize
+     *            the maximum number of bytes buffered at any time.
+     */
+    public ParallelArchiveExtractor(ParallelTransferClient parallel, long maxBufferSize) {
+        _parallel = parallel;
+        _maxBufferSize = Math.max(1, maxBufferSize);
+        _maxEntrySize = Math.min(Math.max(1, _maxBufferSize / 4), Integer.MAX_VALUE - 8);
+        _buffered = 0;
+    }
+
+    /**
+     * Extracts the archive into the remote directory. The archive input is
+     * closed. Returns when all the entries have been read: the buffered ones
+     * may still be in progress.
+     *
+     * @param ai
+     * @param dstDir
+     *            the remote directory.
+     * @throws Throwable
+     */
+    public void extract(ArchiveInput ai, String dstDir) throws Throwable {
+        try {
+            ArchiveInput.Entry e;
+            while ((e = ai.next()) != null) {
+                try {
+                    String name = PathUtils.join(dstDir, e.name());
+                    if (e.isDirectory()) {
+                        _parallel.mkdirs(name);
+                    } else if (e.size() >= 0 && e.size() <= _maxEntrySize) {
+                        submit(name, e.stream(), (int) e.size());
+                    } else {
+                        _parallel.controlClient().put(e.stream(), e.size(), name);
+                    }
+                } finally {
+                    ai.closeEntry();
+                }
+            }
+        } finally {
+            ai.close();
+        }
+    }
+
+    private void submit(String dstPath, InputStream in, int size) throws Throwable {
+        acquire(size);
+        final byte[] content;
+        try {
+            content = read(in, size, dstPath);
+        } catch (Throwable e) {
+            release(size);
+            throw e;
+        }
+        // discarded (releasing the buffer) if it cannot be queued.
+        _parallel.submit(new ParallelTransferClient.Task(dstPath) {
+
+            private AtomicBoolean _released = new AtomicBoolean(false);
+
+            @Override
+            public void execute(TransferClient client) throws Throwable {
+                try {
+                    client.put(new ByteArrayInputStream(content), content.length, dstPath());
+                } finally {
+                    discard();
+                }
+            }
+
+            @Override
+            public void discard() {
+                if (_released.compareAndSet(false, true)) {
+                    release(content.length);
+                }
+            }
+        });
+    }
+
+    private static byte[] read(InputStream in, int size, String dstPath) throws IOException {
+        byte[] b = new byte[size];
+        int off = 0;
+        while (off < size) {
+            int n = in.read(b, off, size - off);
+            if (n < 0) {
+                throw new IOException("Unexpected end of archive entry: '" + dstPath + "'. Read " + off + " of "
+                        + size + " bytes.");
+            }
+            off += n;
+        }
+        return b;
+    }
+
+    /**
+     * Blocks until the buffer can be allocated within the cap.
+     */
+    private synchronized void acquire(long size) throws InterruptedException {
+        while (_buffered > 0 && _buffered + size > _maxBufferSize) {
+            wait();
+        }
+        _buffered += size;
+    }
+
+    private synchronized void release(long size) {
+        _buffered -= size;
+        notifyAll();
+    }
+
+}
@@ -0,0 +1,21 @@
+package daris.ssh.plugin;
+
+import io.github.xtman.ssh.client.ConnectionPool;
+
+/**
+ * The plugin wide pool of SSH connections, shared by the sinks and the
+ * services.
+ */
+public class SshConnectionPool {
+
+    private static ConnectionPool _pool = new ConnectionPool();
+
+    public static ConnectionPool get() {
+        return _pool;
+    }
+
+    public static void drain() {
+        _pool.drain();
+    }
+
+}
@@ -2,10 +2,12 @@ package daris.ssh.plugin.services;
 
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.List;
 
 import arc.mf.plugin.PluginService;
 import arc.mf.plugin.PluginTask;
 import arc.mf.plugin.ServiceExecutor;
+import arc.mf.plugin.dtype.IntegerType;
 import arc.mf.plugin.dtype.StringType;
 import arc.mf.plugin.dtype.XmlDocType;
 import arc.utils.Task.ExAborted;
@@ -36,6 +38,11 @@ public abstract class AbstractSshGetService extends AbstractSshService {
         worm.setIgnoreDescendants(true);
         this.defn.add(worm);
 
+        this.defn.add(new Interface.Element("ingest-threads",
+                new IntegerType(0, AssetIngestor.MAX_THREADS),
+                "Number of threads creating the assets, concurrently with the transfer of the next files. Set to 0 to create each asset while it is being transferred. Not supported by the concurrent (multi-channel) get, where each channel creates the assets of its files. Defaults to "
+                        + AssetIngestor.DEFAULT_THREADS + ", or 0 for the concurrent get.",
+                0, 1));
     }
 
     @Override
@@ -53,6 +60,36 @@ public abstract class AbstractSshGetService extends AbstractSshService {
         }
         final boolean readOnly = args.booleanValue("read-only");
         final XmlDoc.Element worm = args.element("worm");
+        final NamespaceCache namespaces = new NamespaceCache(executor(), namespace);
+        if (concurrentGet(args)) {
+            if (args.intValue("ingest-threads", 0) > 0) {
+                throw new IllegalArgumentException(
+                        "ingest-threads is not supported by the concurrent (multi-channel) get.");
+            }
+            execute(cxn, paths, namespace, createConcurrentGetHandler(executor(), namespaces, namespace, args), args,
+                    inputs, outputs, w, onError);
+            return;
+        }
+        int ingestThreads = args.intValue("ingest-threads", AssetIngestor.DEFAULT_THREADS);
+        if (ingestThreads > 0) {
+            AssetIngestor ingestor = new AssetIngestor(executor(), namespaces, namespace, readOnly, worm,
+                    ingestThreads, onError.retry(), onError.stopOnError());
+            boolean completed = false;
+            try {
+                execute(cxn, paths, namespace, ingestor, args, inputs, outputs, w, onError);
+                completed = true;
+            } finally {
+                ingestor.close(!completed);
+            }
+            List<AssetIngestor.IngestException> failures = ingestor.pollFailures();
+            if (!failures.isEmpty() && onError.stopOnError()) {
+                throw failures.get(0);
+            }
+            for (AssetIngestor.IngestException e : failures) {
+                w.add("failed", new String[] { "error", e.getMessage() }, e.path());
+            }
+            return;
+        }
         GetHandler gh = new GetHandler() {
 
             @Override
@@ -69,7 +106,7 @@ public abstract class AbstractSshGetService extends AbstractSshService {
             public void getDirectory(FileAttrs dir) throws Throwable {
                 PluginTask.checkIfThreadTaskAborted();
                 PluginTask.setCurrentThreadActivity("getting remote directory: " + dir.path());
-                createAssetNamespace(executor(), dir, namespace);
+                createAssetNamespace(namespaces, dir, namespace);
                 PluginTask.clearCurrentThreadActivity();
                 PluginTask.checkIfThreadTaskAborted();
             }
@@ -78,12 +115,57 @@ public abstract class AbstractSshGetService extends AbstractSshService {
         execute(cxn, paths, namespace, gh, args, inputs, outputs, w, onError);
     }
 
+    /**
+     * If the files are got concurrently (over multiple channels), by threads
+     * other than the service thread. Then the handler passed to the transfer
+     * is the concurrent one (see createConcurrentGetHandler), and there is no
+     * ingest thread.
+     *
+     * @param args
+     * @return
+     * @throws Throwable
+     */
+    protected boolean concurrentGet(XmlDoc.Element args) throws Throwable {
+        return false;
+    }
+
+    /**
+     * Creates the handler for the concurrent (multi-channel) get. It is called
+     * by the transfer threads, which are not service task threads: the abort
+     * and the progress are checked and reported by the service thread.
+     *
+     * @param executor
+     * @param namespaces
+     *            the (thread safe) cache of the existing namespaces.
+     * @param namespace
+     * @param args
+     * @return
+     * @throws Throwable
+     */
+    static GetHandler createConcurrentGetHandler(final ServiceExecutor executor, final NamespaceCache namespaces,
+            final String namespace, XmlDoc.Element args) throws Throwable {
+        final boolean readOnly = args.booleanValue("read-only", false);
+        final XmlDoc.Element worm = args.element("worm");
+        return new GetHandler() {
+
+            @Override
+            public void getFile(FileAttrs file, InputStream in) throws Throwable {
+                createOrUpdateAsset(executor, file, in, namespace, readOnly, worm);
+            }
+
+            @Override
+            public void getDirectory(FileAttrs dir) throws Throwable {
+                createAssetNamespace(namespaces, dir, namespace);
+            }
+        };
+    }
+
     protected void get(TransferClient client, String path, GetHandler gh, int retry, boolean stopOnError, XmlWriter w)
             throws Throwable {
         try {
             client.get(path, gh);
         } catch (Throwable e) {
-            if (e instanceof ExAborted || retry <= 0) {
+            if (e instanceof ExAborted || e instanceof AssetIngestor.IngestException || retry <= 0) {
                 if (stopOnError) {
                     throw e;
                 } else {
@@ -135,13 +217,8 @@ public abstract class AbstractSshGetService extends AbstractSshService {
         }
     }
 
-    static void createAssetNamespace(ServiceExecutor executor, FileAttrs dir, String namespace) throws Throwable {
-        String ns = PathUtils.join(namespace, dir.path());
-        if (!assetNamespaceExists(executor, ns)) {
-            XmlDocMaker dm = new XmlDocMaker("args");
-            dm.add("namespace", new String[] { "all", "true" }, ns);
-            executor.execute("asset.namespace.create", dm.root());
-        }
+    static void createAssetNamespace(NamespaceCache namespaces, FileAttrs dir, String namespace) throws Throwable {
+        namespaces.create(PathUtils.join(namespace, dir.path()));
     }
 
     static boolean assetNamespaceExists(ServiceExecutor executor, String namespace) throws Throwable {
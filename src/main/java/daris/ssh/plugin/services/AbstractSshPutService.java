@@ -6,7 +6,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
-import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -18,6 +18,7 @@ import arc.mf.plugin.ServiceExecutor;
 import arc.mf.plugin.dtype.AssetType;
 import arc.mf.plugin.dtype.BooleanType;
 import arc.mf.plugin.dtype.CiteableIdType;
+import arc.mf.plugin.dtype.IntegerType;
 import arc.mf.plugin.dtype.StringType;
 import arc.mf.plugin.dtype.UrlType;
 import arc.streams.SizedInputStream;
@@ -26,8 +27,15 @@ import arc.xml.XmlDoc;
 import arc.xml.XmlDoc.Element;
 import arc.xml.XmlDocMaker;
 import arc.xml.XmlWriter;
+import daris.ssh.plugin.ParallelArchiveExtractor;
+import io.github.xtman.io.util.ChecksumInputStream;
 import io.github.xtman.ssh.client.Connection;
+import io.github.xtman.ssh.client.ParallelTransferClient;
+import io.github.xtman.ssh.client.ScpClient;
+import io.github.xtman.ssh.client.SftpClient;
+import io.github.xtman.ssh.client.SshMetrics;
 import io.github.xtman.ssh.client.TransferClient;
+import io.github.xtman.ssh.client.TransferException;
 import io.github.xtman.util.FileNameUtils;
 import io.github.xtman.util.PathUtils;
 
@@ -35,6 +43,10 @@ public abstract class AbstractSshPutService extends AbstractSshService {
 
     public static final int PAGE_SIZE = 10000;
 
+    public static final int MAX_CHANNELS = 32;
+
+    public static final int MAX_PREFETCH = 256;
+
     protected AbstractSshPutService() {
         /*
          * src: namespace
@@ -81,14 +93,65 @@ public abstract class AbstractSshPutService extends AbstractSshService {
         /*
          * unarchive .zip/.aar files?
          */
-        this.defn.add(new Interface.Element("unarchive", BooleanType.DEFAULT,
-                "Decompress if it is an archive file (e.g. .zip, .aar). Defaults to false", 0, 1));
+        Interface.Element unarchive = new Interface.Element("unarchive", BooleanType.DEFAULT,
+                "Decompress if it is an archive file (e.g. .zip, .aar). Defaults to false", 0, 1);
+        unarchive.add(new Interface.Attribute("buffer-size",
+                new IntegerType(1, ParallelArchiveExtractor.MAX_BUFFER_SIZE_MB),
+                "Maximum size (in MB) of the archive entries read in memory, waiting to be sent by the parallel channels (if channels is greater than 1). Larger entries are streamed one at a time. Defaults to "
+                        + ParallelArchiveExtractor.DEFAULT_MAX_BUFFER_SIZE_MB + ".",
+                0));
+        this.defn.add(unarchive);
 
         /*
          * path expression: only for assets
          */
         this.defn.add(new Interface.Element("expr", StringType.DEFAULT, "Expression to generate output path.", 0, 1));
 
+        /*
+         * number of channels to transfer the files in parallel
+         */
+        this.defn.add(new Interface.Element("channels", new IntegerType(1, MAX_CHANNELS),
+                "Number of channels (on the same connection) to transfer the files in parallel. Defaults to 1.", 0,
+                1));
+
+        /*
+         * pipeline: number of assets to fetch ahead of the transfer
+         */
+        Interface.Element prefetch = new Interface.Element("prefetch", new IntegerType(0, MAX_PREFETCH),
+                "Number of assets (contents) to fetch ahead of the transfer, in a separate thread. Set to 0 to fetch and transfer the assets one after another in the service thread. Defaults to "
+                        + AssetTransferPipeline.DEFAULT_PREFETCH + ".",
+                0, 1);
+        prefetch.add(new Interface.Attribute("query-queue-size", new IntegerType(1, PAGE_SIZE),
+                "Maximum number of query results waiting to be fetched. Defaults to "
+                        + AssetTransferPipeline.DEFAULT_QUERY_QUEUE_SIZE + ".",
+                0));
+        this.defn.add(prefetch);
+
+        /*
+         * checkpoint: to resume an interrupted export
+         */
+        Interface.Element checkpoint = new Interface.Element("checkpoint", StringType.DEFAULT,
+                "Name of the checkpoint file recording the assets transferred, relative to the checkpoint directory of the server (set by the system property "
+                        + TransferCheckpoint.DIRECTORY_PROPERTY + ", defaults to ~/"
+                        + TransferCheckpoint.DEFAULT_DIRECTORY
+                        + "). Components of letters, digits, '.', '_' and '-', separated by '/'. If the file exists, the assets recorded by the previous runs are skipped. Only applies to the assets selected by namespace, where, id or cid.",
+                0, 1);
+        checkpoint.add(new Interface.Attribute("resume", BooleanType.DEFAULT,
+                "Resume the files of the assets whose transfer was interrupted (started but not recorded as completed) by a previous run (sftp only): such a remote file shorter than the asset content is appended to, and one of the same length is not sent again. The other remote files are overwritten. Defaults to false.",
+                0));
+        this.defn.add(checkpoint);
+
+        /*
+         * verify: end-to-end checksums of the asset contents
+         */
+        Interface.Element verify = new Interface.Element("verify", BooleanType.DEFAULT,
+                "Verify the asset contents sent: the CRC32 checksum of the bytes sent is compared with the asset content checksum. Only applies to the assets (not extracted). Defaults to false.",
+                0, 1);
+        verify.add(new Interface.Attribute("remote", BooleanType.DEFAULT,
+                "Also compare the SHA-256 digest of the bytes sent with the one of the remote file, computed by sha256sum (or shasum) on the remote server. Disabled if the server does not allow remote commands, and for the pipelined scp transfers. Defaults to true.",
+                0));
+        this.defn.add(verify);
+
     }
 
     @Override
@@ -112,14 +175,64 @@ public abstract class AbstractSshPutService extends AbstractSshService {
 
         boolean unarchive = args.booleanValue("unarchive", false);
 
-        TransferClient client = createTransferClient(cxn, directory);
+        int channels = args.intValue("channels", 1);
+        int prefetch = args.intValue("prefetch", AssetTransferPipeline.DEFAULT_PREFETCH);
+        int queryQueueSize = args.intValue("prefetch/@query-queue-size",
+                AssetTransferPipeline.DEFAULT_QUERY_QUEUE_SIZE);
+
+        TransferCheckpoint checkpoint = args.elementExists("checkpoint")
+                ? new TransferCheckpoint(TransferCheckpoint.resolve(args.value("checkpoint")),
+                        args.booleanValue("checkpoint/@resume", false))
+                : null;
+        TransferClient client = null;
+        ParallelTransferClient parallel = null;
+        IncrementalSync sync = null;
+        ContentVerifier verifier = null;
+        // failures of the previously sent files, reported late by a pipelined
+        // client.
+        List<TransferException> lateFailures = new ArrayList<TransferException>();
         try {
+            client = createTransferClient(cxn, directory, args);
+            if (args.booleanValue("verify", false)) {
+                // the remote file is not complete until the (pipelined) scp
+                // transfer is acknowledged.
+                boolean remote = args.booleanValue("verify/@remote", true)
+                        && !(client instanceof ScpClient && ((ScpClient) client).pipelined());
+                verifier = new ContentVerifier(cxn, directory, remote);
+            }
+            if (args.booleanValue("incremental", false)) {
+                if (!(client instanceof SftpClient)) {
+                    throw new IllegalArgumentException("Incremental mode is only supported by sftp.");
+                }
+                if (args.booleanValue("incremental/@delete-orphans", false)) {
+                    SftpClient sftp = (SftpClient) client;
+                    IncrementalSync.checkDeleteOrphans(directory, sftp.realPath("."), sftp.homeDirectory());
+                }
+                PluginTask.setCurrentThreadActivity("listing remote files");
+                try {
+                    sync = new IncrementalSync();
+                    sync.load((SftpClient) client);
+                } finally {
+                    PluginTask.clearCurrentThreadActivity();
+                }
+            }
+            ParallelArchiveExtractor extractor = null;
+            if (channels > 1) {
+                parallel = createParallelTransferClient(cxn, directory, args, client, channels);
+                if (unarchive) {
+                    int bufferSize = args.intValue("unarchive/@buffer-size",
+                            ParallelArchiveExtractor.DEFAULT_MAX_BUFFER_SIZE_MB);
+                    extractor = new ParallelArchiveExtractor(parallel, bufferSize * 1048576L);
+                }
+            }
             if (namespace != null) {
-                put(executor(), "namespace>='" + namespace + "'", namespace, client, expr, pathGenerateService,
-                        unarchive, onError, w);
+                put(executor(), "namespace>='" + namespace + "'", namespace, client, parallel, expr,
+                        pathGenerateService, unarchive, extractor, checkpoint, sync, verifier, lateFailures,
+                        queryQueueSize, prefetch, onError, w);
             }
             if (where != null) {
-                put(executor(), where, null, client, expr, pathGenerateService, unarchive, onError, w);
+                put(executor(), where, null, client, parallel, expr, pathGenerateService, unarchive, extractor,
+                        checkpoint, sync, verifier, lateFailures, queryQueueSize, prefetch, onError, w);
             }
             if (ids != null) {
                 StringBuilder sb = new StringBuilder();
@@ -129,7 +242,8 @@ public abstract class AbstractSshPutService extends AbstractSshService {
                     }
                     sb.append("id=" + id);
                 }
-                put(executor(), sb.toString(), null, client, expr, pathGenerateService, unarchive, onError, w);
+                put(executor(), sb.toString(), null, client, parallel, expr, pathGenerateService, unarchive,
+                        extractor, checkpoint, sync, verifier, lateFailures, queryQueueSize, prefetch, onError, w);
             }
             if (cides != null) {
                 StringBuilder sb = new StringBuilder();
@@ -147,16 +261,22 @@ public abstract class AbstractSshPutService extends AbstractSshService {
                         sb.append(" or cid starts with '").append(cid).append("')");
                     }
                 }
-                put(executor(), sb.toString(), null, client, expr, pathGenerateService, unarchive, onError, w);
+                put(executor(), sb.toString(), null, client, parallel, expr, pathGenerateService, unarchive,
+                        extractor, checkpoint, sync, verifier, lateFailures, queryQueueSize, prefetch, onError, w);
             }
             if (inputs != null && inputs.size() > 0) {
                 try {
                     PluginService.Input input = inputs.input(0);
+                    if (sync != null) {
+                        sync.seen(inputFileName, unarchive);
+                    }
                     try {
-                        put(client, inputFileName, input.stream(), input.length(), unarchive);
+                        put(client, extractor, inputFileName, input.stream(), input.length(), unarchive,
+                                lateFailures);
                     } finally {
                         input.stream().close();
                         input.close();
+                        addLateFailures(w, lateFailures, checkpoint, onError);
                     }
                 } catch (Throwable e) {
                     w.add("failed",
@@ -172,26 +292,42 @@ public abstract class AbstractSshPutService extends AbstractSshService {
                     if ("file".equalsIgnoreCase(url.getScheme())) {
                         File f = new File(url);
                         if (f.isDirectory()) {
+                            if (sync != null) {
+                                sync.seenDirectory(f.getName());
+                            }
                             try {
                                 PluginTask.setCurrentThreadActivity("putting directory: " + f.getName());
-                                client.putDirectory(f.toPath(), true);
+                                if (parallel != null) {
+                                    parallel.putDirectory(f.toPath(), true);
+                                } else {
+                                    client.putDirectory(f.toPath(), true);
+                                }
                             } finally {
                                 PluginTask.clearCurrentThreadActivity();
                             }
                         } else {
+                            if (sync != null) {
+                                sync.seen(f.getName(), unarchive);
+                            }
                             InputStream fi = new BufferedInputStream(new FileInputStream(f));
                             try {
-                                put(client, f.getName(), fi, f.length(), unarchive);
+                                put(client, extractor, f.getName(), fi, f.length(), unarchive, lateFailures);
                             } finally {
                                 fi.close();
+                                addLateFailures(w, lateFailures, checkpoint, onError);
                             }
                         }
                     } else {
+                        if (sync != null) {
+                            sync.seen(FileNameUtils.getFileName(url.getPath()), unarchive);
+                        }
                         InputStream fi = url.toURL().openStream();
                         try {
-                            put(client, FileNameUtils.getFileName(url.getPath()), fi, -1, unarchive);
+                            put(client, extractor, FileNameUtils.getFileName(url.getPath()), fi, -1, unarchive,
+                                    lateFailures);
                         } finally {
                             fi.close();
+                            addLateFailures(w, lateFailures, checkpoint, onError);
                         }
                     }
                 } catch (Throwable e) {
@@ -203,13 +339,163 @@ public abstract class AbstractSshPutService extends AbstractSshService {
                     // url may already be consumed. Cannot retry.
                 }
             }
+            if (sync != null) {
+                w.add("incremental", new String[] { "remote-files", Integer.toString(sync.remoteFiles()) });
+                if (args.booleanValue("incremental/@delete-orphans", false)) {
+                    deleteOrphans((SftpClient) client, sync, onError, w);
+                }
+            }
+        } catch (Throwable e) {
+            if (parallel != null) {
+                parallel.abort();
+            }
+            if (verifier != null) {
+                verifier.abort();
+            }
+            throw e;
+        } finally {
+            try {
+                try {
+                    try {
+                        if (parallel != null) {
+                            try {
+                                parallel.close();
+                            } finally {
+                                addFailures(w, parallel.pollFailures(), checkpoint, onError);
+                            }
+                        }
+                    } finally {
+                        if (verifier != null) {
+                            closeContentVerifier(verifier, checkpoint, onError, w);
+                        }
+                    }
+                } finally {
+                    if (client != null) {
+                        closeTransferClient(client, checkpoint, onError, w);
+                    }
+                }
+            } finally {
+                if (checkpoint != null) {
+                    checkpoint.close();
+                    w.add("checkpoint", new String[] { "recorded", Long.toString(checkpoint.recorded()) },
+                            args.value("checkpoint"));
+                }
+            }
+        }
+    }
+
+    private static void deleteOrphans(SftpClient client, IncrementalSync sync, OnError onError, XmlWriter w)
+            throws Throwable {
+        List<String> orphans = sync.orphans();
+        for (String orphan : orphans) {
+            PluginTask.checkIfThreadTaskAborted();
+            try {
+                client.delete(orphan);
+                w.add("deleted", orphan);
+            } catch (Throwable e) {
+                w.add("failed", new String[] { "error", e.getMessage(), "delete", orphan });
+                if (e instanceof ExAborted || onError.stopOnError()) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static void closeContentVerifier(ContentVerifier verifier, TransferCheckpoint checkpoint,
+            OnError onError, XmlWriter w) throws Throwable {
+        try {
+            verifier.close();
         } finally {
+            List<String> attrs = new ArrayList<String>();
+            if (verifier.remoteError() != null) {
+                attrs.add("remote-error");
+                attrs.add(verifier.remoteError());
+            } else if (verifier.remote()) {
+                attrs.add("remote");
+                attrs.add(Long.toString(verifier.remoteVerified()));
+            }
+            w.add("verified", attrs.toArray(new String[attrs.size()]), verifier.verified());
+            addFailures(w, verifier.pollFailures(), checkpoint, onError);
+        }
+    }
+
+    private static void closeTransferClient(TransferClient client, TransferCheckpoint checkpoint, OnError onError,
+            XmlWriter w) throws Throwable {
+        try {
             client.close();
+        } catch (TransferException e) {
+            // failures of the files still in flight (pipelined).
+            addFailures(w, e, checkpoint);
+            if (onError.stopOnError()) {
+                throw e;
+            }
+        }
+    }
+
+    private static void addFailures(XmlWriter w, List<TransferException> failures, TransferCheckpoint checkpoint,
+            OnError onError) throws Throwable {
+        for (TransferException e : failures) {
+            addFailures(w, e, checkpoint);
+        }
+        if (!failures.isEmpty() && onError.stopOnError()) {
+            throw failures.get(0);
         }
     }
 
-    private static void put(TransferClient client, String dstPath, InputStream in, long length, boolean unarchive)
+    private static void addFailures(XmlWriter w, TransferException e, TransferCheckpoint checkpoint)
             throws Throwable {
+        w.add("failed", new String[] { "error", e.getMessage(), "dst", e.path() });
+        if (checkpoint != null) {
+            checkpoint.failed(e.path());
+        }
+        for (Throwable se : e.getSuppressed()) {
+            if (se instanceof TransferException) {
+                String path = ((TransferException) se).path();
+                w.add("failed", new String[] { "error", se.getMessage(), "dst", path });
+                if (checkpoint != null) {
+                    checkpoint.failed(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the failures reported late by a pipelined client, and clears them.
+     */
+    private static void addLateFailures(XmlWriter w, List<TransferException> lateFailures,
+            TransferCheckpoint checkpoint, OnError onError) throws Throwable {
+        if (lateFailures.isEmpty()) {
+            return;
+        }
+        List<TransferException> failures = new ArrayList<TransferException>(lateFailures);
+        lateFailures.clear();
+        addFailures(w, failures, checkpoint, onError);
+    }
+
+    /**
+     * Sends the file. A pipelined (scp) client reports the failures of the
+     * previously sent files after the content of this one is sent: they are
+     * added to the late failures instead of failing this file.
+     */
+    private static void putFile(TransferClient client, InputStream in, long length, String dstPath,
+            List<TransferException> lateFailures) throws Throwable {
+        try {
+            client.put(in, length, dstPath);
+        } catch (TransferException e) {
+            if (dstPath.equals(e.path())) {
+                throw e;
+            }
+            lateFailures.add(e);
+        }
+    }
+
+    /**
+     * Sends the content. If it is an archive to extract, the entries are sent
+     * by the extractor (over multiple channels), if given, otherwise one after
+     * another by the client.
+     */
+    private static void put(TransferClient client, ParallelArchiveExtractor extractor, String dstPath, InputStream in,
+            long length, boolean unarchive, List<TransferException> lateFailures) throws Throwable {
         PluginTask.checkIfThreadTaskAborted();
         // System.out.println("FNAME: " + fileName);
         String ext = FileNameUtils.getFileExtension(dstPath);
@@ -217,6 +503,15 @@ public abstract class AbstractSshPutService extends AbstractSshService {
             ArchiveInput ai = ArchiveRegistry.createInputForExtension(new SizedInputStream(in, length), ext,
                     ArchiveInput.ACCESS_RANDOM);
             String filePrefix = FileNameUtils.removeFileExtension(dstPath);
+            if (extractor != null) {
+                try {
+                    PluginTask.setCurrentThreadActivity("extracting file: " + dstPath);
+                    extractor.extract(ai, filePrefix);
+                } finally {
+                    PluginTask.clearCurrentThreadActivity();
+                }
+                return;
+            }
             try {
                 ArchiveInput.Entry e = null;
                 while ((e = ai.next()) != null) {
@@ -226,7 +521,7 @@ public abstract class AbstractSshPutService extends AbstractSshService {
                         if (e.isDirectory()) {
                             client.mkdirs(name);
                         } else {
-                            client.put(e.stream(), e.size(), name);
+                            putFile(client, e.stream(), e.size(), name, lateFailures);
                         }
                     } finally {
                         ai.closeEntry();
@@ -240,7 +535,7 @@ public abstract class AbstractSshPutService extends AbstractSshService {
             // System.out.println("LENGTH: " + length);
             try {
                 PluginTask.setCurrentThreadActivity("putting file: " + dstPath);
-                client.put(in, length, dstPath);
+                putFile(client, in, length, dstPath, lateFailures);
             } finally {
                 PluginTask.clearCurrentThreadActivity();
             }
@@ -248,105 +543,237 @@ public abstract class AbstractSshPutService extends AbstractSshService {
     }
 
     private static void put(ServiceExecutor executor, String where, String namespace, TransferClient client,
-            String expr, String pathGenerateService, boolean unarchive, OnError onError, XmlWriter w) throws Throwable {
+            ParallelTransferClient parallel, String expr, String pathGenerateService, boolean unarchive,
+            ParallelArchiveExtractor extractor, TransferCheckpoint checkpoint, IncrementalSync sync,
+            ContentVerifier verifier, List<TransferException> lateFailures, int queryQueueSize, int prefetch,
+            OnError onError, XmlWriter w) throws Throwable {
 
         long total = -1;
-        int idx = 1;
-        int remaining = Integer.MAX_VALUE;
-        XmlDoc.Element re = null;
-        while (remaining > 0) {
-
-            PluginTask.checkIfThreadTaskAborted();
-
-            XmlDocMaker dm = new XmlDocMaker("args");
-            dm.add("where", where);
-            dm.add("count", true);
-            dm.add("idx", idx);
-            dm.add("size", PAGE_SIZE);
-            if (expr != null) {
-                dm.add("action", "pipe");
-                dm.push("service", new String[] { "name", pathGenerateService });
-                dm.add("expr", expr);
-                dm.pop();
-                dm.add("pipe-generate-result-xml", true);
-            } else {
-                dm.add("action", "get-path");
-            }
-            re = executor.execute("asset.query", dm.root());
-            if (total < 0) {
-                total = re.longValue("cursor/total", 0);
-                if (total > 0) {
-                    PluginTask.threadTaskBeginSetOf(total);
-                }
-            }
-            remaining = re.intValue("cursor/remaining", 0);
-            List<XmlDoc.Element> pes = re.elements("path");
-            if (pes != null) {
-                for (XmlDoc.Element pe : pes) {
-
-                    PluginTask.checkIfThreadTaskAborted();
-
-                    String id = pe.value("@id");
-                    String path = pe.value();
-                    if (namespace != null) {
-                        path = PathUtils.getRelativePath(PathUtils.trimSlash(path), PathUtils.trimSlash(namespace));
-                    } else {
-                        path = PathUtils.trimSlash(path);
+        long skipped = 0;
+        AssetTransferPipeline pipeline = new AssetTransferPipeline(executor, where, namespace, expr,
+                pathGenerateService, checkpoint, sync, unarchive, queryQueueSize, prefetch);
+        try {
+            pipeline.start();
+            AssetTransferPipeline.Item item;
+            while ((item = pipeline.next()) != null) {
+                try {
+                    if (total < 0) {
+                        total = pipeline.total();
+                        if (total > 0) {
+                            PluginTask.threadTaskBeginSetOf(total);
+                        }
                     }
+                    PluginTask.checkIfThreadTaskAborted();
                     try {
-                        putAsset(executor, id, path, unarchive, client, onError.retry());
+                        putAsset(executor, item, unarchive, extractor, client, parallel, checkpoint, sync,
+                                verifier, lateFailures, onError.retry());
                     } catch (Throwable e) {
-                        w.add("failed", new String[] { "asset", id, "dst", path });
+                        if (e instanceof TransferException && !item.path.equals(((TransferException) e).path())) {
+                            // failure of a previously sent file reported by a
+                            // pipelined client.
+                            addFailures(w, (TransferException) e, checkpoint);
+                        } else {
+                            w.add("failed",
+                                    new String[] { "error", e.getMessage(), "asset", item.id, "dst", item.path });
+                        }
                         if (onError.stopOnError() || e instanceof ExAborted || e instanceof InterruptedException) {
                             throw e;
                         }
                         // continue without break
+                    } finally {
+                        addLateFailures(w, lateFailures, checkpoint, onError);
                     }
-                    PluginTask.checkIfThreadTaskAborted();
-                    PluginTask.threadTaskCompleted(1);
+                } finally {
+                    item.close();
+                }
+                if (parallel != null) {
+                    // failures of the files transferred by the other
+                    // channels.
+                    addFailures(w, parallel.pollFailures(), checkpoint, onError);
+                }
+                if (verifier != null) {
+                    // remote checksum mismatches.
+                    addFailures(w, verifier.pollFailures(), checkpoint, onError);
                 }
+                PluginTask.checkIfThreadTaskAborted();
+                // the assets skipped (checkpoint) count as completed.
+                long s = pipeline.skipped();
+                PluginTask.threadTaskCompleted(1 + s - skipped);
+                skipped = s;
             }
-            idx += PAGE_SIZE;
+        } finally {
+            pipeline.close();
+        }
+        if (skipped > 0) {
+            w.add("skipped", new String[] { "where", where }, skipped);
         }
         if (total > 0) {
             PluginTask.threadTaskEndSet();
         }
     }
 
-    private static void putAsset(ServiceExecutor executor, String assetId, String dstPath, boolean unarchive,
-            TransferClient client, int retry) throws Throwable {
+    private static void putAsset(ServiceExecutor executor, AssetTransferPipeline.Item item, boolean unarchive,
+            ParallelArchiveExtractor extractor, TransferClient client, ParallelTransferClient parallel,
+            TransferCheckpoint checkpoint, IncrementalSync sync, ContentVerifier verifier,
+            List<TransferException> lateFailures, int retry) throws Throwable {
+        boolean extract = unarchive
+                && ArchiveRegistry.isAnArchiveExtension(FileNameUtils.getFileExtension(item.path));
         try {
-            SimpleEntry<XmlDoc.Element, Output> entry = getAsset(executor, assetId, null);
-            XmlDoc.Element ae = entry.getKey();
-            Output output = entry.getValue();
-            try {
-                put(client, dstPath, output.stream(),
-                        output.length() < 0 ? ae.longValue("content/size") : output.length(), unarchive);
-            } finally {
-                output.stream().close();
-                output.close();
+            if (item.error != null) {
+                throw item.error;
+            }
+            // the output is owned by the item until handed to the parallel
+            // client.
+            Output output = item.output;
+            long length = output.length() < 0 ? item.size : output.length();
+            if (extract && sync != null) {
+                // the extracted files are not orphans.
+                sync.seen(item.path, unarchive);
+            }
+            if (parallel != null && !extract) {
+                // the worker channel closes the output when done.
+                item.output = null;
+                parallel.submit(
+                        new OutputTransferTask(item.id, item.path, item.csum, output, length, checkpoint, verifier));
+                return;
+            }
+            if (extract) {
+                put(client, extractor, item.path, output.stream(), length, unarchive, lateFailures);
+            } else {
+                if (checkpoint != null) {
+                    checkpoint.started(item.id, item.path);
+                }
+                setResume(client, checkpoint != null && checkpoint.canResume(item.id, item.path));
+                try {
+                    if (verifier != null) {
+                        ChecksumInputStream ci = verifier.wrap(output.stream());
+                        put(client, extractor, item.path, ci, length, false, lateFailures);
+                        verifier.verify(ci, length, item.csum, item.path);
+                    } else {
+                        put(client, extractor, item.path, output.stream(), length, false, lateFailures);
+                    }
+                } finally {
+                    setResume(client, false);
+                }
+            }
+            if (checkpoint != null) {
+                checkpoint.completed(item.id, extract ? FileNameUtils.removeFileExtension(item.path) : item.path,
+                        length);
             }
         } catch (Throwable e) {
-            if (e instanceof IOException && retry > 0) {
+            if (e instanceof IOException && retry > 0 && isFailureOf(e, item.path, extract)) {
                 // retry if set
-                putAsset(executor, assetId, dstPath, unarchive, client, retry--);
+                client.connection().metrics().increment(SshMetrics.RETRIES);
+                item.close();
+                item.error = null;
+                try {
+                    item.output = getAssetContent(executor, item.id);
+                } catch (Throwable e2) {
+                    item.error = e2;
+                }
+                putAsset(executor, item, unarchive, extractor, client, parallel, checkpoint, sync, verifier,
+                        lateFailures, retry - 1);
             } else {
                 throw e;
             }
         }
     }
 
-    private static SimpleEntry<XmlDoc.Element, Output> getAsset(ServiceExecutor executor, String id, String cid)
-            throws Throwable {
-        XmlDocMaker dm = new XmlDocMaker("args");
-        if (id != null) {
-            dm.add("id", id);
-        } else {
-            dm.add("cid", cid);
+    /**
+     * Checks if the failure is of the asset (or of a file extracted from it),
+     * not of a previously sent file.
+     */
+    private static boolean isFailureOf(Throwable e, String dstPath, boolean extract) {
+        if (!(e instanceof TransferException)) {
+            return true;
+        }
+        String path = ((TransferException) e).path();
+        return dstPath.equals(path) || (extract && path != null
+                && path.startsWith(FileNameUtils.removeFileExtension(dstPath) + "/"));
+    }
+
+    /**
+     * Sets the resume mode of the (sftp) client for the next file: only the
+     * interrupted transfers are resumed.
+     */
+    private static void setResume(TransferClient client, boolean resume) {
+        if (client instanceof SftpClient) {
+            ((SftpClient) client).setResume(resume);
+        }
+    }
+
+    private static class OutputTransferTask extends ParallelTransferClient.Task {
+
+        private String _id;
+        private long _csum;
+        private Output _output;
+        private long _length;
+        private TransferCheckpoint _checkpoint;
+        private ContentVerifier _verifier;
+
+        OutputTransferTask(String id, String dstPath, long csum, Output output, long length,
+                TransferCheckpoint checkpoint, ContentVerifier verifier) {
+            super(dstPath);
+            _id = id;
+            _csum = csum;
+            _output = output;
+            _length = length;
+            _checkpoint = checkpoint;
+            _verifier = verifier;
+        }
+
+        @Override
+        public void execute(TransferClient client) throws Throwable {
+            try {
+                if (_checkpoint != null) {
+                    _checkpoint.started(_id, dstPath());
+                }
+                setResume(client, _checkpoint != null && _checkpoint.canResume(_id, dstPath()));
+                try {
+                    if (_verifier != null) {
+                        ChecksumInputStream ci = _verifier.wrap(_output.stream());
+                        client.put(ci, _length, dstPath());
+                        _verifier.verify(ci, _length, _csum, dstPath());
+                    } else {
+                        client.put(_output.stream(), _length, dstPath());
+                    }
+                } finally {
+                    setResume(client, false);
+                }
+                if (_checkpoint != null) {
+                    _checkpoint.completed(_id, dstPath(), _length);
+                }
+            } finally {
+                discard();
+            }
+        }
+
+        @Override
+        public void discard() {
+            try {
+                _output.stream().close();
+                _output.close();
+            } catch (Throwable e) {
+                e.printStackTrace(System.out);
+            }
         }
+    }
+
+    /**
+     * Opens the content of the asset. The metadata are not retrieved: they
+     * come from the (bulk) query.
+     *
+     * @param executor
+     * @param id
+     * @return
+     * @throws Throwable
+     */
+    static Output getAssetContent(ServiceExecutor executor, String id) throws Throwable {
+        XmlDocMaker dm = new XmlDocMaker("args");
+        dm.add("id", id);
         Outputs outputs = new Outputs(1);
-        XmlDoc.Element re = executor.execute("asset.get", dm.root(), null, outputs);
-        return new SimpleEntry<XmlDoc.Element, Output>(re.element("asset"), outputs.output(0));
+        executor.execute("asset.content.get", dm.root(), null, outputs);
+        return outputs.output(0);
     }
 
     private static String getPathGenerateService(ServiceExecutor executor) throws Throwable {
@@ -360,7 +787,28 @@ public abstract class AbstractSshPutService extends AbstractSshService {
         }
     }
 
-    protected abstract TransferClient createTransferClient(Connection cxn, String directory) throws Throwable;
+    protected abstract TransferClient createTransferClient(Connection cxn, String directory, XmlDoc.Element args)
+            throws Throwable;
+
+    /**
+     * Creates the parallel transfer client with the specified number of worker
+     * channels. The given client is used to create the directories.
+     */
+    protected ParallelTransferClient createParallelTransferClient(Connection cxn, String directory,
+            XmlDoc.Element args, TransferClient client, int channels) throws Throwable {
+        List<TransferClient> workers = new ArrayList<TransferClient>(channels);
+        try {
+            for (int i = 0; i < channels; i++) {
+                workers.add(createTransferClient(cxn, directory, args));
+            }
+        } catch (Throwable e) {
+            for (TransferClient worker : workers) {
+                worker.close();
+            }
+            throw e;
+        }
+        return new ParallelTransferClient(client, workers, channels);
+    }
 
     @Override
     public Access access() {
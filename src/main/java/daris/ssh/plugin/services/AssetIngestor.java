@@ -0,0 +1,303 @@
+package daris.ssh.plugin.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import arc.mf.plugin.PluginTask;
+import arc.mf.plugin.ServiceExecutor;
+import arc.xml.XmlDoc;
+import io.github.xtman.io.util.StreamUtils;
+import io.github.xtman.ssh.client.FileAttrs;
+import io.github.xtman.ssh.client.TransferClient.GetHandler;
+
+/**
+ * Get handler decoupling the ingest (asset.set) from the SSH transfer: the
+ * content of each file is spooled (in memory if small, otherwise to a
+ * temporary file) by the transfer thread, then ingested by a bounded pool of
+ * threads, so that the transfer of the next file overlaps the ingest. The
+ * transfer thread blocks when all the ingest threads are busy and as many
+ * files are spooled.
+ *
+ * The namespaces (directories) are created synchronously by the transfer
+ * thread, so before the ingest of their files. Must be called by the service
+ * thread: it reports the progress and checks if the task is aborted.
+ */
+class AssetIngestor implements GetHandler {
+
+    public static final int DEFAULT_THREADS = 2;
+
+    public static final int MAX_THREADS = 16;
+
+    /**
+     * Files up to this size are spooled in memory.
+     */
+    public static final int MAX_MEMORY_SPOOL_FILE_SIZE = 1048576;
+
+    /**
+     * Total size of the files spooled in memory at any time.
+     */
+    public static final long MAX_MEMORY_SPOOL_SIZE = 64L * 1048576L;
+
+    private static final long POLL_INTERVAL = 500L;
+
+    /**
+     * Failure to ingest a file. It is not retried by re-getting the remote
+     * path (the ingest itself is retried from the spooled content).
+     */
+    static class IngestException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private String _path;
+
+        IngestException(String path, Throwable cause) {
+            super("Failed to ingest '" + path + "': " + cause.getMessage(), cause);
+            _path = path;
+        }
+
+        String path() {
+            return _path;
+        }
+    }
+
+    private ServiceExecutor _executor;
+    private NamespaceCache _namespaces;
+    private String _namespace;
+    private boolean _readOnly;
+    private XmlDoc.Element _worm;
+    private int _retry;
+    private boolean _stopOnError;
+
+    private int _slots;
+    private Semaphore _available;
+    private AtomicLong _memory;
+    private ExecutorService _pool;
+    private ConcurrentLinkedQueue<IngestException> _failures;
+    private AtomicLong _completed;
+    private long _reported;
+
+    AssetIngestor(ServiceExecutor executor, NamespaceCache namespaces, String namespace, boolean readOnly,
+            XmlDoc.Element worm, int threads, int retry, boolean stopOnError) {
+        _executor = executor;
+        _namespaces = namespaces;
+        _namespace = namespace;
+        _readOnly = readOnly;
+        _worm = worm;
+        _retry = retry;
+        _stopOnError = stopOnError;
+        // one spooled file waiting for each thread.
+        _slots = threads * 2;
+        _available = new Semaphore(_slots);
+        _memory = new AtomicLong(0);
+        _failures = new ConcurrentLinkedQueue<IngestException>();
+        _completed = new AtomicLong(0);
+        final AtomicInteger n = new AtomicInteger(0);
+        _pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ssh-get-ingest-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    @Override
+    public void getDirectory(FileAttrs dir) throws Throwable {
+        PluginTask.checkIfThreadTaskAborted();
+        PluginTask.setCurrentThreadActivity("getting remote directory: " + dir.path());
+        try {
+            AbstractSshGetService.createAssetNamespace(_namespaces, dir, _namespace);
+        } finally {
+            PluginTask.clearCurrentThreadActivity();
+        }
+        PluginTask.checkIfThreadTaskAborted();
+    }
+
+    @Override
+    public void getFile(final FileAttrs file, InputStream in) throws Throwable {
+        PluginTask.checkIfThreadTaskAborted();
+        reportProgress();
+        throwIfFailed();
+        while (!_available.tryAcquire(POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+            PluginTask.checkIfThreadTaskAborted();
+            reportProgress();
+        }
+        boolean submitted = false;
+        final Spool spool = new Spool();
+        try {
+            PluginTask.setCurrentThreadActivity("getting remote file: " + file.path());
+            try {
+                spool.write(file, in);
+            } finally {
+                PluginTask.clearCurrentThreadActivity();
+            }
+            _pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ingest(file, spool);
+                        _completed.incrementAndGet();
+                    } catch (Throwable e) {
+                        _failures.add(new IngestException(file.path(), e));
+                    } finally {
+                        spool.discard();
+                        _available.release();
+                    }
+                }
+            });
+            submitted = true;
+        } finally {
+            if (!submitted) {
+                spool.discard();
+                _available.release();
+            }
+        }
+    }
+
+    private void ingest(FileAttrs file, Spool spool) throws Throwable {
+        int attempts = 0;
+        while (true) {
+            InputStream in = spool.open();
+            try {
+                AbstractSshGetService.createOrUpdateAsset(_executor, file, in, _namespace, _readOnly, _worm);
+                return;
+            } catch (Throwable e) {
+                if (attempts++ >= _retry || e instanceof InterruptedException) {
+                    throw e;
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private void throwIfFailed() throws IngestException {
+        if (_stopOnError) {
+            IngestException e = _failures.peek();
+            if (e != null) {
+                throw e;
+            }
+        }
+    }
+
+    private void reportProgress() {
+        long completed = _completed.get();
+        if (completed > _reported) {
+            PluginTask.threadTaskCompleted(completed - _reported);
+            _reported = completed;
+        }
+    }
+
+    /**
+     * Waits for the spooled files to be ingested, then stops the threads.
+     *
+     * @param abort
+     *            do not wait for the ingest.
+     * @throws Throwable
+     */
+    void close(boolean abort) throws Throwable {
+        try {
+            if (!abort) {
+                int acquired = 0;
+                while (acquired < _slots) {
+                    if (_available.tryAcquire(POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                        acquired++;
+                    } else {
+                        PluginTask.checkIfThreadTaskAborted();
+                        reportProgress();
+                    }
+                }
+                _available.release(acquired);
+            }
+        } finally {
+            _pool.shutdown();
+            reportProgress();
+        }
+    }
+
+    /**
+     * Retrieves (and removes) the ingest failures.
+     *
+     * @return
+     */
+    List<IngestException> pollFailures() {
+        List<IngestException> failures = new ArrayList<IngestException>();
+        IngestException e;
+        while ((e = _failures.poll()) != null) {
+            failures.add(e);
+        }
+        return failures;
+    }
+
+    /**
+     * The content of a file: in memory or in a temporary file.
+     */
+    private class Spool {
+        private long _reserved;
+        private byte[] _bytes;
+        private File _file;
+
+        void write(FileAttrs file, InputStream in) throws Throwable {
+            long length = file.length();
+            if (length >= 0 && length <= MAX_MEMORY_SPOOL_FILE_SIZE) {
+                _reserved = length;
+                if (_memory.addAndGet(_reserved) <= MAX_MEMORY_SPOOL_SIZE) {
+                    ByteArrayOutputStream os = new ByteArrayOutputStream((int) length);
+                    StreamUtils.transfer(in, -1, os);
+                    _bytes = os.toByteArray();
+                    return;
+                }
+                // over the memory budget
+                _memory.addAndGet(-_reserved);
+                _reserved = 0;
+            }
+            _file = PluginTask.createTemporaryFile();
+            OutputStream os = new FileOutputStream(_file);
+            try {
+                StreamUtils.transfer(in, -1, os);
+            } finally {
+                os.close();
+            }
+        }
+
+        InputStream open() throws Throwable {
+            if (_bytes != null) {
+                return new ByteArrayInputStream(_bytes);
+            }
+            return new FileInputStream(_file);
+        }
+
+        void discard() {
+            _bytes = null;
+            if (_reserved > 0) {
+                _memory.addAndGet(-_reserved);
+                _reserved = 0;
+            }
+            if (_file != null) {
+                try {
+                    PluginTask.deleteTemporaryFile(_file);
+                } catch (Throwable e) {
+                    e.printStackTrace(System.out);
+                }
+                _file = null;
+            }
+        }
+    }
+
+}
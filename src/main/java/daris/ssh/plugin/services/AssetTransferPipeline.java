@@ -0,0 +1,431 @@
+package daris.ssh.plugin.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import arc.mf.plugin.PluginService.Output;
+import arc.mf.plugin.PluginTask;
+import arc.mf.plugin.ServiceExecutor;
+import arc.xml.XmlDoc;
+import arc.xml.XmlDocMaker;
+import io.github.xtman.util.PathUtils;
+
+/**
+ * Staged pipeline feeding the assets to transfer: a pager thread runs the
+ * paged asset.query and queues the results; a prefetch thread calls
+ * asset.content.get to open the asset content ahead of the transfer and queues
+ * the outputs; the transfer is done by the service thread consuming
+ * {@link #next()}. The queues are bounded so the stages block (back-pressure)
+ * when the transfer falls behind.
+ *
+ * If prefetch is 0, no thread is started and both query and
+ * asset.content.get are executed, on demand, by the service thread.
+ *
+ * The metadata needed for the transfer (content size and checksum, and
+ * modification time in incremental mode) are retrieved for the whole page by a single get-value
+ * query, rather than by an asset.get for each asset.
+ *
+ * The assets already recorded in the checkpoint (if any), or unchanged since
+ * the last transfer (incremental mode), are skipped by the pager, before their
+ * contents are fetched.
+ */
+class AssetTransferPipeline {
+
+    public static final int DEFAULT_QUERY_QUEUE_SIZE = 1000;
+
+    public static final int DEFAULT_PREFETCH = 2;
+
+    private static final long POLL_INTERVAL = 500L;
+
+    static class Item {
+        final String id;
+        final String path;
+        /*
+         * content size, -1 if unknown.
+         */
+        final long size;
+        /*
+         * CRC32 checksum of the content, -1 if unknown.
+         */
+        final long csum;
+        Output output;
+        Throwable error;
+
+        Item(String id, String path, long size, long csum) {
+            this.id = id;
+            this.path = path;
+            this.size = size;
+            this.csum = csum;
+        }
+
+        void close() {
+            if (output != null) {
+                try {
+                    output.stream().close();
+                    output.close();
+                } catch (Throwable e) {
+                    e.printStackTrace(System.out);
+                }
+                output = null;
+            }
+        }
+    }
+
+    private static final Item END = new Item(null, null, -1, -1);
+
+    /**
+     * Pages through the asset.query results.
+     */
+    static class Pager {
+
+        private ServiceExecutor _executor;
+        private String _where;
+        private String _namespace;
+        private String _expr;
+        private String _pathGenerateService;
+        private TransferCheckpoint _checkpoint;
+        private IncrementalSync _sync;
+        private boolean _unarchive;
+
+        private int _idx = 1;
+        private int _remaining = Integer.MAX_VALUE;
+        private volatile long _total = -1;
+        private volatile long _skipped = 0;
+        private LinkedList<Item> _page = new LinkedList<Item>();
+
+        Pager(ServiceExecutor executor, String where, String namespace, String expr, String pathGenerateService,
+                TransferCheckpoint checkpoint, IncrementalSync sync, boolean unarchive) {
+            _executor = executor;
+            _where = where;
+            _namespace = namespace;
+            _expr = expr;
+            _pathGenerateService = pathGenerateService;
+            _checkpoint = checkpoint;
+            _sync = sync;
+            _unarchive = unarchive;
+        }
+
+        Item next() throws Throwable {
+            while (_page.isEmpty() && _remaining > 0) {
+                nextPage();
+            }
+            return _page.poll();
+        }
+
+        private void nextPage() throws Throwable {
+            XmlDocMaker dm = new XmlDocMaker("args");
+            dm.add("where", _where);
+            dm.add("count", true);
+            dm.add("idx", _idx);
+            dm.add("size", AbstractSshPutService.PAGE_SIZE);
+            if (_expr != null) {
+                dm.add("action", "pipe");
+                dm.push("service", new String[] { "name", _pathGenerateService });
+                dm.add("expr", _expr);
+                dm.pop();
+                dm.add("pipe-generate-result-xml", true);
+            } else {
+                dm.add("action", "get-path");
+            }
+            XmlDoc.Element re = _executor.execute("asset.query", dm.root());
+            if (_total < 0) {
+                _total = re.longValue("cursor/total", 0);
+            }
+            _remaining = re.intValue("cursor/remaining", 0);
+            List<XmlDoc.Element> pes = re.elements("path");
+            Map<String, long[]> stats = pes != null ? contentStats() : null;
+            if (pes != null) {
+                for (XmlDoc.Element pe : pes) {
+                    String id = pe.value("@id");
+                    String path = pe.value();
+                    if (_namespace != null) {
+                        path = PathUtils.getRelativePath(PathUtils.trimSlash(path), PathUtils.trimSlash(_namespace));
+                    } else {
+                        path = PathUtils.trimSlash(path);
+                    }
+                    long[] stat = stats.get(id);
+                    long size = stat == null ? -1 : stat[0];
+                    long mtime = stat == null ? -1 : stat[1];
+                    long csum = stat == null ? -1 : stat[2];
+                    if (skip(id, path, size, mtime)) {
+                        continue;
+                    }
+                    _page.add(new Item(id, path, size, csum));
+                }
+            }
+            _idx += AbstractSshPutService.PAGE_SIZE;
+        }
+
+        /**
+         * Checks if the asset is skipped: its remote file is unchanged
+         * (incremental mode), or it was transferred by a previous run
+         * (checkpoint). The directory a skipped archive is extracted into
+         * (unarchive mode) is recorded as seen, so that the files extracted
+         * by the previous runs are not orphans.
+         *
+         * @param id
+         * @param path
+         *            the destination path.
+         * @param size
+         *            the content size. Negative if unknown.
+         * @param mtime
+         *            the modification time in milliseconds. Negative if
+         *            unknown.
+         * @return
+         */
+        boolean skip(String id, String path, long size, long mtime) {
+            // isUnchanged() also records the path, so it is not an orphan.
+            boolean skip = (_sync != null && _sync.isUnchanged(path, size, mtime))
+                    || (_checkpoint != null && _checkpoint.isCompleted(id));
+            if (skip) {
+                _skipped++;
+                if (_sync != null) {
+                    // the files extracted from the archive are not orphans.
+                    _sync.seen(path, _unarchive);
+                }
+            }
+            return skip;
+        }
+
+        /**
+         * Content sizes, modification times (milliseconds) and checksums of
+         * the assets in the current page, keyed by asset id, by a single
+         * query. Same query, paging and order as the path query: the assets
+         * missing from the map (if the results changed in between) are
+         * treated as changed.
+         */
+        private Map<String, long[]> contentStats() throws Throwable {
+            XmlDocMaker dm = new XmlDocMaker("args");
+            dm.add("where", _where);
+            dm.add("idx", _idx);
+            dm.add("size", AbstractSshPutService.PAGE_SIZE);
+            dm.add("action", "get-value");
+            dm.add("xpath", new String[] { "ename", "size" }, "content/size");
+            dm.add("xpath", new String[] { "ename", "mtime" }, "mtime/@millisec");
+            dm.add("xpath", new String[] { "ename", "csum" }, "content/csum");
+            XmlDoc.Element re = _executor.execute("asset.query", dm.root());
+            Map<String, long[]> stats = new HashMap<String, long[]>();
+            List<XmlDoc.Element> aes = re.elements("asset");
+            if (aes != null) {
+                for (XmlDoc.Element ae : aes) {
+                    stats.put(ae.value("@id"), new long[] { ae.longValue("size", -1), ae.longValue("mtime", -1),
+                            csum(ae.value("csum")) });
+                }
+            }
+            return stats;
+        }
+
+        /**
+         * Parses the content checksum (CRC32, in hexadecimal).
+         */
+        private static long csum(String value) {
+            if (value == null) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(value.trim(), 16);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        long total() {
+            return _total;
+        }
+
+        long skipped() {
+            return _skipped;
+        }
+    }
+
+    private ServiceExecutor _executor;
+    private Pager _pager;
+    private int _prefetch;
+    private BlockingQueue<Item> _paths;
+    private BlockingQueue<Item> _assets;
+    private List<Thread> _threads;
+    private volatile boolean _closed;
+    private volatile Throwable _error;
+
+    AssetTransferPipeline(ServiceExecutor executor, String where, String namespace, String expr,
+            String pathGenerateService, TransferCheckpoint checkpoint, IncrementalSync sync, boolean unarchive,
+            int queryQueueSize, int prefetch) {
+        _executor = executor;
+        _pager = new Pager(executor, where, namespace, expr, pathGenerateService, checkpoint, sync, unarchive);
+        _prefetch = prefetch;
+        _threads = new ArrayList<Thread>(2);
+        if (_prefetch > 0) {
+            _paths = new ArrayBlockingQueue<Item>(Math.max(1, queryQueueSize));
+            _assets = new ArrayBlockingQueue<Item>(_prefetch);
+        }
+    }
+
+    void start() {
+        if (_prefetch <= 0) {
+            return;
+        }
+        Thread pager = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                page();
+            }
+        }, "ssh-put-pager");
+        Thread prefetcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                prefetch();
+            }
+        }, "ssh-put-prefetcher");
+        _threads.add(pager);
+        _threads.add(prefetcher);
+        for (Thread t : _threads) {
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    private void page() {
+        try {
+            Item item;
+            while (!_closed && (item = _pager.next()) != null) {
+                offer(_paths, item);
+            }
+        } catch (Throwable e) {
+            _error = e;
+        } finally {
+            offer(_paths, END);
+        }
+    }
+
+    private void prefetch() {
+        try {
+            Item item;
+            while (!_closed && (item = poll(_paths)) != END) {
+                if (item == null) {
+                    continue;
+                }
+                fetch(item);
+                if (!offer(_assets, item)) {
+                    item.close();
+                }
+            }
+        } finally {
+            offer(_assets, END);
+        }
+    }
+
+    private void fetch(Item item) {
+        try {
+            item.output = AbstractSshPutService.getAssetContent(_executor, item.id);
+        } catch (Throwable e) {
+            item.error = e;
+        }
+    }
+
+    /**
+     * Blocks until there is room in the queue or the pipeline is closed.
+     */
+    private boolean offer(BlockingQueue<Item> queue, Item item) {
+        try {
+            while (!queue.offer(item, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                if (_closed) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    private Item poll(BlockingQueue<Item> queue) {
+        try {
+            return queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            return END;
+        }
+    }
+
+    /**
+     * Gets the next asset (with its content opened, unless the item has an
+     * error). The caller is responsible to close the item. Checks if the
+     * service task has been aborted while waiting.
+     *
+     * @return the next asset or null if there is no more.
+     * @throws Throwable
+     */
+    Item next() throws Throwable {
+        if (_prefetch <= 0) {
+            PluginTask.checkIfThreadTaskAborted();
+            Item item = _pager.next();
+            if (item != null) {
+                fetch(item);
+            }
+            return item;
+        }
+        while (true) {
+            PluginTask.checkIfThreadTaskAborted();
+            Item item = _assets.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            if (item == END) {
+                // put it back for subsequent calls.
+                _assets.offer(END);
+                if (_error != null) {
+                    throw _error;
+                }
+                return null;
+            }
+            if (item != null) {
+                return item;
+            }
+        }
+    }
+
+    /**
+     * Total number of assets matched by the query. -1 if not yet known.
+     *
+     * @return
+     */
+    long total() {
+        return _pager.total();
+    }
+
+    /**
+     * Number of assets skipped so far because they are recorded in the
+     * checkpoint or unchanged.
+     *
+     * @return
+     */
+    long skipped() {
+        return _pager.skipped();
+    }
+
+    /**
+     * Stops the stages and closes the prefetched outputs that have not been
+     * consumed.
+     */
+    void close() {
+        _closed = true;
+        for (Thread t : _threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (_assets != null) {
+            List<Item> items = new ArrayList<Item>();
+            _assets.drainTo(items);
+            for (Item item : items) {
+                item.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,314 @@
+package daris.ssh.plugin.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import arc.mf.plugin.PluginTask;
+import io.github.xtman.io.util.ChecksumInputStream;
+import io.github.xtman.ssh.client.Connection;
+import io.github.xtman.ssh.client.Executor;
+import io.github.xtman.ssh.client.TransferException;
+import io.github.xtman.util.ShellUtils;
+
+/**
+ * Verifies the asset contents sent, without reading them again:
+ *
+ * 1. the CRC32 of the bytes sent, computed as they are read, is compared with
+ * the checksum of the asset content (content/csum);
+ *
+ * 2. if remote verification is enabled, the SHA-256 digest of the bytes sent,
+ * computed in the same pass, is compared with the one of the remote file,
+ * computed by sha256sum (or shasum -a 256) on the server. The remote commands
+ * are run by a background thread, over exec channels, in parallel with the
+ * following transfers. If the server does not allow remote commands (e.g.
+ * sftp only) or has no such command, the remote verification is disabled.
+ *
+ * The (local) mismatches are thrown; the remote ones are collected and
+ * retrieved by {@link #pollFailures()}.
+ */
+class ContentVerifier {
+
+    public static final int MAX_PENDING_REMOTE_CHECKS = 1000;
+
+    private static final long POLL_INTERVAL = 500L;
+
+    private static class RemoteCheck {
+        final String path;
+        final String sha256;
+
+        RemoteCheck(String path, String sha256) {
+            this.path = path;
+            this.sha256 = sha256;
+        }
+    }
+
+    private static final RemoteCheck STOP = new RemoteCheck(null, null);
+
+    private Connection _cxn;
+    private String _directory;
+    private volatile boolean _remote;
+    private volatile String _remoteError;
+    private String _remoteCommand;
+    private BlockingQueue<RemoteCheck> _queue;
+    private Thread _thread;
+    private boolean _remoteRequested;
+    private ConcurrentLinkedQueue<TransferException> _failures;
+    private AtomicLong _verified;
+    private AtomicLong _remoteVerified;
+
+    /**
+     *
+     * @param cxn
+     * @param directory
+     *            the remote base directory of the transfer client. Null for
+     *            the default (home) directory.
+     * @param remote
+     *            verify the remote files.
+     */
+    ContentVerifier(Connection cxn, String directory, boolean remote) {
+        _cxn = cxn;
+        _directory = directory == null ? Connection.DEFAULT_REMOTE_BASE_DIRECTORY : directory;
+        _remote = remote;
+        _remoteRequested = remote;
+        _failures = new ConcurrentLinkedQueue<TransferException>();
+        _verified = new AtomicLong(0);
+        _remoteVerified = new AtomicLong(0);
+        if (_remote) {
+            _queue = new ArrayBlockingQueue<RemoteCheck>(MAX_PENDING_REMOTE_CHECKS);
+            _thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    checkRemote();
+                }
+            }, "ssh-put-verifier");
+            _thread.setDaemon(true);
+            _thread.start();
+        }
+    }
+
+    /**
+     * Wraps the content input stream to compute its checksums as it is sent.
+     *
+     * @param in
+     * @return
+     */
+    ChecksumInputStream wrap(InputStream in) {
+        return new ChecksumInputStream(in, _remote);
+    }
+
+    /**
+     * Verifies the content sent and queues the verification of the remote
+     * file. The content not read to the end (e.g. not sent again because the
+     * remote file is complete) is not verified.
+     *
+     * @param in
+     *            the wrapped content input stream.
+     * @param length
+     *            the content length. Negative if unknown.
+     * @param csum
+     *            the CRC32 checksum of the asset content. Negative if unknown.
+     * @param dstPath
+     *            the remote file path, relative to the base directory.
+     * @throws Throwable
+     */
+    void verify(ChecksumInputStream in, long length, long csum, String dstPath) throws Throwable {
+        if (length >= 0 && in.bytesRead() != length) {
+            return;
+        }
+        if (csum >= 0 && in.crc32() != csum) {
+            throw new TransferException(dstPath, String.format(
+                    "Checksum mismatch: CRC32 of the content sent is %08x, asset content checksum is %08x.",
+                    in.crc32(), csum));
+        }
+        _verified.incrementAndGet();
+        String sha256 = in.sha256();
+        if (sha256 != null) {
+            RemoteCheck check = new RemoteCheck(dstPath, sha256);
+            // blocks while the queue is full, unless the remote verification
+            // is disabled in the meantime.
+            while (_remote && !_queue.offer(check, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+            }
+        }
+    }
+
+    private void checkRemote() {
+        Executor executor = null;
+        try {
+            executor = _cxn.createExecutor(_directory);
+            _remoteCommand = remoteCommand(executor);
+            if (_remoteCommand == null) {
+                disableRemote("Neither sha256sum nor shasum is found on the remote server.");
+            }
+            while (true) {
+                RemoteCheck check = _queue.take();
+                if (check == STOP) {
+                    break;
+                }
+                if (_remote) {
+                    checkRemote(executor, check);
+                }
+            }
+        } catch (InterruptedException e) {
+            disableRemote("Interrupted.");
+        } catch (Throwable e) {
+            // e.g. exec channel is not allowed.
+            disableRemote(e.getMessage() == null ? e.toString() : e.getMessage());
+        } finally {
+            if (executor != null) {
+                try {
+                    executor.close();
+                } catch (Throwable e) {
+
+                }
+            }
+        }
+    }
+
+    private void disableRemote(String error) {
+        _remote = false;
+        _remoteError = error;
+        if (_queue != null) {
+            // unblock the producer.
+            List<RemoteCheck> checks = new ArrayList<RemoteCheck>();
+            _queue.drainTo(checks);
+        }
+    }
+
+    private static String remoteCommand(Executor executor) throws Throwable {
+        if (commandExists(executor, "sha256sum")) {
+            return "sha256sum --";
+        }
+        if (commandExists(executor, "shasum")) {
+            return "shasum -a 256 --";
+        }
+        return null;
+    }
+
+    /*
+     * command -v prints the path of the command: the server may run another
+     * command instead (e.g. ForceCommand internal-sftp), which exits
+     * successfully.
+     */
+    private static boolean commandExists(Executor executor, String command) throws Throwable {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        return executor.execute("command -v " + command, out, null) == 0 && out.size() > 0;
+    }
+
+    private void checkRemote(Executor executor, RemoteCheck check) throws Throwable {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = executor.execute(_remoteCommand + " " + ShellUtils.quote(check.path), out, err);
+        if (status != 0) {
+            _failures.add(new TransferException(check.path,
+                    "Remote checksum failed (exit status " + status + "): " + err.toString("UTF-8").trim()));
+            return;
+        }
+        String output = out.toString("UTF-8").trim();
+        if (output.startsWith("\\")) {
+            // the file name is escaped.
+            output = output.substring(1);
+        }
+        int idx = output.indexOf(' ');
+        String sha256 = idx > 0 ? output.substring(0, idx) : output;
+        if (!check.sha256.equalsIgnoreCase(sha256)) {
+            _failures.add(new TransferException(check.path, "Checksum mismatch: SHA-256 of the content sent is "
+                    + check.sha256 + ", remote file SHA-256 is " + sha256 + "."));
+            return;
+        }
+        _remoteVerified.incrementAndGet();
+    }
+
+    /**
+     * Retrieves (and removes) the remote verification failures since last
+     * call.
+     *
+     * @return
+     */
+    List<TransferException> pollFailures() {
+        List<TransferException> failures = new ArrayList<TransferException>();
+        TransferException e;
+        while ((e = _failures.poll()) != null) {
+            failures.add(e);
+        }
+        return failures;
+    }
+
+    /**
+     * Waits for the queued remote verifications to complete, unless the
+     * service task is aborted. The failures remain available to
+     * {@link #pollFailures()}.
+     *
+     * @throws Throwable
+     */
+    void close() throws Throwable {
+        if (_thread != null) {
+            try {
+                while (_thread.isAlive() && !_queue.offer(STOP, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    PluginTask.checkIfThreadTaskAborted();
+                }
+                while (_thread.isAlive()) {
+                    // the remote commands may not return (e.g. the server
+                    // accepts but does not run them).
+                    _thread.join(POLL_INTERVAL);
+                    PluginTask.checkIfThreadTaskAborted();
+                }
+            } catch (Throwable e) {
+                abort();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Aborts the queued remote verifications.
+     */
+    void abort() {
+        if (_thread != null) {
+            _thread.interrupt();
+        }
+    }
+
+    /**
+     * Number of contents verified (against the asset checksums).
+     *
+     * @return
+     */
+    long verified() {
+        return _verified.get();
+    }
+
+    /**
+     * Whether the remote files are (or were, until disabled) verified.
+     *
+     * @return
+     */
+    boolean remote() {
+        return _remoteRequested;
+    }
+
+    /**
+     * Number of remote files verified.
+     *
+     * @return
+     */
+    long remoteVerified() {
+        return _remoteVerified.get();
+    }
+
+    /**
+     * Why the remote verification was disabled. Null if it was not.
+     *
+     * @return
+     */
+    String remoteError() {
+        return _remoteError;
+    }
+
+}
@@ -0,0 +1,183 @@
+package daris.ssh.plugin.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import arc.archive.ArchiveRegistry;
+import io.github.xtman.ssh.client.FileAttrs;
+import io.github.xtman.ssh.client.SftpClient;
+import io.github.xtman.util.FileNameUtils;
+import io.github.xtman.util.PathUtils;
+
+/**
+ * Stat-based diff between the assets and the remote tree, for the incremental
+ * mode of the put services. The remote tree is listed once, before the
+ * transfer. An asset is unchanged if the remote file has the same size as the
+ * asset content and was modified after the asset (the remote mtime is the
+ * upload time).
+ *
+ * The destination paths of all the selected assets, and of the other files
+ * sent (service input, url), are recorded (seen), so that the remote files not
+ * belonging to any of them (orphans) can be deleted afterwards.
+ */
+class IncrementalSync {
+
+    private Map<String, FileAttrs> _remoteFiles;
+    private Set<String> _seen;
+    private Set<String> _seenDirs;
+
+    IncrementalSync() {
+        _remoteFiles = new HashMap<String, FileAttrs>();
+        _seen = new HashSet<String>();
+        _seenDirs = new HashSet<String>();
+    }
+
+    /**
+     * Checks that the orphans can be deleted under the remote base directory.
+     * The directory must be specified, and must be neither the home directory
+     * of the user nor one of its ancestors: the remote files that are not
+     * sent (e.g. the dot files in the home directory) would be deleted.
+     *
+     * @param directory
+     *            the destination directory argument. Null if not specified.
+     * @param baseDir
+     *            the absolute path of the remote base directory.
+     * @param homeDir
+     *            the absolute path of the home directory of the user.
+     * @throws IllegalArgumentException
+     *             if the orphans cannot be deleted under the directory.
+     */
+    static void checkDeleteOrphans(String directory, String baseDir, String homeDir) {
+        if (directory == null || directory.trim().isEmpty()) {
+            throw new IllegalArgumentException("The directory must be specified to delete the orphans.");
+        }
+        String base = trimTrailingSlashes(baseDir);
+        String home = trimTrailingSlashes(homeDir);
+        if (home.equals(base) || home.startsWith(base + "/")) {
+            throw new IllegalArgumentException("Cannot delete the orphans in directory: '" + baseDir
+                    + "'. It is the home directory, or one of its ancestors.");
+        }
+    }
+
+    private static String trimTrailingSlashes(String path) {
+        int end = path.length();
+        while (end > 0 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        // the root directory is the empty string.
+        return path.substring(0, end);
+    }
+
+    /**
+     * Lists the remote tree (under the base directory of the client).
+     *
+     * @param client
+     * @throws Throwable
+     */
+    void load(SftpClient client) throws Throwable {
+        load(client.list(".", true));
+    }
+
+    /**
+     * Adds the listed remote files.
+     *
+     * @param files
+     *            the remote files, with the paths relative to the base
+     *            directory.
+     */
+    void load(List<FileAttrs> files) {
+        for (FileAttrs file : files) {
+            _remoteFiles.put(file.path(), file);
+        }
+    }
+
+    int remoteFiles() {
+        return _remoteFiles.size();
+    }
+
+    /**
+     * Records the destination path of a selected asset and checks if it
+     * needs to be transferred.
+     *
+     * @param dstPath
+     *            the destination file path.
+     * @param size
+     *            the asset content size. Negative if unknown.
+     * @param mtime
+     *            the asset modification time in milliseconds. Negative if
+     *            unknown.
+     * @return true if the remote file is up to date.
+     */
+    synchronized boolean isUnchanged(String dstPath, long size, long mtime) {
+        _seen.add(dstPath);
+        if (size < 0 || mtime < 0) {
+            return false;
+        }
+        FileAttrs remote = _remoteFiles.get(dstPath);
+        return remote != null && remote.length() == size && remote.mtime() != null
+                && remote.mtime() >= mtime / 1000L;
+    }
+
+    /**
+     * Records the destination path of a file sent, or the directory it is
+     * extracted into if it is an archive to extract.
+     *
+     * @param dstPath
+     *            the destination file path.
+     * @param unarchive
+     *            the archives are extracted.
+     */
+    synchronized void seen(String dstPath, boolean unarchive) {
+        if (unarchive && ArchiveRegistry.isAnArchiveExtension(FileNameUtils.getFileExtension(dstPath))) {
+            _seenDirs.add(FileNameUtils.removeFileExtension(dstPath));
+        } else {
+            _seen.add(dstPath);
+        }
+    }
+
+    /**
+     * Records the directory an archive is extracted into, or a directory tree
+     * is sent into. The remote files in it are never orphans.
+     *
+     * @param dstDir
+     */
+    synchronized void seenDirectory(String dstDir) {
+        _seenDirs.add(dstDir);
+    }
+
+    /**
+     * The remote files listed by {@link #load(SftpClient)} that do not belong
+     * to any of the selected assets.
+     *
+     * @return
+     */
+    synchronized List<String> orphans() {
+        List<String> orphans = new ArrayList<String>();
+        for (String path : _remoteFiles.keySet()) {
+            if (!_seen.contains(path) && !inSeenDirectory(path)) {
+                orphans.add(path);
+            }
+        }
+        return orphans;
+    }
+
+    private boolean inSeenDirectory(String path) {
+        if (_seenDirs.isEmpty()) {
+            return false;
+        }
+        String dir = PathUtils.getParent(path);
+        while (dir != null) {
+            if (_seenDirs.contains(dir)) {
+                return true;
+            }
+            String parent = PathUtils.getParent(dir);
+            dir = dir.equals(parent) ? null : parent;
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,104 @@
+package daris.ssh.plugin.services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import arc.mf.plugin.ServiceExecutor;
+import arc.xml.XmlDocMaker;
+import io.github.xtman.util.PathUtils;
+
+/**
+ * Bounded (least recently used) cache of the asset namespaces known to exist,
+ * for the execution of a get service, so that the namespace of every remote
+ * directory is checked (and created) once. A missing namespace is created
+ * together with its missing ancestors by a single call, and the namespaces
+ * under one created by this execution are created without checking if they
+ * exist. So the number of service calls grows with the number of distinct
+ * directories, not with the depth of the tree.
+ *
+ * Thread safe: the directories are handled concurrently by the multi-channel
+ * get.
+ */
+class NamespaceCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private ServiceExecutor _executor;
+
+    /*
+     * namespace -> true if created by this execution, false if it existed.
+     */
+    private Map<String, Boolean> _entries;
+
+    NamespaceCache(ServiceExecutor executor, String root, final int maxEntries) {
+        _executor = executor;
+        _entries = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        if (root != null) {
+            put(root, false);
+        }
+    }
+
+    /**
+     *
+     * @param executor
+     * @param root
+     *            the destination namespace, known to exist.
+     */
+    NamespaceCache(ServiceExecutor executor, String root) {
+        this(executor, root, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Creates the namespace (and its ancestors) if it does not exist.
+     *
+     * @param namespace
+     * @throws Throwable
+     */
+    void create(String namespace) throws Throwable {
+        boolean parentCreated;
+        synchronized (_entries) {
+            if (_entries.get(namespace) != null) {
+                return;
+            }
+            String parent = PathUtils.getParent(namespace);
+            parentCreated = parent != null && Boolean.TRUE.equals(_entries.get(parent));
+        }
+        boolean created = false;
+        if (parentCreated || !AbstractSshGetService.assetNamespaceExists(_executor, namespace)) {
+            try {
+                XmlDocMaker dm = new XmlDocMaker("args");
+                dm.add("namespace", new String[] { "all", "true" }, namespace);
+                _executor.execute("asset.namespace.create", dm.root());
+                created = true;
+            } catch (Throwable e) {
+                // may have been created by another thread (or service).
+                if (!AbstractSshGetService.assetNamespaceExists(_executor, namespace)) {
+                    throw e;
+                }
+            }
+        }
+        put(namespace, created);
+    }
+
+    private void put(String namespace, boolean created) {
+        synchronized (_entries) {
+            _entries.put(namespace, created);
+            // so do the ancestors (which may have existed).
+            String ns = namespace;
+            String parent = PathUtils.getParent(ns);
+            while (parent != null && !parent.equals(ns) && _entries.get(parent) == null) {
+                _entries.put(parent, false);
+                ns = parent;
+                parent = PathUtils.getParent(ns);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package daris.ssh.plugin.services;
+
+import java.util.Map;
+
+import arc.mf.plugin.PluginService;
+import arc.xml.XmlDoc.Element;
+import arc.xml.XmlWriter;
+import daris.ssh.plugin.SshConnectionPool;
+import io.github.xtman.ssh.client.ConnectionPool;
+
+public class SvcConnectionPoolDescribe extends PluginService {
+
+    public static final String SERVICE_NAME = "daris.ssh.connection.pool.describe";
+
+    private Interface _defn;
+
+    public SvcConnectionPoolDescribe() {
+        _defn = new Interface();
+    }
+
+    @Override
+    public Access access() {
+        return ACCESS_ACCESS;
+    }
+
+    @Override
+    public Interface definition() {
+        return _defn;
+    }
+
+    @Override
+    public String description() {
+        return "Describes the pool of SSH connections shared by the sinks and services of this plugin.";
+    }
+
+    @Override
+    public void execute(Element args, Inputs inputs, Outputs outputs, XmlWriter w) throws Throwable {
+        ConnectionPool pool = SshConnectionPool.get();
+        w.push("pool", new String[] { "idle-timeout", Long.toString(pool.idleTimeout()), "max-connections-per-host",
+                Integer.toString(pool.maxConnectionsPerHost()) });
+        w.add("hits", pool.hits());
+        w.add("misses", pool.misses());
+        w.add("evictions", pool.evictions());
+        w.add("stale", pool.staleConnections());
+        w.add("idle", pool.idleConnections());
+        w.add("leased", pool.leasedConnections());
+        Map<String, Integer> hosts = pool.hostConnections();
+        for (String host : hosts.keySet()) {
+            w.add("host", new String[] { "name", host }, hosts.get(host));
+        }
+        w.pop();
+    }
+
+    @Override
+    public String name() {
+        return SERVICE_NAME;
+    }
+
+}
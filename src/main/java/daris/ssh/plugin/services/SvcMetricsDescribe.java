@@ -0,0 +1,101 @@
+package daris.ssh.plugin.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import arc.mf.plugin.PluginService;
+import arc.mf.plugin.dtype.BooleanType;
+import arc.mf.plugin.dtype.StringType;
+import arc.xml.XmlDoc.Element;
+import arc.xml.XmlWriter;
+import io.github.xtman.ssh.client.SshMetrics;
+import io.github.xtman.util.metrics.Histogram;
+import io.github.xtman.util.metrics.Metrics;
+import io.github.xtman.util.metrics.MetricsRegistry;
+
+public class SvcMetricsDescribe extends PluginService {
+
+    public static final String SERVICE_NAME = "daris.ssh.metrics.describe";
+
+    private Interface _defn;
+
+    public SvcMetricsDescribe() {
+        _defn = new Interface();
+        _defn.add(new Interface.Element("scope", StringType.DEFAULT,
+                "The scope of the metrics, e.g. connection:user@host:22 or sink:scp. If not specified, all the scopes are described.",
+                0, Integer.MAX_VALUE));
+        _defn.add(new Interface.Element("reset", BooleanType.DEFAULT,
+                "Reset the metrics after they are described. Defaults to false.", 0, 1));
+    }
+
+    @Override
+    public Access access() {
+        return ACCESS_ACCESS;
+    }
+
+    @Override
+    public Interface definition() {
+        return _defn;
+    }
+
+    @Override
+    public String description() {
+        return "Describes the transfer metrics (counters, latency histograms and throughput) recorded by the sinks and services of this plugin since they were started or last reset.";
+    }
+
+    @Override
+    public void execute(Element args, Inputs inputs, Outputs outputs, XmlWriter w) throws Throwable {
+        Collection<String> scopes = args.values("scope");
+        boolean reset = args.booleanValue("reset", false);
+        List<Metrics> mss = new ArrayList<Metrics>();
+        for (Metrics ms : MetricsRegistry.all()) {
+            if (scopes == null || scopes.contains(ms.scope())) {
+                mss.add(ms);
+            }
+        }
+        for (Metrics ms : mss) {
+            describe(ms, w);
+            if (reset) {
+                ms.reset();
+            }
+        }
+    }
+
+    private static void describe(Metrics ms, XmlWriter w) throws Throwable {
+        long since = ms.since();
+        double elapsed = Math.max(1L, System.currentTimeMillis() - since) / 1000.0;
+        w.push("metrics", new String[] { "scope", ms.scope(), "since", new Date(since).toString() });
+        Map<String, Long> counters = ms.counters();
+        for (String name : counters.keySet()) {
+            w.add("counter", new String[] { "name", name }, counters.get(name));
+        }
+        Map<String, Histogram> histograms = ms.histograms();
+        for (String name : histograms.keySet()) {
+            Histogram h = histograms.get(name);
+            w.add("histogram",
+                    new String[] { "name", name, "count", Long.toString(h.count()), "min", Long.toString(h.min()),
+                            "max", Long.toString(h.max()), "mean", String.format("%.2f", h.mean()), "p50",
+                            Long.toString(h.percentile(50)), "p90", Long.toString(h.percentile(90)), "p99",
+                            Long.toString(h.percentile(99)) },
+                    h.sum());
+        }
+        long files = ms.counter(SshMetrics.FILES_SENT) + ms.counter(SshMetrics.FILES_RECEIVED);
+        long bytes = ms.counter(SshMetrics.BYTES_SENT) + ms.counter(SshMetrics.BYTES_RECEIVED);
+        if (files > 0 || bytes > 0) {
+            w.push("throughput", new String[] { "elapsed", String.format("%.3f", elapsed), "units", "s" });
+            w.add("files-per-second", String.format("%.2f", files / elapsed));
+            w.add("megabytes-per-second", String.format("%.3f", bytes / elapsed / 1000000.0));
+            w.pop();
+        }
+        w.pop();
+    }
+
+    @Override
+    public String name() {
+        return SERVICE_NAME;
+    }
+
+}
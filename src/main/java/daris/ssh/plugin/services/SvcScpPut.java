@@ -1,5 +1,7 @@
 package daris.ssh.plugin.services;
 
+import arc.mf.plugin.dtype.BooleanType;
+import arc.xml.XmlDoc;
 import io.github.xtman.ssh.client.Connection;
 import io.github.xtman.ssh.client.ScpClient;
 
@@ -7,9 +9,18 @@ public class SvcScpPut extends AbstractSshPutService {
 
     public static final String SERVICE_NAME = "daris.scp.put";
 
+    public SvcScpPut() {
+        this.defn.add(new Interface.Element("pipeline", BooleanType.DEFAULT,
+                "Pipelines the scp transfer: waits for the acknowledgement of the file and directory messages only, and receives the other acknowledgements while sending the next file, so that a file costs one round trip instead of two (three if the times are preserved). The failure of a file may be reported after the following files are sent. Only effective if the server does not delay the acknowledgements (TCP_NODELAY). Defaults to false.",
+                0, 1));
+    }
+
     @Override
-    protected ScpClient createTransferClient(Connection cxn, String directory) throws Throwable {
-        return cxn.createScpClient(directory);
+    protected ScpClient createTransferClient(Connection cxn, String directory, XmlDoc.Element args)
+            throws Throwable {
+        ScpClient scp = cxn.createScpClient(directory);
+        scp.setPipelined(args.booleanValue("pipeline", false));
+        return scp;
     }
 
     @Override
@@ -1,21 +1,54 @@
 package daris.ssh.plugin.services;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import arc.mf.plugin.PluginTask;
+import arc.mf.plugin.dtype.IntegerType;
 import arc.xml.XmlDoc.Element;
 import arc.xml.XmlWriter;
 import io.github.xtman.ssh.client.Connection;
+import io.github.xtman.ssh.client.ParallelGetClient;
 import io.github.xtman.ssh.client.SftpClient;
 import io.github.xtman.ssh.client.TransferClient.GetHandler;
+import io.github.xtman.ssh.client.TransferException;
 import io.github.xtman.util.PathUtils;
 
 public class SvcSftpGet extends AbstractSshGetService {
 
     public static final String SERVICE_NAME = "daris.sftp.get";
 
+    public static final int MAX_CHANNELS = 32;
+
+    public static final int DEFAULT_LIST_CHANNELS = 2;
+
+    /**
+     * Maximum number of listed files waiting for a channel, per channel.
+     */
+    public static final int QUEUE_SIZE_PER_CHANNEL = 64;
+
+    private static final long POLL_INTERVAL = 500L;
+
     public SvcSftpGet() {
+        Interface.Element channels = new Interface.Element("channels", new IntegerType(1, MAX_CHANNELS),
+                "Number of channels (on the same connection) to get the files in parallel. Each channel creates the assets of its files: ingest-threads is not supported if greater than 1. Note that the server may limit the number of channels per connection (e.g. OpenSSH MaxSessions, defaults to 10). Defaults to 1.",
+                0, 1);
+        channels.add(new Interface.Attribute("list-channels", new IntegerType(1, MAX_CHANNELS),
+                "Number of additional channels to list the remote directories concurrently, if channels is greater than 1. Defaults to "
+                        + DEFAULT_LIST_CHANNELS + ".",
+                0));
+        this.defn.add(channels);
+        this.defn.add(new Interface.Element("outstanding-requests",
+                new IntegerType(1, SftpClient.MAX_OUTSTANDING_REQUESTS),
+                "Maximum number of sftp read requests in flight per file. Increase it for high-latency links. Defaults to "
+                        + SftpClient.DEFAULT_MAX_OUTSTANDING_REQUESTS + ".",
+                0, 1));
+    }
 
+    @Override
+    protected boolean concurrentGet(Element args) throws Throwable {
+        return args.intValue("channels", 1) > 1;
     }
 
     @Override
@@ -24,7 +57,16 @@ public class SvcSftpGet extends AbstractSshGetService {
 
         PluginTask.checkIfThreadTaskAborted();
 
-        SftpClient sftp = cxn.createSftpClient();
+        int outstandingRequests = args.intValue("outstanding-requests", SftpClient.DEFAULT_MAX_OUTSTANDING_REQUESTS);
+        int channels = args.intValue("channels", 1);
+        if (channels > 1) {
+            // the handler is the concurrent one (see concurrentGet).
+            int listChannels = args.intValue("channels/@list-channels", DEFAULT_LIST_CHANNELS);
+            parallelGet(cxn, paths, gh, channels, listChannels, outstandingRequests, w, onError);
+            return;
+        }
+
+        SftpClient sftp = createSftpClient(cxn, outstandingRequests);
         try {
             for (String path : paths) {
 
@@ -44,6 +86,72 @@ public class SvcSftpGet extends AbstractSshGetService {
         }
     }
 
+    private static SftpClient createSftpClient(Connection cxn, int outstandingRequests) throws Throwable {
+        SftpClient sftp = cxn.createSftpClient();
+        sftp.setMaxOutstandingRequests(outstandingRequests);
+        return sftp;
+    }
+
+    private static void parallelGet(Connection cxn, Collection<String> paths, GetHandler gh, int channels,
+            int listChannels, int outstandingRequests, XmlWriter w, OnError onError) throws Throwable {
+        List<SftpClient> listers = new ArrayList<SftpClient>(listChannels);
+        List<SftpClient> workers = new ArrayList<SftpClient>(channels);
+        try {
+            for (int i = 0; i < listChannels; i++) {
+                listers.add(cxn.createSftpClient());
+            }
+            for (int i = 0; i < channels; i++) {
+                workers.add(createSftpClient(cxn, outstandingRequests));
+            }
+        } catch (Throwable e) {
+            for (SftpClient client : listers) {
+                client.close();
+            }
+            for (SftpClient client : workers) {
+                client.close();
+            }
+            throw e;
+        }
+        ParallelGetClient pg = new ParallelGetClient(listers, workers, channels * QUEUE_SIZE_PER_CHANNEL,
+                onError.retry());
+        long completed = 0;
+        try {
+            for (String path : paths) {
+                pg.submit(path, gh);
+            }
+            boolean done = false;
+            while (!done) {
+                done = pg.await(POLL_INTERVAL);
+                PluginTask.checkIfThreadTaskAborted();
+                // progress of the files got by the worker threads.
+                long c = pg.completed();
+                PluginTask.threadTaskCompleted(c - completed);
+                completed = c;
+                addFailures(w, pg.pollFailures(), onError);
+            }
+        } catch (Throwable e) {
+            pg.abort();
+            throw e;
+        } finally {
+            try {
+                pg.close();
+            } finally {
+                PluginTask.threadTaskCompleted(pg.completed() - completed);
+                addFailures(w, pg.pollFailures(), onError);
+            }
+        }
+    }
+
+    private static void addFailures(XmlWriter w, List<TransferException> failures, OnError onError)
+            throws Throwable {
+        for (TransferException e : failures) {
+            w.add("failed", new String[] { "error", e.getMessage() }, e.path());
+        }
+        if (!failures.isEmpty() && onError.stopOnError()) {
+            throw failures.get(0);
+        }
+    }
+
     @Override
     public String description() {
         return "Get files from remote server to sepcified asset namespace via SFTP.";
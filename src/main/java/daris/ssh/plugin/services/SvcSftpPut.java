@@ -1,5 +1,8 @@
 package daris.ssh.plugin.services;
 
+import arc.mf.plugin.dtype.BooleanType;
+import arc.mf.plugin.dtype.IntegerType;
+import arc.xml.XmlDoc;
 import io.github.xtman.ssh.client.Connection;
 import io.github.xtman.ssh.client.SftpClient;
 
@@ -7,9 +10,50 @@ public class SvcSftpPut extends AbstractSshPutService {
 
     public static final String SERVICE_NAME = "daris.sftp.put";
 
+    public static final int MAX_STRIPE_CHANNELS = 32;
+
+    public static final long DEFAULT_STRIPE_THRESHOLD_MB = SftpClient.DEFAULT_STRIPE_THRESHOLD / 1048576L;
+
+    public SvcSftpPut() {
+        Interface.Element incremental = new Interface.Element("incremental", BooleanType.DEFAULT,
+                "Incremental mode: list the remote directory first, then transfer only the assets whose remote file is missing, has a different size or is older than the asset. Defaults to false.",
+                0, 1);
+        incremental.add(new Interface.Attribute("delete-orphans", BooleanType.DEFAULT,
+                "Delete the remote files (under the directory) that do not belong to any of the selected assets, the input file or the url. The directory must be specified, and must be neither the home directory nor one of its ancestors. Defaults to false.",
+                0));
+        this.defn.add(incremental);
+        this.defn.add(new Interface.Element("outstanding-requests",
+                new IntegerType(1, SftpClient.MAX_OUTSTANDING_REQUESTS),
+                "Maximum number of sftp write requests in flight per file. Increase it for high-latency links. Defaults to "
+                        + SftpClient.DEFAULT_MAX_OUTSTANDING_REQUESTS + ".",
+                0, 1));
+        Interface.Element stripe = new Interface.Element("stripe", new IntegerType(0, MAX_STRIPE_CHANNELS),
+                "Number of additional channels to write a large file (see threshold) in parallel chunks. 0 or 1 to write every file over a single channel. Defaults to 0.",
+                0, 1);
+        stripe.add(new Interface.Attribute("threshold", new IntegerType(1, Integer.MAX_VALUE),
+                "Minimum size (in MB) of the files written in parallel chunks. Defaults to "
+                        + DEFAULT_STRIPE_THRESHOLD_MB + ".",
+                0));
+        stripe.add(new Interface.Attribute("verify", BooleanType.DEFAULT,
+                "Compare the SHA-256 digest of the file, computed while it is read, with the one computed by sha256sum (or shasum) on the remote server. Skipped if the server does not allow remote commands. (Its size is always verified.) Defaults to true.",
+                0));
+        this.defn.add(stripe);
+        this.defn.add(new Interface.Element("remote-commands", BooleanType.DEFAULT,
+                "Use remote commands (over exec channels) for the operations on whole trees: a single find to list the remote directory (incremental mode), and a single mkdir -p to create the directories of a local directory (url). Falls back to sftp if the server does not allow them. Defaults to false.",
+                0, 1));
+    }
+
     @Override
-    protected SftpClient createTransferClient(Connection cxn, String directory) throws Throwable {
-        return cxn.createSftpClient(directory);
+    protected SftpClient createTransferClient(Connection cxn, String directory, XmlDoc.Element args)
+            throws Throwable {
+        SftpClient client = cxn.createSftpClient(directory);
+        client.setMaxOutstandingRequests(
+                args.intValue("outstanding-requests", SftpClient.DEFAULT_MAX_OUTSTANDING_REQUESTS));
+        client.setStriping(args.intValue("stripe", 0),
+                args.longValue("stripe/@threshold", DEFAULT_STRIPE_THRESHOLD_MB) * 1048576L,
+                args.booleanValue("stripe/@verify", true));
+        client.setRemoteCommands(args.booleanValue("remote-commands", false));
+        return client;
     }
 
     @Override
@@ -0,0 +1,312 @@
+package daris.ssh.plugin.services;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import io.github.xtman.util.PathUtils;
+
+/**
+ * Persistent record of the assets transferred by a put service, so that an
+ * interrupted export can be restarted without sending the completed assets
+ * again. The checkpoint file is an append-only log (UTF-8), one line per
+ * event:
+ *
+ * <pre>
+ * &gt;\t{asset-id}\t{dst-path}            --- asset transfer started
+ * +\t{asset-id}\t{length}\t{dst-path}   --- asset transferred
+ * -\t{asset-id}                         --- asset failed after it was recorded
+ * </pre>
+ *
+ * The third form is needed because a pipelined scp client reports the failure
+ * of a file after the put call has returned. A line truncated by a crash is
+ * ignored when the file is loaded.
+ *
+ * The assets started but not transferred by the previous runs are the
+ * interrupted ones: only their remote files may be resumed (appended to). The
+ * other remote files are overwritten, since they are not known to be partial
+ * copies of the assets.
+ */
+class TransferCheckpoint implements Closeable {
+
+    /**
+     * System property (of the server) to set the directory of the checkpoint
+     * files.
+     */
+    public static final String DIRECTORY_PROPERTY = "daris.ssh.checkpoint.directory";
+
+    /**
+     * Default directory of the checkpoint files, relative to the home
+     * directory of the server process.
+     */
+    public static final String DEFAULT_DIRECTORY = ".daris-ssh-plugin/checkpoints";
+
+    private static final Pattern NAME_COMPONENT = Pattern.compile("[A-Za-z0-9._-]+");
+
+    /**
+     * Number of records written between two flushes. The start and failure
+     * records are flushed immediately.
+     */
+    public static final int FLUSH_INTERVAL = 100;
+
+    /**
+     * Number of recently recorded destination paths remembered to map the
+     * (late) failures back to their assets.
+     */
+    private static final int MAX_RECENT = 10000;
+
+    private File _file;
+    private boolean _resume;
+    private Set<String> _completed;
+    private Map<String, String> _interrupted;
+    private Map<String, String> _recent;
+    private Writer _writer;
+    private int _unflushed;
+    private long _recorded;
+
+    /**
+     *
+     * @param file
+     *            the checkpoint file.
+     * @param resume
+     *            resume the interrupted transfers.
+     * @throws IOException
+     */
+    TransferCheckpoint(File file, boolean resume) throws IOException {
+        _file = file;
+        _resume = resume;
+        _completed = new HashSet<String>();
+        _interrupted = new HashMap<String, String>();
+        _recent = new LinkedHashMap<String, String>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > MAX_RECENT;
+            }
+        };
+        if (_file.exists()) {
+            load();
+        } else if (_file.getParentFile() != null) {
+            _file.getParentFile().mkdirs();
+        }
+        boolean truncated = _file.length() > 0 && lastByte(_file) != '\n';
+        _writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(_file, true), "UTF-8"));
+        if (truncated) {
+            // terminate the truncated line so that it stays ignored.
+            _writer.write("\n");
+            _writer.flush();
+        }
+    }
+
+    /**
+     * The directory of the checkpoint files.
+     *
+     * @return
+     */
+    static File directory() {
+        String dir = System.getProperty(DIRECTORY_PROPERTY);
+        if (dir == null || dir.trim().isEmpty()) {
+            return new File(System.getProperty("user.home"), DEFAULT_DIRECTORY);
+        }
+        return new File(dir.trim());
+    }
+
+    /**
+     * Resolves the checkpoint name to its file, in the checkpoint directory.
+     *
+     * @param dir
+     *            the checkpoint directory.
+     * @param name
+     *            relative path of the checkpoint file: components of letters,
+     *            digits, '.', '_' and '-' separated by '/'. The components
+     *            '.' and '..' are not allowed.
+     * @return
+     * @throws IllegalArgumentException
+     *             if the name is not valid.
+     */
+    static File resolve(File dir, String name) throws IOException {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Missing checkpoint name.");
+        }
+        if (name.startsWith("/")) {
+            throw new IllegalArgumentException("Invalid checkpoint name: '" + name + "'. It must be relative.");
+        }
+        for (String component : name.split("/", -1)) {
+            if (".".equals(component) || "..".equals(component)
+                    || !NAME_COMPONENT.matcher(component).matches()) {
+                throw new IllegalArgumentException("Invalid checkpoint name: '" + name + "'.");
+            }
+        }
+        File file = new File(dir, name);
+        // in case of symbolic links.
+        String dirPath = dir.getCanonicalPath();
+        if (!file.getCanonicalPath().startsWith(dirPath + File.separator)) {
+            throw new IllegalArgumentException("Invalid checkpoint name: '" + name + "'.");
+        }
+        return file;
+    }
+
+    static File resolve(String name) throws IOException {
+        return resolve(directory(), name);
+    }
+
+    private static int lastByte(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(raf.length() - 1);
+            return raf.read();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void load() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(_file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split("\t", 4);
+                if (tokens.length == 3 && ">".equals(tokens[0])) {
+                    _interrupted.put(tokens[1], tokens[2]);
+                } else if (tokens.length == 4 && "+".equals(tokens[0])) {
+                    _completed.add(tokens[1]);
+                    _interrupted.remove(tokens[1]);
+                } else if (tokens.length == 2 && "-".equals(tokens[0])) {
+                    _completed.remove(tokens[1]);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    File file() {
+        return _file;
+    }
+
+    /**
+     * Checks if the asset was transferred by a previous run (or this one).
+     *
+     * @param id
+     * @return
+     */
+    synchronized boolean isCompleted(String id) {
+        return _completed.contains(id);
+    }
+
+    /**
+     * Checks if the remote file of the asset can be resumed: the transfer of
+     * the asset to the same path was interrupted in a previous run.
+     *
+     * @param id
+     *            the asset id.
+     * @param dstPath
+     *            the destination file path.
+     * @return
+     */
+    synchronized boolean canResume(String id, String dstPath) {
+        return _resume && dstPath.equals(_interrupted.get(id));
+    }
+
+    /**
+     * Records the start of the transfer of the asset (before any byte is
+     * written). Flushed immediately (with the preceding records): the remote
+     * file may only be resumed if its start is recorded.
+     *
+     * @param id
+     *            the asset id.
+     * @param dstPath
+     *            the destination file path.
+     * @throws IOException
+     */
+    synchronized void started(String id, String dstPath) throws IOException {
+        write(">\t" + id + "\t" + dstPath + "\n");
+        flush();
+    }
+
+    /**
+     * Number of assets recorded by this run.
+     *
+     * @return
+     */
+    synchronized long recorded() {
+        return _recorded;
+    }
+
+    /**
+     * Records the asset as transferred.
+     *
+     * @param id
+     *            the asset id.
+     * @param dstPath
+     *            the destination path (of the file, or of the directory the
+     *            archive is extracted into).
+     * @param length
+     *            the content length.
+     * @throws IOException
+     */
+    synchronized void completed(String id, String dstPath, long length) throws IOException {
+        if (!_completed.add(id)) {
+            return;
+        }
+        _recent.put(dstPath, id);
+        _recorded++;
+        write("+\t" + id + "\t" + length + "\t" + dstPath + "\n");
+    }
+
+    /**
+     * Removes the asset the destination file belongs to, if it has been
+     * recorded, so that it is transferred again on restart.
+     *
+     * @param dstPath
+     *            the path of the failed file.
+     * @throws IOException
+     */
+    synchronized void failed(String dstPath) throws IOException {
+        String path = dstPath;
+        String id = null;
+        while (path != null && (id = _recent.remove(path)) == null) {
+            // a file extracted from an archive
+            String parent = PathUtils.getParent(path);
+            path = path.equals(parent) ? null : parent;
+        }
+        if (id != null && _completed.remove(id)) {
+            _recorded--;
+            write("-\t" + id + "\n");
+            flush();
+        }
+    }
+
+    private void write(String record) throws IOException {
+        _writer.write(record);
+        if (++_unflushed >= FLUSH_INTERVAL) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        _writer.flush();
+        _unflushed = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        _writer.close();
+    }
+
+}
@@ -1,13 +1,18 @@
 package daris.ssh.plugin.sink;
 
+import java.util.Map;
+
+import arc.mf.plugin.dtype.BooleanType;
+import arc.mf.plugin.sink.ParameterDefinition;
 import io.github.xtman.ssh.client.Connection;
-import io.github.xtman.ssh.client.ConnectionBuilder;
 import io.github.xtman.ssh.client.ScpClient;
 
 public class ScpSink extends SshSink {
 
     public static final String TYPE_NAME = "daris-scp";
 
+    public static final String PARAM_PIPELINE = "pipeline";
+
     public ScpSink() throws Throwable {
         super(TYPE_NAME);
     }
@@ -18,10 +23,19 @@ public class ScpSink extends SshSink {
     }
 
     @Override
-    protected ScpClient createClient(ConnectionBuilder cb, String directory, int dirMode, int fileMode)
-            throws Throwable {
-        Connection cxn = cb.build();
-        return cxn.createScpClient(directory, "UTF-8", dirMode, fileMode, false, false);
+    protected void addParameterDefinitions(Map<String, ParameterDefinition> paramDefns) throws Throwable {
+        super.addParameterDefinitions(paramDefns);
+        addParameterDefinition(paramDefns, PARAM_PIPELINE, BooleanType.DEFAULT,
+                "Pipelines the scp transfer: waits for the acknowledgement of the file and directory messages only, and receives the other acknowledgements while sending the next file, so that a file costs one round trip instead of two (three if the times are preserved). The failure of a file may be reported after the following files are sent. Only effective if the server does not delay the acknowledgements (TCP_NODELAY). Defaults to false.{{optional,mutable,default=false}}",
+                false);
+    }
+
+    @Override
+    protected ScpClient createClient(Connection cxn, String directory, int dirMode, int fileMode,
+            Map<String, String> params) throws Throwable {
+        ScpClient scp = cxn.createScpClient(directory, "UTF-8", dirMode, fileMode, false, false);
+        scp.setPipelined(Boolean.parseBoolean(params.getOrDefault(PARAM_PIPELINE, "false")));
+        return scp;
     }
 
 }
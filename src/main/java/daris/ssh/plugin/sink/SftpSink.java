@@ -1,13 +1,26 @@
 package daris.ssh.plugin.sink;
 
+import java.util.Map;
+
+import arc.mf.plugin.dtype.BooleanType;
+import arc.mf.plugin.dtype.IntegerType;
+import arc.mf.plugin.sink.ParameterDefinition;
 import io.github.xtman.ssh.client.Connection;
-import io.github.xtman.ssh.client.ConnectionBuilder;
 import io.github.xtman.ssh.client.SftpClient;
 
 public class SftpSink extends SshSink {
 
     public static final String TYPE_NAME = "daris-sftp";
 
+    public static final String PARAM_OUTSTANDING_REQUESTS = "outstanding-requests";
+    public static final String PARAM_STRIPE_CHANNELS = "stripe-channels";
+    public static final String PARAM_STRIPE_THRESHOLD = "stripe-threshold";
+    public static final String PARAM_STRIPE_VERIFY = "stripe-verify";
+
+    public static final int MAX_STRIPE_CHANNELS = 32;
+
+    public static final long DEFAULT_STRIPE_THRESHOLD_MB = SftpClient.DEFAULT_STRIPE_THRESHOLD / 1048576L;
+
     public SftpSink() throws Throwable {
         super(TYPE_NAME);
     }
@@ -18,10 +31,38 @@ public class SftpSink extends SshSink {
     }
 
     @Override
-    protected SftpClient createClient(ConnectionBuilder cb, String directory, int dirMode, int fileMode)
-            throws Throwable {
-        Connection cxn = cb.build();
-        return cxn.createSftpClient(directory, "UTF-8", dirMode, fileMode, false, false);
+    protected void addParameterDefinitions(Map<String, ParameterDefinition> paramDefns) throws Throwable {
+        super.addParameterDefinitions(paramDefns);
+        addParameterDefinition(paramDefns, PARAM_OUTSTANDING_REQUESTS,
+                new IntegerType(1, SftpClient.MAX_OUTSTANDING_REQUESTS),
+                "Maximum number of sftp write requests in flight per file. Increase it for high-latency links. Defaults to "
+                        + SftpClient.DEFAULT_MAX_OUTSTANDING_REQUESTS + ".{{optional,mutable,default="
+                        + SftpClient.DEFAULT_MAX_OUTSTANDING_REQUESTS + "}}",
+                false);
+        addParameterDefinition(paramDefns, PARAM_STRIPE_CHANNELS, new IntegerType(0, MAX_STRIPE_CHANNELS),
+                "Number of additional channels to write a large file (see stripe-threshold) in parallel chunks. 0 or 1 to write every file over a single channel. Defaults to 0.{{optional,mutable,default=0}}",
+                false);
+        addParameterDefinition(paramDefns, PARAM_STRIPE_THRESHOLD, new IntegerType(1, Integer.MAX_VALUE),
+                "Minimum size (in MB) of the files written in parallel chunks, if stripe-channels is greater than 1. Defaults to "
+                        + DEFAULT_STRIPE_THRESHOLD_MB + ".{{optional,mutable,default=" + DEFAULT_STRIPE_THRESHOLD_MB
+                        + "}}",
+                false);
+        addParameterDefinition(paramDefns, PARAM_STRIPE_VERIFY, BooleanType.DEFAULT,
+                "Compare the SHA-256 digest of a file written in parallel, computed while it is read, with the one computed by sha256sum (or shasum) on the remote server. Skipped if the server does not allow remote commands. (Its size is always verified.) Defaults to true.{{optional,mutable,default=true}}",
+                false);
+    }
+
+    @Override
+    protected SftpClient createClient(Connection cxn, String directory, int dirMode, int fileMode,
+            Map<String, String> params) throws Throwable {
+        SftpClient sftp = cxn.createSftpClient(directory, "UTF-8", dirMode, fileMode, false, false);
+        sftp.setMaxOutstandingRequests(Integer.parseInt(params.getOrDefault(PARAM_OUTSTANDING_REQUESTS,
+                Integer.toString(SftpClient.DEFAULT_MAX_OUTSTANDING_REQUESTS))));
+        sftp.setStriping(Integer.parseInt(params.getOrDefault(PARAM_STRIPE_CHANNELS, "0")),
+                Long.parseLong(params.getOrDefault(PARAM_STRIPE_THRESHOLD, Long.toString(DEFAULT_STRIPE_THRESHOLD_MB)))
+                        * 1048576L,
+                Boolean.parseBoolean(params.getOrDefault(PARAM_STRIPE_VERIFY, "true")));
+        return sftp;
     }
 
 }
@@ -1,16 +1,13 @@
 package daris.ssh.plugin.sink;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
 import arc.archive.ArchiveInput;
 import arc.archive.ArchiveRegistry;
-import arc.mf.plugin.PluginTask;
 import arc.mf.plugin.PluginThread;
 import arc.mf.plugin.dtype.BooleanType;
 import arc.mf.plugin.dtype.IntegerType;
@@ -19,13 +16,21 @@ import arc.mf.plugin.dtype.StringType;
 import arc.mf.plugin.sink.ParameterDefinition;
 import arc.mime.NamedMimeType;
 import arc.streams.LongInputStream;
-import arc.streams.StreamCopy;
 import arc.xml.XmlDoc.Element;
 import daris.plugin.sink.AbstractDataSink;
 import daris.plugin.sink.util.OutputPath;
+import daris.ssh.plugin.CompressionPolicy;
+import daris.ssh.plugin.ParallelArchiveExtractor;
+import daris.ssh.plugin.SshConnectionPool;
+import io.github.xtman.ssh.client.Connection;
 import io.github.xtman.ssh.client.ConnectionBuilder;
+import io.github.xtman.ssh.client.ConnectionProfile;
+import io.github.xtman.ssh.client.ParallelTransferClient;
 import io.github.xtman.ssh.client.TransferClient;
+import io.github.xtman.ssh.client.TransferException;
 import io.github.xtman.util.PathUtils;
+import io.github.xtman.util.metrics.Metrics;
+import io.github.xtman.util.metrics.MetricsRegistry;
 
 public abstract class SshSink extends AbstractDataSink {
 
@@ -42,14 +47,33 @@ public abstract class SshSink extends AbstractDataSink {
     public static final String PARAM_PASSPHRASE = "passphrase";
     public static final String PARAM_DIRECTORY = "directory";
     public static final String PARAM_UNARCHIVE = "unarchive";
+    public static final String PARAM_UNARCHIVE_CHANNELS = "unarchive-channels";
+    public static final String PARAM_UNARCHIVE_BUFFER_SIZE = "unarchive-buffer-size";
     public static final String PARAM_DIR_MODE = "dir-mode";
     public static final String PARAM_FILE_MODE = "file-mode";
     public static final String PARAM_PARTS = "parts";
     public static final String PARAM_LAYOUT_PATTERN = "layout-pattern";
+    public static final String PARAM_COMPRESSION_LEVEL = "compression-level";
+    public static final String PARAM_PROFILE = "profile";
+
+    public static final int MAX_UNARCHIVE_CHANNELS = 32;
+
+    public static final String METRICS_SCOPE_PREFIX = "sink:";
+
+    /*
+     * sink metrics
+     */
+    public static final String METRIC_ASSETS = "assets";
+    public static final String METRIC_BYTES = "bytes";
+    public static final String METRIC_FAILURES = "failures";
+    public static final String METRIC_CONSUME_TIME = "consume.time.ms";
+    public static final String METRIC_CONNECTION_ACQUIRE_TIME = "connection.acquire.time.ms";
+
+    private Metrics _metrics;
 
     protected SshSink(String typeName) throws Throwable {
         super(typeName);
-
+        _metrics = MetricsRegistry.get(METRICS_SCOPE_PREFIX + typeName);
     }
 
     @Override
@@ -88,6 +112,15 @@ public abstract class SshSink extends AbstractDataSink {
                 false);
         addParameterDefinition(paramDefns, PARAM_UNARCHIVE, BooleanType.DEFAULT,
                 "Extract archive contents. Defaults to false.{{optional,mutable,default=false}}", false);
+        addParameterDefinition(paramDefns, PARAM_UNARCHIVE_CHANNELS, new IntegerType(1, MAX_UNARCHIVE_CHANNELS),
+                "Number of channels (on the same connection) to send the extracted archive entries in parallel. Defaults to 1.{{optional,mutable,default=1}}",
+                false);
+        addParameterDefinition(paramDefns, PARAM_UNARCHIVE_BUFFER_SIZE,
+                new IntegerType(1, ParallelArchiveExtractor.MAX_BUFFER_SIZE_MB),
+                "Maximum size (in MB) of the archive entries read in memory, waiting to be sent by the parallel channels. Larger entries are streamed one at a time. Defaults to "
+                        + ParallelArchiveExtractor.DEFAULT_MAX_BUFFER_SIZE_MB + ".{{optional,mutable,default="
+                        + ParallelArchiveExtractor.DEFAULT_MAX_BUFFER_SIZE_MB + "}}",
+                false);
         addParameterDefinition(paramDefns, PARAM_DIR_MODE, new StringType(Pattern.compile("^[0-7]{4}$")),
                 "Remote directory mode (permissions). Defaults to " + String.format("%04o", DEFAULT_DIR_MODE)
                         + ".{{optional,mutable,pattern=^[0-7]{4}$,default=" + String.format("%04o", DEFAULT_DIR_MODE)
@@ -104,6 +137,13 @@ public abstract class SshSink extends AbstractDataSink {
         addParameterDefinition(paramDefns, PARAM_LAYOUT_PATTERN, StringType.DEFAULT,
                 "Expression to generate output file path. If not specified, defaults to the asset's namespace path. {{optional,mutable}}",
                 false);
+        addParameterDefinition(paramDefns, PARAM_COMPRESSION_LEVEL,
+                new IntegerType(0, Connection.MAX_COMPRESSION_LEVEL),
+                "Transport (zlib) compression level: 1 (fastest) to 9 (best), or 0 for no compression. It is not applied to the content already compressed (e.g. zip, gzip, jpeg), unless the content is extracted or multiple assets are sent. Defaults to 0.{{optional,mutable,default=0}}",
+                false);
+        addParameterDefinition(paramDefns, PARAM_PROFILE, StringType.DEFAULT,
+                "Connection tuning profile. 'throughput' prefers the fastest CTR cipher (measured by a self-test) and cheap MACs supported by the server, and opens the channels with larger windows, for high-throughput links. Defaults to 'default'.{{optional,mutable,enum=default|throughput,default=default}}",
+                false);
 
     }
 
@@ -113,7 +153,7 @@ public abstract class SshSink extends AbstractDataSink {
 
     public Object beginMultiple(Map<String, String> params) throws Throwable {
         validateParams(params);
-        return createClient(params);
+        return createClient(params, compressionLevel(params));
     }
 
     public int compressionLevelRequired() {
@@ -146,8 +186,15 @@ public abstract class SshSink extends AbstractDataSink {
          * 
          */
         TransferClient client = null;
+        long start = System.currentTimeMillis();
+        boolean success = false;
         try {
-            client = getOrCreateClient(multiTransferContext, params);
+            int compressionLevel = compressionLevel(params);
+            if (!unarchive) {
+                // not worth it for the content already compressed.
+                compressionLevel = CompressionPolicy.compressionLevel(compressionLevel, mimeType, dstPath);
+            }
+            client = getOrCreateClient(multiTransferContext, params, compressionLevel);
             if ("metadata".equals(parts) || "both".equals(parts)) {
                 if (assetMeta != null) {
                     byte[] b = assetMeta.toString().getBytes();
@@ -162,7 +209,11 @@ public abstract class SshSink extends AbstractDataSink {
             if ("content".equals(parts) || "both".equals(parts)) {
                 if (in != null) {
                     try {
-                        if (unarchive) {
+                        int channels = Integer.parseInt(params.getOrDefault(PARAM_UNARCHIVE_CHANNELS, "1"));
+                        if (unarchive && channels > 1) {
+                            extractAndTransferContent(client, createWorkers(client.connection(), params, channels),
+                                    params, in, mimeType, dstPath);
+                        } else if (unarchive) {
                             extractAndTransferContent(client, in, mimeType, dstPath);
                         } else {
                             client.put(in, length, dstPath);
@@ -172,12 +223,21 @@ public abstract class SshSink extends AbstractDataSink {
                     }
                 }
             }
+            success = true;
         } finally {
-            if (multiTransferContext == null && client != null) {
-                try {
-                    client.close();
-                } finally {
-                    client.connection().close();
+            try {
+                if (multiTransferContext == null && client != null) {
+                    closeClient(client);
+                }
+            } finally {
+                if (success) {
+                    _metrics.record(METRIC_CONSUME_TIME, System.currentTimeMillis() - start);
+                    _metrics.increment(METRIC_ASSETS);
+                    if (length > 0) {
+                        _metrics.increment(METRIC_BYTES, length);
+                    }
+                } else {
+                    _metrics.increment(METRIC_FAILURES);
                 }
             }
         }
@@ -195,24 +255,9 @@ public abstract class SshSink extends AbstractDataSink {
                         client.mkdirs(PathUtils.join(dstPath, entry.name()));
                     } else {
                         try {
-                            long size = entry.size();
-                            if (size < 0) {
-                                // entry size was not set
-                                File tf = PluginTask.createTemporaryFile();
-                                try {
-                                    StreamCopy.copy(entry.stream(), tf);
-                                    InputStream ti = new BufferedInputStream(new FileInputStream(tf));
-                                    try {
-                                        client.put(ti, tf.length(), PathUtils.join(dstPath, entry.name()));
-                                    } finally {
-                                        ti.close();
-                                    }
-                                } finally {
-                                    PluginTask.deleteTemporaryFile(tf);
-                                }
-                            } else {
-                                client.put(entry.stream(), entry.size(), PathUtils.join(dstPath, entry.name()));
-                            }
+                            // the entry size may not be set (negative): the
+                            // client streams (sftp) or spools (scp) it.
+                            client.put(entry.stream(), entry.size(), PathUtils.join(dstPath, entry.name()));
                         } finally {
                             if (entry.stream() != null) {
                                 entry.stream().close();
@@ -228,19 +273,84 @@ public abstract class SshSink extends AbstractDataSink {
         }
     }
 
+    /**
+     * Extracts the archive, sending the entries over the worker channels.
+     * 
+     * @param client
+     *            the client to create the directories and send the large
+     *            entries.
+     * @param workers
+     *            the clients to send the (buffered) entries. They are closed.
+     */
+    private static void extractAndTransferContent(TransferClient client, List<TransferClient> workers,
+            Map<String, String> params, LongInputStream in, String mimeType, String dstPath) throws Throwable {
+        long bufferSize = 1048576L * Integer.parseInt(params.getOrDefault(PARAM_UNARCHIVE_BUFFER_SIZE,
+                Integer.toString(ParallelArchiveExtractor.DEFAULT_MAX_BUFFER_SIZE_MB)));
+        ParallelTransferClient parallel = new ParallelTransferClient(client, workers, workers.size());
+        try {
+            ArchiveInput ai = ArchiveRegistry.createInput(in, new NamedMimeType(mimeType));
+            new ParallelArchiveExtractor(parallel, bufferSize).extract(ai, dstPath);
+        } catch (Throwable e) {
+            parallel.abort();
+            throw e;
+        } finally {
+            parallel.close();
+        }
+        List<TransferException> failures = parallel.pollFailures();
+        if (!failures.isEmpty()) {
+            TransferException e = failures.get(0);
+            for (int i = 1; i < failures.size(); i++) {
+                e.addSuppressed(failures.get(i));
+            }
+            throw e;
+        }
+    }
+
+    private List<TransferClient> createWorkers(Connection cxn, Map<String, String> params, int channels)
+            throws Throwable {
+        List<TransferClient> workers = new ArrayList<TransferClient>(channels);
+        try {
+            for (int i = 0; i < channels; i++) {
+                workers.add(createClient(cxn, params));
+            }
+        } catch (Throwable e) {
+            for (TransferClient worker : workers) {
+                worker.close();
+            }
+            throw e;
+        }
+        return workers;
+    }
+
     public void endMultiple(Object multiTransferContext) throws Throwable {
         if (multiTransferContext != null) {
-            TransferClient client = (TransferClient) multiTransferContext;
-            try {
-                client.close();
-            } finally {
-                client.connection().close();
+            closeClient((TransferClient) multiTransferContext);
+        }
+    }
+
+    /**
+     * Closes the client and gives its connection back to the pool. The
+     * connection is discarded if the client failed to close.
+     * 
+     * @param client
+     * @throws Throwable
+     */
+    private static void closeClient(TransferClient client) throws Throwable {
+        boolean closed = false;
+        try {
+            client.close();
+            closed = true;
+        } finally {
+            if (closed) {
+                SshConnectionPool.get().release(client.connection());
+            } else {
+                SshConnectionPool.get().invalidate(client.connection());
             }
         }
     }
 
     public void shutdown() throws Throwable {
-
+        SshConnectionPool.drain();
     }
 
     protected void validateParams(Map<String, String> params) {
@@ -255,11 +365,7 @@ public abstract class SshSink extends AbstractDataSink {
         }
     }
 
-    private TransferClient createClient(Map<String, String> params) throws Throwable {
-        String directory = params.get(PARAM_DIRECTORY);
-        int dirMode = Integer.parseInt(params.getOrDefault(PARAM_DIR_MODE, String.format("%04o", DEFAULT_DIR_MODE)), 8);
-        int fileMode = Integer.parseInt(params.getOrDefault(PARAM_FILE_MODE, String.format("%04o", DEFAULT_FILE_MODE)),
-                8);
+    private TransferClient createClient(Map<String, String> params, int compressionLevel) throws Throwable {
         ConnectionBuilder cb = new ConnectionBuilder();
         cb.setHost(params.get(PARAM_HOST));
         cb.setPort(Integer.parseInt(params.getOrDefault(PARAM_PORT, "22")));
@@ -267,18 +373,41 @@ public abstract class SshSink extends AbstractDataSink {
         cb.setUsername(params.get(PARAM_USERNAME));
         cb.setPassword(params.get(PARAM_PASSWORD));
         cb.setPrivateKey(params.get(PARAM_PRIVATE_KEY), params.get(PARAM_PASSPHRASE));
-        return createClient(cb, directory, dirMode, fileMode);
+        cb.setCompressionLevel(compressionLevel);
+        cb.setProfile(ConnectionProfile.fromString(params.get(PARAM_PROFILE)));
+        long start = System.currentTimeMillis();
+        Connection cxn = SshConnectionPool.get().acquire(cb);
+        _metrics.record(METRIC_CONNECTION_ACQUIRE_TIME, System.currentTimeMillis() - start);
+        try {
+            return createClient(cxn, params);
+        } catch (Throwable e) {
+            SshConnectionPool.get().invalidate(cxn);
+            throw e;
+        }
     }
 
-    protected abstract TransferClient createClient(ConnectionBuilder cb, String directory, int dirMode, int fileMode)
-            throws Throwable;
+    private TransferClient createClient(Connection cxn, Map<String, String> params) throws Throwable {
+        String directory = params.get(PARAM_DIRECTORY);
+        int dirMode = Integer.parseInt(params.getOrDefault(PARAM_DIR_MODE, String.format("%04o", DEFAULT_DIR_MODE)), 8);
+        int fileMode = Integer.parseInt(params.getOrDefault(PARAM_FILE_MODE, String.format("%04o", DEFAULT_FILE_MODE)),
+                8);
+        return createClient(cxn, directory, dirMode, fileMode, params);
+    }
 
-    private TransferClient getOrCreateClient(Object multiTransferContext, Map<String, String> params) throws Throwable {
+    protected abstract TransferClient createClient(Connection cxn, String directory, int dirMode, int fileMode,
+            Map<String, String> params) throws Throwable;
+
+    private TransferClient getOrCreateClient(Object multiTransferContext, Map<String, String> params,
+            int compressionLevel) throws Throwable {
         if (multiTransferContext != null) {
             return (TransferClient) multiTransferContext;
         } else {
-            return createClient(params);
+            return createClient(params, compressionLevel);
         }
     }
 
+    private static int compressionLevel(Map<String, String> params) {
+        return Integer.parseInt(params.getOrDefault(PARAM_COMPRESSION_LEVEL, "0"));
+    }
+
 }
@@ -3,12 +3,18 @@ package io.github.xtman.file.util;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
+import io.github.xtman.util.PathUtils;
+
 public class FileUtils {
 
     public static final boolean isPosix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
@@ -77,4 +83,31 @@ public class FileUtils {
         return getATime(f.toPath());
     }
 
+    /**
+     * Lists the sub-directories (at any depth) of the directory, parents
+     * first.
+     *
+     * @param dir
+     * @return the paths of the sub-directories, relative to the directory.
+     * @throws IOException
+     */
+    public static List<String> listDirectories(final Path dir) throws IOException {
+        final List<String> dirs = new ArrayList<String>();
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) {
+                if (!d.equals(dir)) {
+                    dirs.add(PathUtils.getRelativePath(d, dir));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ioe) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return dirs;
+    }
+
 }
@@ -0,0 +1,63 @@
+package io.github.xtman.io.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of fixed size byte buffers, so that the transfers do not allocate a new
+ * buffer for each file. At most maxBuffers idle buffers are retained; the
+ * buffers released beyond that are left to the garbage collector.
+ */
+public class BufferPool {
+
+    /**
+     * Maximum SSH packet size used by most servers (and JSch). A buffer of
+     * this size fills exactly one channel data packet.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 32768;
+
+    public static final int DEFAULT_MAX_BUFFERS = 64;
+
+    private static final BufferPool DEFAULT = new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_BUFFERS);
+
+    public static BufferPool defaultPool() {
+        return DEFAULT;
+    }
+
+    private int _bufferSize;
+    private int _maxBuffers;
+    private ConcurrentLinkedQueue<byte[]> _buffers;
+    private AtomicInteger _nbBuffers;
+
+    public BufferPool(int bufferSize, int maxBuffers) {
+        _bufferSize = bufferSize;
+        _maxBuffers = maxBuffers;
+        _buffers = new ConcurrentLinkedQueue<byte[]>();
+        _nbBuffers = new AtomicInteger(0);
+    }
+
+    public int bufferSize() {
+        return _bufferSize;
+    }
+
+    public byte[] acquire() {
+        byte[] buffer = _buffers.poll();
+        if (buffer == null) {
+            return new byte[_bufferSize];
+        }
+        _nbBuffers.decrementAndGet();
+        return buffer;
+    }
+
+    public void release(byte[] buffer) {
+        if (buffer == null || buffer.length != _bufferSize) {
+            return;
+        }
+        if (_nbBuffers.incrementAndGet() <= _maxBuffers) {
+            _buffers.offer(buffer);
+        } else {
+            _nbBuffers.decrementAndGet();
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package io.github.xtman.io.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.zip.CRC32;
+
+/**
+ * Computes the checksums (CRC32, and optionally SHA-256) of the bytes read,
+ * in the same pass as the copy. Mark/reset is not supported.
+ */
+public class ChecksumInputStream extends FilterInputStream {
+
+    private CRC32 _crc32;
+    private MessageDigest _sha256;
+    private long _bytesRead;
+
+    /**
+     *
+     * @param in
+     * @param sha256
+     *            compute the SHA-256 digest (in addition to CRC32).
+     */
+    public ChecksumInputStream(InputStream in, boolean sha256) {
+        super(in);
+        _crc32 = new CRC32();
+        if (sha256) {
+            try {
+                _sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+        _bytesRead = 0;
+    }
+
+    public ChecksumInputStream(InputStream in) {
+        this(in, false);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1) {
+            _crc32.update(b);
+            if (_sha256 != null) {
+                _sha256.update((byte) b);
+            }
+            _bytesRead++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            _crc32.update(b, off, n);
+            if (_sha256 != null) {
+                _sha256.update(b, off, n);
+            }
+            _bytesRead += n;
+        }
+        return n;
+    }
+
+    /**
+     * Reads (rather than skips) the bytes, so that they are included in the
+     * checksums.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int r = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (r < 0) {
+                break;
+            }
+            skipped += r;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("Mark not supported.");
+    }
+
+    public long bytesRead() {
+        return _bytesRead;
+    }
+
+    /**
+     * The CRC32 checksum of the bytes read so far.
+     *
+     * @return
+     */
+    public long crc32() {
+        return _crc32.getValue();
+    }
+
+    /**
+     * The SHA-256 digest (lower case hex) of the bytes read. Completes the
+     * digest: to be called once, at the end of the input.
+     *
+     * @return null if not computed.
+     */
+    public String sha256() {
+        if (_sha256 == null) {
+            return null;
+        }
+        byte[] digest = _sha256.digest();
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,37 @@
+package io.github.xtman.io.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class CountingOutputStream extends FilterOutputStream {
+
+    private long _bytesWritten;
+
+    public CountingOutputStream(OutputStream out) {
+        super(out);
+        _bytesWritten = 0;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        _bytesWritten++;
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        _bytesWritten += len;
+    }
+
+    public long bytesWritten() {
+        return _bytesWritten;
+    }
+
+}
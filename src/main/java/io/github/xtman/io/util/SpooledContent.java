@@ -0,0 +1,113 @@
+package io.github.xtman.io.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Content of an input stream of unknown length, read to the end so that its
+ * length is known. It is kept in memory up to a threshold; beyond that, it
+ * overflows to a temporary file, which is deleted by {@link #close()}.
+ */
+public class SpooledContent implements Closeable {
+
+    private byte[] _bytes;
+    private File _file;
+    private long _length;
+
+    private SpooledContent(byte[] bytes, File file, long length) {
+        _bytes = bytes;
+        _file = file;
+        _length = length;
+    }
+
+    /**
+     * Reads the input stream to the end. The input stream is not closed.
+     *
+     * @param in
+     * @param maxMemorySize
+     *            the maximum number of bytes kept in memory.
+     * @param tmpDir
+     *            the directory of the temporary file. Null for the default
+     *            temporary directory.
+     * @return
+     * @throws IOException
+     */
+    public static SpooledContent spool(InputStream in, int maxMemorySize, File tmpDir) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.min(maxMemorySize, BufferPool.DEFAULT_BUFFER_SIZE));
+        long n = StreamUtils.transfer(in, maxMemorySize + 1L, bytes);
+        if (n <= maxMemorySize) {
+            return new SpooledContent(bytes.toByteArray(), null, n);
+        }
+        File file = File.createTempFile("spool", ".tmp", tmpDir);
+        boolean spooled = false;
+        try {
+            OutputStream os = new FileOutputStream(file);
+            try {
+                bytes.writeTo(os);
+                bytes = null;
+                n += StreamUtils.transfer(in, -1, os);
+            } finally {
+                os.close();
+            }
+            spooled = true;
+        } finally {
+            if (!spooled) {
+                file.delete();
+            }
+        }
+        return new SpooledContent(null, file, n);
+    }
+
+    public static SpooledContent spool(InputStream in, int maxMemorySize) throws IOException {
+        return spool(in, maxMemorySize, null);
+    }
+
+    public long length() {
+        return _length;
+    }
+
+    /**
+     *
+     * @return true if the content overflowed to a temporary file.
+     */
+    public boolean inFile() {
+        return _file != null;
+    }
+
+    /**
+     * Opens a new input stream to read the content. The caller is responsible
+     * to close it.
+     *
+     * @return
+     * @throws IOException
+     */
+    public InputStream open() throws IOException {
+        if (_file != null) {
+            return new FileInputStream(_file);
+        }
+        if (_bytes == null) {
+            throw new IOException("Spooled content is closed.");
+        }
+        return new ByteArrayInputStream(_bytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        _bytes = null;
+        if (_file != null) {
+            File file = _file;
+            _file = null;
+            if (!file.delete() && file.exists()) {
+                throw new IOException("Failed to delete temporary file: " + file.getAbsolutePath());
+            }
+        }
+    }
+
+}
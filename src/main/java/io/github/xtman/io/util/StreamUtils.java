@@ -2,10 +2,16 @@ package io.github.xtman.io.util;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 
@@ -18,15 +24,8 @@ public class StreamUtils {
     }
 
     public static void copy(InputStream in, long length, OutputStream out, boolean closeOutput) throws Throwable {
-
-        byte[] buffer = new byte[BUFFER_SIZE];
-        int total = 0;
-        int len;
         try {
-            while ((total < length || length < 0) && (len = in.read(buffer)) != -1) {
-                out.write(buffer, 0, len);
-                total += len;
-            }
+            transfer(in, length, out);
         } finally {
             if (closeOutput) {
                 out.close();
@@ -38,12 +37,8 @@ public class StreamUtils {
 
     public static void copy(InputStream in, OutputStream out, boolean closeInput, boolean closeOutput)
             throws Throwable {
-        byte[] buffer = new byte[BUFFER_SIZE];
-        int len;
         try {
-            while ((len = in.read(buffer)) != -1) {
-                out.write(buffer, 0, len);
-            }
+            transfer(in, -1, out);
         } finally {
             try {
                 if (closeOutput) {
@@ -59,6 +54,114 @@ public class StreamUtils {
         }
     }
 
+    /**
+     * Copies the specified number of bytes from the input stream to the output
+     * stream, using a buffer from the {@link BufferPool#defaultPool()}. Neither
+     * flushes nor closes the output stream. If the input is a file, it is read
+     * via its channel.
+     *
+     * @param in
+     *            the input stream.
+     * @param length
+     *            the number of bytes to copy. Negative to copy until the end
+     *            of the input stream.
+     * @param out
+     *            the output stream.
+     * @return the number of bytes copied.
+     * @throws IOException
+     */
+    public static long transfer(InputStream in, long length, OutputStream out) throws IOException {
+        if (in instanceof FileInputStream) {
+            FileChannel fc = ((FileInputStream) in).getChannel();
+            if (out instanceof FileOutputStream) {
+                return transfer(fc, length, ((FileOutputStream) out).getChannel());
+            } else {
+                return transfer(fc, length, out);
+            }
+        }
+        byte[] buffer = BufferPool.defaultPool().acquire();
+        try {
+            long total = 0;
+            while (length < 0 || total < length) {
+                int n = length < 0 ? buffer.length : (int) Math.min(buffer.length, length - total);
+                int len = in.read(buffer, 0, n);
+                if (len < 0) {
+                    break;
+                }
+                out.write(buffer, 0, len);
+                total += len;
+            }
+            return total;
+        } finally {
+            BufferPool.defaultPool().release(buffer);
+        }
+    }
+
+    /**
+     * Copies from the channel to the output stream using a buffer from the
+     * {@link BufferPool#defaultPool()}. Unlike
+     * {@link FileInputStream#read(byte[], int, int)}, reading a file channel
+     * into a heap buffer does not allocate native memory for each read larger
+     * than 8KB.
+     *
+     * @param in
+     * @param length
+     *            the number of bytes to copy. Negative to copy until the end
+     *            of the channel.
+     * @param out
+     * @return the number of bytes copied.
+     * @throws IOException
+     */
+    public static long transfer(ReadableByteChannel in, long length, OutputStream out) throws IOException {
+        byte[] buffer = BufferPool.defaultPool().acquire();
+        try {
+            ByteBuffer bb = ByteBuffer.wrap(buffer);
+            long total = 0;
+            while (length < 0 || total < length) {
+                bb.clear();
+                if (length >= 0 && length - total < buffer.length) {
+                    bb.limit((int) (length - total));
+                }
+                int len = in.read(bb);
+                if (len < 0) {
+                    break;
+                }
+                out.write(buffer, 0, len);
+                total += len;
+            }
+            return total;
+        } finally {
+            BufferPool.defaultPool().release(buffer);
+        }
+    }
+
+    /**
+     * Copies from the file channel to the target channel, from the current
+     * position of the file channel, without copying via the heap.
+     *
+     * @param in
+     * @param length
+     *            the number of bytes to copy. Negative to copy until the end
+     *            of the file.
+     * @param out
+     * @return the number of bytes copied.
+     * @throws IOException
+     */
+    public static long transfer(FileChannel in, long length, WritableByteChannel out) throws IOException {
+        long position = in.position();
+        long size = length < 0 ? in.size() - position : length;
+        long total = 0;
+        while (total < size) {
+            long n = in.transferTo(position + total, size - total, out);
+            if (n <= 0) {
+                break;
+            }
+            total += n;
+        }
+        in.position(position + total);
+        return total;
+    }
+
     public static void copy(InputStream in, OutputStream out) throws Throwable {
         copy(in, out, false, false);
     }
@@ -97,13 +200,43 @@ public class StreamUtils {
         Files.copy(inputFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
     }
 
+    /**
+     * Skips the specified number of bytes. Unlike
+     * {@link InputStream#skip(long)}, it does not return until the bytes are
+     * skipped or the end of the stream is reached.
+     *
+     * @param in
+     * @param n
+     * @return the number of bytes skipped.
+     * @throws IOException
+     */
+    public static long skip(InputStream in, long n) throws IOException {
+        long total = 0;
+        while (total < n) {
+            long skipped = in.skip(n - total);
+            if (skipped <= 0) {
+                // skip() may return 0 before the end of stream.
+                if (in.read() < 0) {
+                    break;
+                }
+                skipped = 1;
+            }
+            total += skipped;
+        }
+        return total;
+    }
+
     public static void exhaustInputStream(InputStream in) throws IOException {
         if (in == null) {
             return;
         }
         try {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            while (in.read(buffer) >= 0) {
+            byte[] buffer = BufferPool.defaultPool().acquire();
+            try {
+                while (in.read(buffer) >= 0) {
+                }
+            } finally {
+                BufferPool.defaultPool().release(buffer);
             }
         } finally {
             in.close();
@@ -0,0 +1,490 @@
+package io.github.xtman.ssh.client;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+import io.github.xtman.io.util.CountingInputStream;
+import io.github.xtman.io.util.CountingOutputStream;
+import io.github.xtman.util.PathUtils;
+
+/**
+ * Asynchronous transfers: each transfer is queued and executed by one of the
+ * worker channels (transfer clients), and its result is delivered by a
+ * {@link CompletableFuture}. So a caller can submit many transfers, overlap
+ * them with its own work and wait for (or chain actions on) their results,
+ * without managing threads.
+ *
+ * Each worker channel is driven by its own (daemon) thread, taking the
+ * transfers from a bounded queue. The submitting methods return immediately,
+ * unless the queue is full, in which case they block until a worker takes a
+ * transfer (back-pressure). The futures are completed by the worker threads:
+ * the dependent actions which are not trivial should be chained with the async
+ * variants (e.g. thenApplyAsync) so that they do not hold up the channel. A
+ * worker thread never blocks on the queue (all of them could wait for each
+ * other): a transfer submitted by a non-async dependent action fails if the
+ * queue is full.
+ *
+ * Unlike {@link ParallelTransferClient}, the directories are not created in
+ * advance: the transfers of the files in a new directory should be submitted
+ * once the directory is created (e.g. chained on the future of
+ * {@link #mkdirsAsync(String)}).
+ */
+public class AsyncTransferClient implements Closeable {
+
+    public static final int DEFAULT_QUEUE_SIZE = 100;
+
+    /*
+     * interval of the checks for a free slot in the queue (or closing) while
+     * a submission is blocked.
+     */
+    private static final long SUBMIT_POLL_INTERVAL = 10L;
+
+    /**
+     * The result of a completed transfer.
+     */
+    public static class Result {
+
+        private String _path;
+        private long _bytes;
+        private long _duration;
+
+        public Result(String path, long bytes, long duration) {
+            _path = path;
+            _bytes = bytes;
+            _duration = duration;
+        }
+
+        /**
+         * The remote path.
+         *
+         * @return
+         */
+        public String path() {
+            return _path;
+        }
+
+        /**
+         * Number of bytes transferred.
+         *
+         * @return
+         */
+        public long bytes() {
+            return _bytes;
+        }
+
+        /**
+         * Duration of the transfer in milliseconds, excluding the time waiting
+         * in the queue.
+         *
+         * @return
+         */
+        public long duration() {
+            return _duration;
+        }
+
+        @Override
+        public String toString() {
+            return _path + ": " + _bytes + " bytes in " + _duration + " ms";
+        }
+    }
+
+    /**
+     * A transfer to be executed by one of the worker channels.
+     */
+    public static interface Transfer {
+
+        /**
+         * Transfers using the given client.
+         *
+         * @param client
+         * @return the number of bytes transferred.
+         * @throws Throwable
+         */
+        long execute(TransferClient client) throws Throwable;
+
+    }
+
+    private static class Job {
+        final String path;
+        final Transfer transfer;
+        final Closeable resource;
+        final CompletableFuture<Result> future;
+
+        Job(String path, Transfer transfer, Closeable resource) {
+            this.path = path;
+            this.transfer = transfer;
+            this.resource = resource;
+            this.future = new CompletableFuture<Result>();
+        }
+
+        void release() {
+            if (resource != null) {
+                try {
+                    resource.close();
+                } catch (Throwable e) {
+
+                }
+            }
+        }
+
+        void discard() {
+            release();
+            future.cancel(false);
+        }
+    }
+
+    private static final Job STOP = new Job(null, null, null);
+
+    private List<TransferClient> _clients;
+    private List<Thread> _threads;
+    private BlockingQueue<Job> _queue;
+    private volatile boolean _aborted;
+    private volatile boolean _closed;
+
+    /**
+     *
+     * @param clients
+     *            the worker clients. They are closed by {@link #close()}.
+     * @param queueSize
+     *            maximum number of transfers waiting for a worker.
+     */
+    public AsyncTransferClient(List<TransferClient> clients, int queueSize) {
+        _clients = new ArrayList<TransferClient>(clients);
+        _queue = new ArrayBlockingQueue<Job>(Math.max(1, queueSize));
+        _threads = new ArrayList<Thread>(_clients.size());
+        for (int i = 0; i < _clients.size(); i++) {
+            final TransferClient client = _clients.get(i);
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work(client);
+                }
+            }, "ssh-async-transfer-" + (i + 1));
+            t.setDaemon(true);
+            _threads.add(t);
+        }
+        for (Thread t : _threads) {
+            t.start();
+        }
+    }
+
+    public AsyncTransferClient(List<TransferClient> clients) {
+        this(clients, DEFAULT_QUEUE_SIZE);
+    }
+
+    private void work(TransferClient client) {
+        while (true) {
+            Job job;
+            try {
+                job = _queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (job == STOP) {
+                break;
+            }
+            if (_aborted || job.future.isDone()) {
+                // aborted, or cancelled by the caller.
+                job.discard();
+                continue;
+            }
+            long start = System.currentTimeMillis();
+            try {
+                long bytes;
+                try {
+                    bytes = job.transfer.execute(client);
+                } finally {
+                    job.release();
+                }
+                job.future.complete(new Result(job.path, bytes, System.currentTimeMillis() - start));
+            } catch (Throwable e) {
+                job.future.completeExceptionally(
+                        e instanceof TransferException ? e : new TransferException(job.path, e.getMessage(), e));
+            }
+        }
+    }
+
+    public int numberOfChannels() {
+        return _clients.size();
+    }
+
+    /**
+     * Number of transfers waiting for a worker.
+     *
+     * @return
+     */
+    public int queued() {
+        return _queue.size();
+    }
+
+    /**
+     * Queues the transfer, blocking if the queue is full.
+     *
+     * @param path
+     *            the remote path (to identify the transfer in the result and
+     *            the failure).
+     * @param transfer
+     * @param resource
+     *            the resource (e.g. input stream) held by the transfer. It is
+     *            closed when the transfer completes or is discarded. Can be
+     *            null.
+     * @return the future of the result. It fails with a
+     *         {@link TransferException}, or is cancelled if the transfer is
+     *         discarded.
+     */
+    private CompletableFuture<Result> submit(String path, Transfer transfer, Closeable resource) {
+        Job job = new Job(path, transfer, resource);
+        boolean worker = _threads.contains(Thread.currentThread());
+        synchronized (this) {
+            while (true) {
+                // so that no transfer is queued after the workers are stopped.
+                if (_aborted || _closed) {
+                    return reject(job, "Asynchronous transfer client is closed.");
+                }
+                if (_queue.offer(job)) {
+                    return job.future;
+                }
+                if (worker) {
+                    return reject(job, "Transfer queue is full. The transfers submitted by the dependent actions"
+                            + " must be chained with the async variants.");
+                }
+                try {
+                    // releases the monitor (e.g. for close()) while waiting.
+                    wait(SUBMIT_POLL_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    job.discard();
+                    return job.future;
+                }
+            }
+        }
+    }
+
+    private static CompletableFuture<Result> reject(Job job, String message) {
+        job.release();
+        job.future.completeExceptionally(new IOException(message));
+        return job.future;
+    }
+
+    /**
+     * Queues the transfer, blocking if the queue is full.
+     *
+     * @param path
+     *            the remote path.
+     * @param transfer
+     * @return
+     */
+    public CompletableFuture<Result> submit(String path, Transfer transfer) {
+        return submit(path, transfer, null);
+    }
+
+    /**
+     * Sends the content of the input stream to the remote file. The input
+     * stream is closed when the transfer completes.
+     *
+     * @param file
+     *            the remote file (path, mode, length and times). Its length
+     *            can be negative if unknown.
+     * @param in
+     * @return
+     */
+    public CompletableFuture<Result> putAsync(final FileAttrs file, final InputStream in) {
+        return submit(file.path(), new Transfer() {
+            @Override
+            public long execute(TransferClient client) throws Throwable {
+                if (file.length() >= 0) {
+                    client.put(file, in);
+                    return file.length();
+                }
+                CountingInputStream ci = new CountingInputStream(in);
+                client.put(file, ci);
+                return ci.bytesRead();
+            }
+        }, in);
+    }
+
+    /**
+     * Sends the content of the input stream to the remote file. The input
+     * stream is closed when the transfer completes.
+     *
+     * @param in
+     * @param length
+     *            the content length. Negative if unknown.
+     * @param dstPath
+     * @return
+     */
+    public CompletableFuture<Result> putAsync(InputStream in, long length, String dstPath) {
+        return putAsync(new FileAttrs(dstPath, null, length, null, null), in);
+    }
+
+    public CompletableFuture<Result> putAsync(final Path f, final String dstPath) {
+        return submit(dstPath, new Transfer() {
+            @Override
+            public long execute(TransferClient client) throws Throwable {
+                long length = Files.size(f);
+                client.put(f, dstPath);
+                return length;
+            }
+        });
+    }
+
+    /**
+     * Sends the local directory, by a single worker channel.
+     *
+     * @param dir
+     * @param self
+     *            include the directory itself.
+     * @return
+     */
+    public CompletableFuture<Result> putDirectoryAsync(final Path dir, final boolean self) {
+        return submit(self ? dir.getFileName().toString() : ".", new Transfer() {
+            @Override
+            public long execute(TransferClient client) throws Throwable {
+                client.putDirectory(dir, self);
+                return size(dir);
+            }
+        });
+    }
+
+    public CompletableFuture<Result> mkdirsAsync(final String dir) {
+        return submit(dir, new Transfer() {
+            @Override
+            public long execute(TransferClient client) throws Throwable {
+                client.mkdirs(dir);
+                return 0;
+            }
+        });
+    }
+
+    /**
+     * Receives the remote file into the output stream. The output stream is
+     * not closed.
+     *
+     * @param remotePath
+     * @param out
+     * @return
+     */
+    public CompletableFuture<Result> getFileAsync(final String remotePath, final OutputStream out) {
+        return submit(remotePath, new Transfer() {
+            @Override
+            public long execute(TransferClient client) throws Throwable {
+                CountingOutputStream co = new CountingOutputStream(out);
+                client.getFile(remotePath, co);
+                co.flush();
+                return co.bytesWritten();
+            }
+        });
+    }
+
+    /**
+     * Receives the remote file into the local directory.
+     *
+     * @param remotePath
+     * @param dstDir
+     * @return
+     */
+    public CompletableFuture<Result> getFileAsync(final String remotePath, final File dstDir) {
+        return submit(remotePath, new Transfer() {
+            @Override
+            public long execute(TransferClient client) throws Throwable {
+                client.getFile(remotePath, dstDir);
+                return new File(dstDir, PathUtils.getLastComponent(remotePath)).length();
+            }
+        });
+    }
+
+    private static long size(Path dir) throws IOException {
+        final long[] size = new long[] { 0 };
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    size[0] += attrs.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ioe) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return size[0];
+    }
+
+    /**
+     * Discards (cancels) the queued transfers. The transfers in progress are
+     * allowed to finish. The client still needs to be closed.
+     */
+    public void abort() {
+        _aborted = true;
+        List<Job> jobs = new ArrayList<Job>();
+        _queue.drainTo(jobs);
+        for (Job job : jobs) {
+            if (job == STOP) {
+                // put it back for the worker to stop.
+                _queue.offer(STOP);
+            } else {
+                job.discard();
+            }
+        }
+    }
+
+    /**
+     * Waits for the queued transfers to complete, then closes the worker
+     * clients.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            synchronized (this) {
+                if (_closed) {
+                    return;
+                }
+                _closed = true;
+            }
+            // no transfer is queued any more: the workers take the queued
+            // transfers, then stop.
+            for (int i = 0; i < _threads.size(); i++) {
+                _queue.put(STOP);
+            }
+            for (Thread t : _threads) {
+                t.join();
+            }
+        } catch (InterruptedException e) {
+            abort();
+            for (Thread t : _threads) {
+                t.interrupt();
+            }
+            Thread.currentThread().interrupt();
+        } finally {
+            IOException ioe = null;
+            for (TransferClient client : _clients) {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    if (ioe == null) {
+                        ioe = e;
+                    }
+                }
+            }
+            if (ioe != null) {
+                throw ioe;
+            }
+        }
+    }
+
+}
@@ -2,6 +2,8 @@ package io.github.xtman.ssh.client;
 
 import java.io.Closeable;
 
+import io.github.xtman.util.metrics.Metrics;
+
 public interface Connection extends Closeable {
 
     public static final int DEFAULT_MAX_CHANNELS = 0;
@@ -10,12 +12,29 @@ public interface Connection extends Closeable {
 
     public static final String DEFAULT_ENCODING = "UTF-8";
 
+    public static final int MAX_COMPRESSION_LEVEL = 9;
+
     ConnectionDetails connectionDetails();
 
     int maxChannels();
 
     boolean verbose();
 
+    /**
+     * Checks if the connection is still connected and usable.
+     * 
+     * @return
+     */
+    boolean isAlive();
+
+    /**
+     * The metrics of the connection end point (shared by the connections to
+     * the same user, host and port).
+     * 
+     * @return
+     */
+    Metrics metrics();
+
     Executor createExecutor(String remoteBaseDir, String encoding) throws Throwable;
 
     Executor createExecutor(String remoteBaseDir) throws Throwable;
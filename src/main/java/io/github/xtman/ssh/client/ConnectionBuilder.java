@@ -13,6 +13,8 @@ public class ConnectionBuilder {
     private String _privateKey;
     private String _passphrase;
     private String _publicKey;
+    private int _compressionLevel = 0;
+    private ConnectionProfile _profile = ConnectionProfile.DEFAULT;
     private int _maxSessions = Connection.DEFAULT_MAX_CHANNELS;
     private boolean _verbose = false;
 
@@ -119,12 +121,36 @@ public class ConnectionBuilder {
         return this;
     }
 
+    /**
+     * Sets the zlib compression level of the transport (negotiated when the
+     * connection is established): 1 (fastest) to 9 (best), or 0 (default) for
+     * no compression.
+     *
+     * @param compressionLevel
+     * @return
+     */
+    public ConnectionBuilder setCompressionLevel(int compressionLevel) {
+        _compressionLevel = compressionLevel;
+        return this;
+    }
+
+    /**
+     * Sets the tuning profile of the connection. See {@link ConnectionProfile}.
+     *
+     * @param profile
+     * @return
+     */
+    public ConnectionBuilder setProfile(ConnectionProfile profile) {
+        _profile = profile == null ? ConnectionProfile.DEFAULT : profile;
+        return this;
+    }
+
     public ConnectionBuilder setVerbose(boolean verbose) {
         _verbose = verbose;
         return this;
     }
 
-    public Connection build() throws Throwable {
+    public ConnectionDetails connectionDetails() {
         if (_host == null) {
             throw new IllegalArgumentException("SSH server host is not specified.");
         }
@@ -137,8 +163,15 @@ public class ConnectionBuilder {
         if (_password == null && _privateKey == null) {
             throw new IllegalArgumentException("User's password or private key must be specified.");
         }
-        ConnectionDetails cxnDetails = new ConnectionDetails(_host, _port, _hostKey, _username, _password, _privateKey,
-                _passphrase, _publicKey);
+        if (_compressionLevel < 0 || _compressionLevel > Connection.MAX_COMPRESSION_LEVEL) {
+            throw new IllegalArgumentException("Invalid compression level: " + _compressionLevel);
+        }
+        return new ConnectionDetails(_host, _port, _hostKey, _username, _password, _privateKey, _passphrase,
+                _publicKey, _compressionLevel, _profile);
+    }
+
+    public Connection build() throws Throwable {
+        ConnectionDetails cxnDetails = connectionDetails();
         if ("jsch".equalsIgnoreCase(_impl)) {
             return new JschConnection(cxnDetails, _maxSessions, _verbose);
         } else {
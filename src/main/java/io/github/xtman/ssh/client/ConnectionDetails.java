@@ -1,5 +1,7 @@
 package io.github.xtman.ssh.client;
 
+import java.security.MessageDigest;
+
 public class ConnectionDetails {
 
     private String _host;
@@ -10,9 +12,20 @@ public class ConnectionDetails {
     private String _privateKey;
     private String _passphrase;
     private String _publicKey;
+    private int _compressionLevel;
+    private ConnectionProfile _profile;
 
+    /**
+     *
+     * @param compressionLevel
+     *            the zlib compression level of the transport: 1 (fastest) to 9
+     *            (best), or 0 for no compression.
+     * @param profile
+     *            the tuning profile of the connection. Null for
+     *            {@link ConnectionProfile#DEFAULT}.
+     */
     public ConnectionDetails(String host, int port, String hostKey, String username, String password, String privateKey,
-            String passphrase, String publicKey) {
+            String passphrase, String publicKey, int compressionLevel, ConnectionProfile profile) {
         _host = host;
         _port = port;
         _hostKey = hostKey;
@@ -21,6 +34,18 @@ public class ConnectionDetails {
         _privateKey = privateKey;
         _passphrase = passphrase;
         _publicKey = publicKey;
+        _compressionLevel = compressionLevel;
+        _profile = profile == null ? ConnectionProfile.DEFAULT : profile;
+    }
+
+    public ConnectionDetails(String host, int port, String hostKey, String username, String password, String privateKey,
+            String passphrase, String publicKey, int compressionLevel) {
+        this(host, port, hostKey, username, password, privateKey, passphrase, publicKey, compressionLevel, null);
+    }
+
+    public ConnectionDetails(String host, int port, String hostKey, String username, String password, String privateKey,
+            String passphrase, String publicKey) {
+        this(host, port, hostKey, username, password, privateKey, passphrase, publicKey, 0);
     }
 
     public ConnectionDetails(String host, int port, String hostKey, String username, String password, String privateKey,
@@ -60,4 +85,53 @@ public class ConnectionDetails {
         return _publicKey;
     }
 
+    public int compressionLevel() {
+        return _compressionLevel;
+    }
+
+    public ConnectionProfile profile() {
+        return _profile;
+    }
+
+    /**
+     * The identity of the connection: user, host, port, a fingerprint of the
+     * host key and user credentials, the compression level (if any) and the
+     * profile (if not the default).
+     * Connections with the same identity are interchangeable.
+     * 
+     * @return
+     */
+    public String identity() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(_username).append('@').append(_host).append(':').append(_port);
+        sb.append('/').append(fingerprint(_hostKey, _password, _privateKey, _passphrase, _publicKey));
+        if (_compressionLevel > 0) {
+            sb.append("/zlib-").append(_compressionLevel);
+        }
+        if (_profile != ConnectionProfile.DEFAULT) {
+            sb.append('/').append(_profile);
+        }
+        return sb.toString();
+    }
+
+    private static String fingerprint(String... values) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (String value : values) {
+                if (value != null) {
+                    md.update(value.getBytes("UTF-8"));
+                }
+                md.update((byte) 0);
+            }
+            byte[] digest = md.digest();
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                sb.append(String.format("%02x", digest[i]));
+            }
+            return sb.toString();
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
 }
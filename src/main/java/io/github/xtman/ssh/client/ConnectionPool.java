@@ -0,0 +1,433 @@
+package io.github.xtman.ssh.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of authenticated connections, keyed by
+ * {@link ConnectionDetails#identity()}. Connections are acquired by
+ * {@link #acquire(ConnectionBuilder)} and must be given back by
+ * {@link #release(Connection)} (instead of being closed) once the caller has
+ * closed its channels.
+ */
+public class ConnectionPool {
+
+    private static final Logger LOG = Logger.getLogger(ConnectionPool.class.getName());
+
+    public static final long DEFAULT_IDLE_TIMEOUT = 60000L;
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+
+    public static final long DEFAULT_ACQUIRE_TIMEOUT = 300000L;
+
+    private static class IdleConnection {
+        final String key;
+        final String host;
+        final Connection connection;
+        final long since;
+
+        IdleConnection(String key, String host, Connection connection) {
+            this.key = key;
+            this.host = host;
+            this.connection = connection;
+            this.since = System.currentTimeMillis();
+        }
+    }
+
+    private static class Lease {
+        final String key;
+        final String host;
+        final long generation;
+
+        Lease(String key, String host, long generation) {
+            this.key = key;
+            this.host = host;
+            this.generation = generation;
+        }
+    }
+
+    private long _idleTimeout;
+    private int _maxConnectionsPerHost;
+    private long _acquireTimeout;
+
+    private Map<String, LinkedList<IdleConnection>> _idle;
+    private Map<Connection, Lease> _leased;
+    private Map<String, Integer> _hostConnections;
+    private long _generation;
+
+    private ScheduledExecutorService _evictor;
+
+    private AtomicLong _hits;
+    private AtomicLong _misses;
+    private AtomicLong _evictions;
+    private AtomicLong _staleConnections;
+
+    public ConnectionPool(long idleTimeout, int maxConnectionsPerHost, long acquireTimeout) {
+        _idleTimeout = idleTimeout;
+        _maxConnectionsPerHost = maxConnectionsPerHost;
+        _acquireTimeout = acquireTimeout;
+        _idle = new HashMap<String, LinkedList<IdleConnection>>();
+        _leased = new IdentityHashMap<Connection, Lease>();
+        _hostConnections = new HashMap<String, Integer>();
+        _generation = 0;
+        _hits = new AtomicLong(0);
+        _misses = new AtomicLong(0);
+        _evictions = new AtomicLong(0);
+        _staleConnections = new AtomicLong(0);
+    }
+
+    public ConnectionPool() {
+        this(DEFAULT_IDLE_TIMEOUT, DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_ACQUIRE_TIMEOUT);
+    }
+
+    /**
+     * Gets an idle connection with the same identity from the pool, or creates
+     * a new one if there is none. Blocks if the maximum number of connections
+     * to the host is reached.
+     *
+     * @param cb
+     *            the connection builder.
+     * @return
+     * @throws Throwable
+     */
+    public Connection acquire(ConnectionBuilder cb) throws Throwable {
+        ConnectionDetails details = cb.connectionDetails();
+        String key = details.identity();
+        String host = details.host() + ":" + details.port();
+        long deadline = System.currentTimeMillis() + _acquireTimeout;
+        while (true) {
+            IdleConnection idle = null;
+            Connection evicted = null;
+            synchronized (this) {
+                while (true) {
+                    idle = pollIdle(key);
+                    if (idle != null) {
+                        break;
+                    }
+                    if (hostConnections(host) < _maxConnectionsPerHost) {
+                        // reserve the slot for the new connection
+                        updateHostConnections(host, 1);
+                        break;
+                    }
+                    IdleConnection other = pollIdleForHost(host);
+                    if (other != null) {
+                        // make room by closing an idle connection (with a
+                        // different identity) to the same host.
+                        updateHostConnections(host, -1);
+                        evicted = other.connection;
+                        continue;
+                    }
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        throw new IOException("Timed out waiting for connection to " + host + ". Reached the limit of "
+                                + _maxConnectionsPerHost + " connections.");
+                    }
+                    wait(wait);
+                }
+            }
+            if (evicted != null) {
+                _evictions.incrementAndGet();
+                closeQuietly(evicted);
+            }
+            if (idle != null) {
+                if (idle.connection.isAlive()) {
+                    synchronized (this) {
+                        _leased.put(idle.connection, new Lease(key, host, _generation));
+                    }
+                    _hits.incrementAndGet();
+                    return idle.connection;
+                } else {
+                    _staleConnections.incrementAndGet();
+                    synchronized (this) {
+                        updateHostConnections(host, -1);
+                        notifyAll();
+                    }
+                    closeQuietly(idle.connection);
+                    continue;
+                }
+            }
+            _misses.incrementAndGet();
+            Connection cxn;
+            try {
+                cxn = cb.build();
+            } catch (Throwable e) {
+                synchronized (this) {
+                    updateHostConnections(host, -1);
+                    notifyAll();
+                }
+                throw e;
+            }
+            synchronized (this) {
+                _leased.put(cxn, new Lease(key, host, _generation));
+            }
+            return cxn;
+        }
+    }
+
+    /**
+     * Gives the connection back to the pool. The connection is closed if it is
+     * no longer alive, it was acquired before the pool was drained or it was
+     * not acquired from this pool.
+     *
+     * @param cxn
+     */
+    public void release(Connection cxn) {
+        if (cxn == null) {
+            return;
+        }
+        boolean alive = cxn.isAlive();
+        boolean close = false;
+        synchronized (this) {
+            Lease lease = _leased.remove(cxn);
+            if (lease == null) {
+                close = true;
+            } else if (!alive || lease.generation != _generation) {
+                close = true;
+                updateHostConnections(lease.host, -1);
+                notifyAll();
+            } else {
+                LinkedList<IdleConnection> idle = _idle.get(lease.key);
+                if (idle == null) {
+                    idle = new LinkedList<IdleConnection>();
+                    _idle.put(lease.key, idle);
+                }
+                // most recently used first
+                idle.addFirst(new IdleConnection(lease.key, lease.host, cxn));
+                startEvictor();
+                notifyAll();
+            }
+        }
+        if (close) {
+            closeQuietly(cxn);
+        }
+    }
+
+    /**
+     * Closes the connection and removes it from the pool. Should be called
+     * instead of {@link #release(Connection)} if the connection is known to be
+     * broken.
+     *
+     * @param cxn
+     */
+    public void invalidate(Connection cxn) {
+        if (cxn == null) {
+            return;
+        }
+        synchronized (this) {
+            Lease lease = _leased.remove(cxn);
+            if (lease != null) {
+                updateHostConnections(lease.host, -1);
+                notifyAll();
+            }
+        }
+        closeQuietly(cxn);
+    }
+
+    /**
+     * Closes all the idle connections. The connections currently in use are
+     * closed when they are released. The pool can still be used afterwards.
+     */
+    public void drain() {
+        List<IdleConnection> idle = new ArrayList<IdleConnection>();
+        synchronized (this) {
+            for (LinkedList<IdleConnection> ics : _idle.values()) {
+                idle.addAll(ics);
+            }
+            _idle.clear();
+            for (IdleConnection ic : idle) {
+                updateHostConnections(ic.host, -1);
+            }
+            _generation++;
+            if (_evictor != null) {
+                _evictor.shutdownNow();
+                _evictor = null;
+            }
+            notifyAll();
+        }
+        for (IdleConnection ic : idle) {
+            closeQuietly(ic.connection);
+        }
+    }
+
+    /**
+     * Closes the connections that have been idle for longer than the idle
+     * timeout.
+     */
+    public void evictIdleConnections() {
+        List<IdleConnection> expired = new ArrayList<IdleConnection>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (Iterator<LinkedList<IdleConnection>> it = _idle.values().iterator(); it.hasNext();) {
+                LinkedList<IdleConnection> ics = it.next();
+                for (Iterator<IdleConnection> it2 = ics.iterator(); it2.hasNext();) {
+                    IdleConnection ic = it2.next();
+                    if (now - ic.since >= _idleTimeout) {
+                        it2.remove();
+                        updateHostConnections(ic.host, -1);
+                        expired.add(ic);
+                    }
+                }
+                if (ics.isEmpty()) {
+                    it.remove();
+                }
+            }
+            if (!expired.isEmpty()) {
+                notifyAll();
+            }
+        }
+        for (IdleConnection ic : expired) {
+            _evictions.incrementAndGet();
+            closeQuietly(ic.connection);
+        }
+    }
+
+    private IdleConnection pollIdle(String key) {
+        LinkedList<IdleConnection> ics = _idle.get(key);
+        if (ics == null) {
+            return null;
+        }
+        IdleConnection ic = ics.pollFirst();
+        if (ics.isEmpty()) {
+            _idle.remove(key);
+        }
+        return ic;
+    }
+
+    private IdleConnection pollIdleForHost(String host) {
+        for (LinkedList<IdleConnection> ics : _idle.values()) {
+            IdleConnection ic = ics.peekLast();
+            if (ic != null && ic.host.equals(host)) {
+                // least recently used
+                return pollLast(ic.key);
+            }
+        }
+        return null;
+    }
+
+    private IdleConnection pollLast(String key) {
+        LinkedList<IdleConnection> ics = _idle.get(key);
+        IdleConnection ic = ics.pollLast();
+        if (ics.isEmpty()) {
+            _idle.remove(key);
+        }
+        return ic;
+    }
+
+    private int hostConnections(String host) {
+        Integer n = _hostConnections.get(host);
+        return n == null ? 0 : n;
+    }
+
+    private void updateHostConnections(String host, int delta) {
+        int n = hostConnections(host) + delta;
+        if (n <= 0) {
+            _hostConnections.remove(host);
+        } else {
+            _hostConnections.put(host, n);
+        }
+    }
+
+    private void startEvictor() {
+        if (_evictor != null) {
+            return;
+        }
+        _evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ssh-connection-pool-evictor");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        long period = Math.max(1000L, _idleTimeout / 2);
+        _evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdleConnections();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private static void closeQuietly(Connection cxn) {
+        try {
+            cxn.close();
+        } catch (Throwable e) {
+            LOG.log(Level.WARNING, "Failed to close connection.", e);
+        }
+    }
+
+    public long idleTimeout() {
+        return _idleTimeout;
+    }
+
+    public int maxConnectionsPerHost() {
+        return _maxConnectionsPerHost;
+    }
+
+    /**
+     * Number of acquisitions served by an idle connection.
+     *
+     * @return
+     */
+    public long hits() {
+        return _hits.get();
+    }
+
+    /**
+     * Number of acquisitions that required a new connection.
+     *
+     * @return
+     */
+    public long misses() {
+        return _misses.get();
+    }
+
+    /**
+     * Number of idle connections closed because of idle timeout or to make
+     * room for a connection with a different identity.
+     *
+     * @return
+     */
+    public long evictions() {
+        return _evictions.get();
+    }
+
+    /**
+     * Number of idle connections found dead when acquired.
+     *
+     * @return
+     */
+    public long staleConnections() {
+        return _staleConnections.get();
+    }
+
+    public synchronized int idleConnections() {
+        int n = 0;
+        for (LinkedList<IdleConnection> ics : _idle.values()) {
+            n += ics.size();
+        }
+        return n;
+    }
+
+    public synchronized int leasedConnections() {
+        return _leased.size();
+    }
+
+    public synchronized Map<String, Integer> hostConnections() {
+        return new HashMap<String, Integer>(_hostConnections);
+    }
+
+}
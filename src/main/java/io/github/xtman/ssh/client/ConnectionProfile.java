@@ -0,0 +1,48 @@
+package io.github.xtman.ssh.client;
+
+/**
+ * Named tuning profile of a connection: the preference order of the transport
+ * algorithms (cipher and MAC) and the sizes of the channel windows.
+ */
+public enum ConnectionProfile {
+
+    /**
+     * The defaults of the SSH implementation.
+     */
+    DEFAULT,
+
+    /**
+     * For high-throughput links: the fastest CTR cipher (measured by a
+     * self-test on the first connection) and the cheapest MAC supported by
+     * the server are preferred, and the channels are opened with larger
+     * windows. The packet size is the default.
+     */
+    THROUGHPUT;
+
+    public String toString() {
+        return name().toLowerCase();
+    }
+
+    public static ConnectionProfile fromString(String profile) {
+        if (profile == null) {
+            return null;
+        }
+        ConnectionProfile[] vs = values();
+        for (ConnectionProfile v : vs) {
+            if (v.name().equalsIgnoreCase(profile)) {
+                return v;
+            }
+        }
+        throw new IllegalArgumentException("Unknown connection profile: " + profile);
+    }
+
+    public static String[] stringValues() {
+        ConnectionProfile[] vs = values();
+        String[] svs = new String[vs.length];
+        for (int i = 0; i < vs.length; i++) {
+            svs[i] = vs[i].toString();
+        }
+        return svs;
+    }
+
+}
@@ -1,9 +1,42 @@
 package io.github.xtman.ssh.client;
 
+import java.io.OutputStream;
+
 public interface Executor extends Channel {
 
     public static final String CHANNEL_TYPE_NAME = "exec";
 
+    /**
+     * Runs the command, in the remote base directory, and waits for it to
+     * exit. The standard output is discarded.
+     *
+     * @param command
+     *            the shell command line. The arguments must be quoted.
+     * @throws RemoteCommandException
+     *             if the command exits with a non-zero status. The message
+     *             includes (the beginning of) its standard error.
+     * @throws Throwable
+     */
     void execute(String command) throws Throwable;
 
+    /**
+     * Runs the command, in the remote base directory, and waits for it to
+     * exit. Each command runs on its own exec channel, so the commands can be
+     * run concurrently (by multiple threads).
+     *
+     * @param command
+     *            the shell command line. The arguments must be quoted.
+     * @param out
+     *            receives the standard output of the command, as it comes. It
+     *            is not closed. Null to discard it.
+     * @param err
+     *            receives the standard error of the command. It is not closed.
+     *            Null to discard it.
+     * @return the exit status of the command.
+     * @throws Throwable
+     *             if the exec channel cannot be opened (e.g. the server does
+     *             not allow remote commands).
+     */
+    int execute(String command, OutputStream out, OutputStream err) throws Throwable;
+
 }
@@ -0,0 +1,375 @@
+package io.github.xtman.ssh.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.xtman.ssh.client.TransferClient.GetHandler;
+import io.github.xtman.util.PathUtils;
+
+/**
+ * Concurrent recursive download over multiple sftp channels of the same
+ * connection. The lister channels list the remote directories (several at
+ * once) and feed a bounded queue of files; the worker channels take the files
+ * from the queue and pass them to the handler.
+ *
+ * The handler is called concurrently: getDirectory() by the lister threads and
+ * getFile() by the worker threads. So it must be thread-safe. A directory is
+ * always handled before its entries.
+ *
+ * Failures are collected and retrieved by {@link #pollFailures()} from the
+ * submitting thread.
+ */
+public class ParallelGetClient implements Closeable {
+
+    private static final long POLL_INTERVAL = 500L;
+
+    private static class Entry {
+        final String base;
+        final FileAttrs attrs;
+        final GetHandler handler;
+        final boolean root;
+
+        Entry(String base, FileAttrs attrs, GetHandler handler, boolean root) {
+            this.base = base;
+            this.attrs = attrs;
+            this.handler = handler;
+            this.root = root;
+        }
+
+        Entry(String base, FileAttrs attrs, GetHandler handler) {
+            this(base, attrs, handler, false);
+        }
+
+        String remotePath() {
+            return base == null ? attrs.path() : PathUtils.join(base, attrs.path());
+        }
+    }
+
+    private static final Entry STOP = new Entry(null, null, null);
+
+    private List<SftpClient> _listers;
+    private List<SftpClient> _workers;
+    private List<Thread> _threads;
+    private BlockingQueue<Entry> _dirs;
+    private BlockingQueue<Entry> _files;
+    private int _retry;
+    private ConcurrentLinkedQueue<TransferException> _failures;
+    private AtomicLong _completed;
+    private Object _lock = new Object();
+    private long _pending;
+    private volatile boolean _aborted;
+    private boolean _closed;
+
+    /**
+     *
+     * @param listers
+     *            the clients to list the directories. They are closed by
+     *            {@link #close()}.
+     * @param workers
+     *            the clients to get the files. They are closed by
+     *            {@link #close()}.
+     * @param queueSize
+     *            maximum number of files waiting for a worker.
+     * @param retry
+     *            number of attempts to get a file again after a failure.
+     */
+    public ParallelGetClient(List<SftpClient> listers, List<SftpClient> workers, int queueSize, int retry) {
+        _listers = new ArrayList<SftpClient>(listers);
+        _workers = new ArrayList<SftpClient>(workers);
+        _dirs = new LinkedBlockingQueue<Entry>();
+        _files = new ArrayBlockingQueue<Entry>(Math.max(1, queueSize));
+        _retry = retry;
+        _failures = new ConcurrentLinkedQueue<TransferException>();
+        _completed = new AtomicLong(0);
+        _threads = new ArrayList<Thread>(_listers.size() + _workers.size());
+        for (int i = 0; i < _listers.size(); i++) {
+            final SftpClient lister = _listers.get(i);
+            _threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    list(lister);
+                }
+            }, "sftp-get-lister-" + (i + 1)));
+        }
+        for (int i = 0; i < _workers.size(); i++) {
+            final SftpClient worker = _workers.get(i);
+            _threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work(worker);
+                }
+            }, "sftp-get-worker-" + (i + 1)));
+        }
+        for (Thread t : _threads) {
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    private void list(SftpClient client) {
+        while (true) {
+            Entry dir;
+            try {
+                dir = _dirs.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (dir == STOP) {
+                break;
+            }
+            try {
+                if (!_aborted && dir.root) {
+                    // the submitted path: may be a file
+                    FileAttrs attrs = client.stat(dir.remotePath());
+                    String name = dir.attrs.path();
+                    if (attrs.isDirectory()) {
+                        FileAttrs da = new FileAttrs(name, attrs.mode(), attrs.mtime(), attrs.atime());
+                        dir.handler.getDirectory(da);
+                        dir = new Entry(dir.base, da, dir.handler);
+                    } else {
+                        queue(_files, new Entry(dir.base,
+                                new FileAttrs(name, attrs.mode(), attrs.length(), attrs.mtime(), attrs.atime()),
+                                dir.handler));
+                        continue;
+                    }
+                }
+                if (!_aborted) {
+                    List<FileAttrs> entries = client.ls(dir.remotePath());
+                    for (FileAttrs e : entries) {
+                        if (_aborted) {
+                            break;
+                        }
+                        String path = PathUtils.join(dir.attrs.path(), e.path());
+                        if (e.isDirectory()) {
+                            FileAttrs attrs = new FileAttrs(path, e.mode(), e.mtime(), e.atime());
+                            dir.handler.getDirectory(attrs);
+                            queue(_dirs, new Entry(dir.base, attrs, dir.handler));
+                        } else {
+                            FileAttrs attrs = new FileAttrs(path, e.mode(), e.length(), e.mtime(), e.atime());
+                            queue(_files, new Entry(dir.base, attrs, dir.handler));
+                        }
+                    }
+                }
+            } catch (Throwable e) {
+                addFailure(dir, e);
+            } finally {
+                done();
+            }
+        }
+    }
+
+    private void work(SftpClient client) {
+        while (true) {
+            Entry file;
+            try {
+                file = _files.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (file == STOP) {
+                break;
+            }
+            try {
+                if (!_aborted) {
+                    get(client, file, _retry);
+                    _completed.incrementAndGet();
+                }
+            } catch (Throwable e) {
+                addFailure(file, e);
+            } finally {
+                done();
+            }
+        }
+    }
+
+    private void get(SftpClient client, Entry file, int retry) throws Throwable {
+        try {
+            client.get(file.remotePath(), file.attrs, file.handler);
+        } catch (Throwable e) {
+            if (retry <= 0 || _aborted || e instanceof InterruptedException) {
+                throw e;
+            }
+            client.connection().metrics().increment(SshMetrics.RETRIES);
+            get(client, file, retry - 1);
+        }
+    }
+
+    /**
+     * Queues the entry (counted as pending), blocking while the queue is
+     * full, unless aborted.
+     */
+    private void queue(BlockingQueue<Entry> queue, Entry entry) throws InterruptedException {
+        synchronized (_lock) {
+            _pending++;
+        }
+        while (!queue.offer(entry, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+            if (_aborted) {
+                done();
+                return;
+            }
+        }
+    }
+
+    private void done() {
+        synchronized (_lock) {
+            _pending--;
+            if (_pending == 0) {
+                _lock.notifyAll();
+            }
+        }
+    }
+
+    private void addFailure(Entry entry, Throwable e) {
+        if (e instanceof TransferException) {
+            _failures.add((TransferException) e);
+        } else {
+            _failures.add(new TransferException(entry.attrs.path(),
+                    "Failed to get '" + entry.remotePath() + "': " + e.getMessage(), e));
+        }
+    }
+
+    public int numberOfChannels() {
+        return _listers.size() + _workers.size();
+    }
+
+    /**
+     * Number of files got successfully.
+     *
+     * @return
+     */
+    public long completed() {
+        return _completed.get();
+    }
+
+    /**
+     * Starts getting the remote file or directory (recursively). The paths
+     * passed to the handler are relative to the parent of the remote path,
+     * i.e. they start with its name. Returns immediately; use
+     * {@link #await(long)} to wait for the completion.
+     *
+     * @param remotePath
+     * @param h
+     *            the (thread-safe) handler.
+     * @throws Throwable
+     */
+    public void submit(String remotePath, GetHandler h) throws Throwable {
+        if (_aborted || _closed) {
+            throw new IOException("Parallel get client is closed.");
+        }
+        String base = PathUtils.getParent(remotePath);
+        String name = PathUtils.getLastComponent(remotePath);
+        // stat-ed by a lister
+        queue(_dirs, new Entry(base, new FileAttrs(name, null, null, null), h, true));
+    }
+
+    /**
+     * Waits for the submitted directories and files to be handled.
+     *
+     * @param timeout
+     *            in milliseconds.
+     * @return true if all done, false if timed out.
+     * @throws InterruptedException
+     */
+    public boolean await(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (_lock) {
+            while (_pending > 0) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return false;
+                }
+                _lock.wait(wait);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Retrieves (and removes) the failures since last call.
+     *
+     * @return
+     */
+    public List<TransferException> pollFailures() {
+        List<TransferException> failures = new ArrayList<TransferException>();
+        TransferException e;
+        while ((e = _failures.poll()) != null) {
+            failures.add(e);
+        }
+        return failures;
+    }
+
+    /**
+     * Discards the queued directories and files. The files in progress are
+     * allowed to finish. The client still needs to be closed.
+     */
+    public void abort() {
+        _aborted = true;
+        List<Entry> entries = new ArrayList<Entry>();
+        _dirs.drainTo(entries);
+        _files.drainTo(entries);
+        for (Entry entry : entries) {
+            if (entry != STOP) {
+                done();
+            }
+        }
+    }
+
+    /**
+     * Stops the threads (after the queued directories and files are handled,
+     * unless aborted) and closes the clients.
+     */
+    @Override
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        try {
+            while (!await(POLL_INTERVAL)) {
+                if (_aborted) {
+                    abort();
+                }
+            }
+            for (int i = 0; i < _listers.size(); i++) {
+                _dirs.put(STOP);
+            }
+            for (int i = 0; i < _workers.size(); i++) {
+                _files.put(STOP);
+            }
+            for (Thread t : _threads) {
+                t.join();
+            }
+        } catch (InterruptedException e) {
+            abort();
+            for (Thread t : _threads) {
+                t.interrupt();
+            }
+            Thread.currentThread().interrupt();
+        } finally {
+            IOException ioe = null;
+            List<SftpClient> clients = new ArrayList<SftpClient>(_listers);
+            clients.addAll(_workers);
+            for (SftpClient client : clients) {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    if (ioe == null) {
+                        ioe = e;
+                    }
+                }
+            }
+            if (ioe != null) {
+                throw ioe;
+            }
+        }
+    }
+
+}
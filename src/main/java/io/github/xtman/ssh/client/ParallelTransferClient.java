@@ -0,0 +1,381 @@
+package io.github.xtman.ssh.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.xtman.file.util.FileUtils;
+import io.github.xtman.util.PathUtils;
+
+/**
+ * Spreads file transfers across multiple channels (transfer clients) of the
+ * same connection. Each worker channel is driven by its own thread, taking
+ * transfer tasks from a bounded queue. The directories are created, in order,
+ * by the submitting thread via the control client before the tasks are queued,
+ * so that the workers never race to create the same directory.
+ *
+ * Failures are collected and retrieved by {@link #pollFailures()} from the
+ * submitting thread.
+ */
+public class ParallelTransferClient implements Closeable {
+
+    /**
+     * A file transfer to be executed by one of the worker channels.
+     */
+    public static abstract class Task {
+
+        private String _dstPath;
+
+        protected Task(String dstPath) {
+            _dstPath = dstPath;
+        }
+
+        /**
+         * The destination path (relative to the remote base directory).
+         *
+         * @return
+         */
+        public String dstPath() {
+            return _dstPath;
+        }
+
+        /**
+         * Transfers the file using the given client. Must release the
+         * resources (e.g. input stream) held by the task.
+         *
+         * @param client
+         * @throws Throwable
+         */
+        public abstract void execute(TransferClient client) throws Throwable;
+
+        /**
+         * Called, instead of {@link #execute(TransferClient)}, when the task is
+         * discarded (e.g. aborted). Releases the resources held by the task.
+         */
+        public void discard() {
+
+        }
+    }
+
+    private static final Task STOP = new Task(null) {
+        @Override
+        public void execute(TransferClient client) throws Throwable {
+
+        }
+    };
+
+    private TransferClient _control;
+    private List<TransferClient> _workers;
+    private List<Thread> _threads;
+    private BlockingQueue<Task> _queue;
+    private ConcurrentLinkedQueue<TransferException> _failures;
+    private Set<String> _dirs;
+    private AtomicLong _completed;
+    private volatile boolean _aborted;
+    private boolean _closed;
+
+    /**
+     *
+     * @param control
+     *            the client to create directories. It is not closed by
+     *            {@link #close()}.
+     * @param workers
+     *            the clients to transfer the files. They are closed by
+     *            {@link #close()}.
+     * @param queueSize
+     *            maximum number of tasks waiting for a worker.
+     */
+    public ParallelTransferClient(TransferClient control, List<TransferClient> workers, int queueSize) {
+        _control = control;
+        _workers = new ArrayList<TransferClient>(workers);
+        _queue = new ArrayBlockingQueue<Task>(Math.max(1, queueSize));
+        _failures = new ConcurrentLinkedQueue<TransferException>();
+        _dirs = new HashSet<String>();
+        _completed = new AtomicLong(0);
+        _threads = new ArrayList<Thread>(_workers.size());
+        for (int i = 0; i < _workers.size(); i++) {
+            final TransferClient worker = _workers.get(i);
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work(worker);
+                }
+            }, "ssh-transfer-worker-" + (i + 1));
+            t.setDaemon(true);
+            _threads.add(t);
+        }
+        for (Thread t : _threads) {
+            t.start();
+        }
+    }
+
+    private void work(TransferClient client) {
+        while (true) {
+            Task task;
+            try {
+                task = _queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (task == STOP) {
+                break;
+            }
+            if (_aborted) {
+                task.discard();
+                continue;
+            }
+            try {
+                task.execute(client);
+                _completed.incrementAndGet();
+            } catch (Throwable e) {
+                if (e instanceof TransferException) {
+                    _failures.add((TransferException) e);
+                } else {
+                    _failures.add(new TransferException(task.dstPath(), e.getMessage(), e));
+                }
+            }
+        }
+    }
+
+    public TransferClient controlClient() {
+        return _control;
+    }
+
+    public int numberOfChannels() {
+        return _workers.size();
+    }
+
+    /**
+     * Number of tasks completed successfully.
+     *
+     * @return
+     */
+    public long completed() {
+        return _completed.get();
+    }
+
+    /**
+     * Creates the directory (and its ancestors) via the control client, unless
+     * it has already been created.
+     *
+     * @param dir
+     * @throws Throwable
+     */
+    public void mkdirs(String dir) throws Throwable {
+        if (dir == null || ".".equals(dir) || "/".equals(dir) || _dirs.contains(dir)) {
+            return;
+        }
+        _control.mkdirs(dir);
+        String d = dir;
+        while (d != null && !_dirs.contains(d)) {
+            _dirs.add(d);
+            d = PathUtils.getParent(d);
+        }
+    }
+
+    /**
+     * Creates the directories (and their ancestors) not created yet, via the
+     * control client, at once.
+     *
+     * @param dirs
+     * @throws Throwable
+     */
+    public void mkdirs(Collection<String> dirs) throws Throwable {
+        List<String> missing = new ArrayList<String>();
+        for (String dir : dirs) {
+            if (dir != null && !".".equals(dir) && !"/".equals(dir) && !_dirs.contains(dir)) {
+                missing.add(dir);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        _control.mkdirs(missing);
+        for (String dir : missing) {
+            String d = dir;
+            while (d != null && !_dirs.contains(d)) {
+                _dirs.add(d);
+                d = PathUtils.getParent(d);
+            }
+        }
+    }
+
+    /**
+     * Queues the task, blocking if the queue is full. The parent directory of
+     * the destination file is created before the task is queued. The task is
+     * discarded if it cannot be queued.
+     *
+     * @param task
+     * @throws Throwable
+     */
+    public void submit(Task task) throws Throwable {
+        boolean queued = false;
+        try {
+            if (_aborted || _closed) {
+                throw new IOException("Parallel transfer client is closed.");
+            }
+            mkdirs(PathUtils.getParent(task.dstPath()));
+            _queue.put(task);
+            queued = true;
+        } finally {
+            if (!queued) {
+                task.discard();
+            }
+        }
+    }
+
+    /**
+     * Transfers the files in the local directory. The directories are created
+     * first, at once, by the calling thread.
+     *
+     * @param dir
+     * @param self
+     *            include the directory itself.
+     * @throws Throwable
+     */
+    public void putDirectory(final Path dir, final boolean self) throws Throwable {
+        final String dirName = dir.getFileName().toString();
+        List<String> dirs = FileUtils.listDirectories(dir);
+        if (self) {
+            for (int i = 0; i < dirs.size(); i++) {
+                dirs.set(i, PathUtils.join(dirName, dirs.get(i)));
+            }
+            dirs.add(0, dirName);
+        }
+        mkdirs(dirs);
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                String dstPath = d.equals(dir) ? null : PathUtils.getRelativePath(d, dir);
+                if (self) {
+                    dstPath = dstPath == null ? dirName : PathUtils.join(dirName, dstPath);
+                }
+                try {
+                    mkdirs(dstPath);
+                } catch (Throwable e) {
+                    if (e instanceof IOException) {
+                        throw (IOException) e;
+                    } else {
+                        throw new IOException(e);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, BasicFileAttributes attrs) throws IOException {
+                String dstPath = PathUtils.getRelativePath(file, dir);
+                if (self) {
+                    dstPath = PathUtils.join(dirName, dstPath);
+                }
+                try {
+                    submit(new Task(dstPath) {
+                        @Override
+                        public void execute(TransferClient client) throws Throwable {
+                            client.put(file, dstPath());
+                        }
+                    });
+                } catch (Throwable e) {
+                    if (e instanceof IOException) {
+                        throw (IOException) e;
+                    } else {
+                        throw new IOException(e);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ioe) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Retrieves (and removes) the failures of the tasks completed since last
+     * call.
+     *
+     * @return
+     */
+    public List<TransferException> pollFailures() {
+        List<TransferException> failures = new ArrayList<TransferException>();
+        TransferException e;
+        while ((e = _failures.poll()) != null) {
+            failures.add(e);
+        }
+        return failures;
+    }
+
+    /**
+     * Discards the queued tasks. The tasks in progress are allowed to finish.
+     * The client still needs to be closed.
+     */
+    public void abort() {
+        _aborted = true;
+        List<Task> tasks = new ArrayList<Task>();
+        _queue.drainTo(tasks);
+        for (Task task : tasks) {
+            if (task != STOP) {
+                task.discard();
+            }
+        }
+    }
+
+    /**
+     * Waits for the queued tasks to complete, then closes the worker clients.
+     * The failures remain available to {@link #pollFailures()}.
+     */
+    @Override
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        try {
+            for (int i = 0; i < _threads.size(); i++) {
+                _queue.put(STOP);
+            }
+            for (Thread t : _threads) {
+                t.join();
+            }
+        } catch (InterruptedException e) {
+            abort();
+            for (Thread t : _threads) {
+                t.interrupt();
+            }
+            Thread.currentThread().interrupt();
+        } finally {
+            IOException ioe = null;
+            for (TransferClient worker : _workers) {
+                try {
+                    worker.close();
+                } catch (TransferException e) {
+                    _failures.add(e);
+                } catch (IOException e) {
+                    if (ioe == null) {
+                        ioe = e;
+                    }
+                }
+            }
+            if (ioe != null) {
+                throw ioe;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package io.github.xtman.ssh.client;
+
+import java.io.IOException;
+
+/**
+ * A remote command exited with a non-zero status.
+ */
+public class RemoteCommandException extends IOException {
+
+    private static final long serialVersionUID = 4310557253297417830L;
+
+    private String _command;
+    private int _exitStatus;
+
+    public RemoteCommandException(String command, int exitStatus, String error) {
+        super("Remote command '" + command + "' failed with exit status " + exitStatus
+                + ((error == null || error.isEmpty()) ? "." : (": " + error)));
+        _command = command;
+        _exitStatus = exitStatus;
+    }
+
+    public String command() {
+        return _command;
+    }
+
+    /**
+     * The exit status of the command. -1 if the command was terminated
+     * without reporting one (e.g. killed by a signal).
+     *
+     * @return
+     */
+    public int exitStatus() {
+        return _exitStatus;
+    }
+
+}
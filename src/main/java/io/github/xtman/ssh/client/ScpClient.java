@@ -4,4 +4,24 @@ public interface ScpClient extends TransferClient, Channel {
 
     public static final String CHANNEL_TYPE_NAME = Executor.CHANNEL_TYPE_NAME;
 
+    /**
+     * If set, the acknowledgements of the file contents, and of the time and
+     * end of directory messages, are not waited for: they are received while
+     * the next file is sent. The file and directory messages are still
+     * acknowledged before anything else is sent, since the remote scp treats
+     * the bytes following a rejected message as control messages. So a file
+     * costs one round trip instead of two (three if the times are preserved).
+     * The failure of a file is reported by a later put, or by close().
+     *
+     * The gain depends on the server sending the acknowledgements without
+     * delay: with Nagle's algorithm on the server socket, the second of two
+     * consecutive acknowledgements can wait for the delayed TCP ACK of the
+     * client (about 40ms), which is slower than no pipelining on a fast link.
+     *
+     * @return
+     */
+    boolean pipelined();
+
+    void setPipelined(boolean pipelined);
+
 }
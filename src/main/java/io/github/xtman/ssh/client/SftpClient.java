@@ -1,7 +1,152 @@
 package io.github.xtman.ssh.client;
 
+import java.util.List;
+
 public interface SftpClient extends TransferClient {
 
     public static final String CHANNEL_TYPE_NAME = "sftp";
 
+    /**
+     * Default maximum number of outstanding requests per file.
+     */
+    public static final int DEFAULT_MAX_OUTSTANDING_REQUESTS = 16;
+
+    public static final int MAX_OUTSTANDING_REQUESTS = 1024;
+
+    /**
+     * The maximum number of requests in flight for a file: SSH_FXP_WRITE when
+     * sending, SSH_FXP_READ when receiving. Each request carries a chunk as
+     * large as the server's maximum packet size allows, so the bytes in flight
+     * (which must cover the bandwidth-delay product of the link to reach line
+     * rate) are about the number of requests times the chunk size.
+     *
+     * @return
+     */
+    int maxOutstandingRequests();
+
+    void setMaxOutstandingRequests(int maxOutstandingRequests);
+
+    public static final long DEFAULT_STRIPE_THRESHOLD = 1024L * 1024L * 1024L;
+
+    /**
+     * Large file mode: the files (of known length) not smaller than the
+     * threshold are split into chunks, written concurrently over this number
+     * of additional channels at their offsets. 0 or 1 means no striping.
+     *
+     * @return
+     */
+    int stripeChannels();
+
+    long stripeThreshold();
+
+    /**
+     * If set (the default), the SHA-256 digest of a striped file, computed
+     * while it is read, is compared with the one computed by sha256sum (or
+     * shasum) on the server. Skipped if the server does not allow remote
+     * commands. (The size of a striped file is always verified.)
+     *
+     * @return
+     */
+    boolean stripeVerify();
+
+    void setStriping(int channels, long threshold, boolean verify);
+
+    /**
+     * If set, the remote file is assumed to be a previous (possibly partial)
+     * copy of the file being sent: it is appended to if it is shorter than the
+     * source, or left unchanged if it has the same length.
+     * 
+     * @return
+     */
+    boolean resume();
+
+    void setResume(boolean resume);
+
+    /**
+     * If set, the operations on a whole tree are done by a single remote
+     * command, over an exec channel on the same connection, instead of a
+     * round trip per directory: the recursive listing by find (GNU, with
+     * -printf) and the creation of directories by mkdir -p. If the server
+     * does not allow remote commands, they are disabled, and the operations
+     * are done by sftp.
+     *
+     * @return
+     */
+    boolean remoteCommands();
+
+    void setRemoteCommands(boolean remoteCommands);
+
+    /**
+     * The home (login) directory of the user.
+     *
+     * @return the absolute path.
+     * @throws Throwable
+     */
+    String homeDirectory() throws Throwable;
+
+    /**
+     * Resolves the remote path to its canonical absolute path, on the server.
+     *
+     * @param remotePath
+     *            the remote path (relative to the base directory).
+     * @return
+     * @throws Throwable
+     */
+    String realPath(String remotePath) throws Throwable;
+
+    /**
+     * Lists the regular files in the remote directory.
+     * 
+     * @param remoteDir
+     *            the remote directory (relative to the base directory).
+     * @param recursive
+     *            include the files in the sub-directories.
+     * @return the attributes of the files, with the paths relative to the
+     *         directory. Empty if the directory does not exist.
+     * @throws Throwable
+     */
+    List<FileAttrs> list(String remoteDir, boolean recursive) throws Throwable;
+
+    /**
+     * Lists the entries (regular files and directories) in the remote
+     * directory.
+     * 
+     * @param remoteDir
+     * @return the attributes of the entries, with the paths set to the entry
+     *         names.
+     * @throws Throwable
+     */
+    List<FileAttrs> ls(String remoteDir) throws Throwable;
+
+    /**
+     * Gets the attributes of the remote file or directory.
+     * 
+     * @param remotePath
+     * @return the attributes, with the path set to the given path.
+     * @throws Throwable
+     */
+    FileAttrs stat(String remotePath) throws Throwable;
+
+    /**
+     * Gets the remote regular file whose attributes are already known (e.g.
+     * from a listing), without stat-ing it first.
+     * 
+     * @param remotePath
+     *            the path of the remote file.
+     * @param file
+     *            the attributes passed to the handler.
+     * @param h
+     * @throws Throwable
+     */
+    void get(String remotePath, FileAttrs file, GetHandler h) throws Throwable;
+
+    /**
+     * Deletes the remote file.
+     * 
+     * @param remotePath
+     *            the remote file path (relative to the base directory).
+     * @throws Throwable
+     */
+    void delete(String remotePath) throws Throwable;
+
 }
@@ -0,0 +1,43 @@
+package io.github.xtman.ssh.client;
+
+import io.github.xtman.util.metrics.Metrics;
+import io.github.xtman.util.metrics.MetricsRegistry;
+
+/**
+ * Names and scopes of the metrics recorded by the SSH clients.
+ */
+public class SshMetrics {
+
+    /*
+     * counters
+     */
+    public static final String CONNECTIONS = "connections";
+    public static final String CONNECTION_FAILURES = "connection.failures";
+    public static final String CHANNELS = "channels";
+    public static final String FILES_SENT = "files.sent";
+    public static final String FILES_RECEIVED = "files.received";
+    public static final String BYTES_SENT = "bytes.sent";
+    public static final String BYTES_RECEIVED = "bytes.received";
+    public static final String FAILURES = "failures";
+    public static final String RETRIES = "retries";
+    // content of unknown length spooled to a temporary file (scp)
+    public static final String SPOOL_FILES = "spool.files";
+    public static final String SPOOL_FILE_BYTES = "spool.file.bytes";
+
+    /*
+     * histograms
+     */
+    public static final String HANDSHAKE_TIME = "handshake.time.ms";
+    public static final String CHANNEL_OPEN_WAIT_TIME = "channel.open.wait.time.ms";
+    public static final String FILE_PUT_TIME = "file.put.time.ms";
+    public static final String FILE_GET_TIME = "file.get.time.ms";
+    public static final String ACK_WAIT_TIME = "scp.ack.wait.time.us";
+
+    public static final String CONNECTION_SCOPE_PREFIX = "connection:";
+
+    public static Metrics connectionMetrics(ConnectionDetails cxnDetails) {
+        return MetricsRegistry.get(CONNECTION_SCOPE_PREFIX + cxnDetails.username() + "@" + cxnDetails.host() + ":"
+                + cxnDetails.port());
+    }
+
+}
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Path;
+import java.util.Collection;
 
 public interface TransferClient extends Channel {
 
@@ -33,6 +34,17 @@ public interface TransferClient extends Channel {
 
     void put(InputStream in, long length, Integer mode, Integer mtime, Integer atime, String dstPath) throws Throwable;
 
+    /**
+     * Sends the content of the input stream to the remote file.
+     *
+     * @param in
+     * @param length
+     *            the content length. Negative if unknown: sftp streams the
+     *            content to the end of the input; scp spools it first, since
+     *            the protocol sends the length before the content.
+     * @param dstPath
+     * @throws Throwable
+     */
     void put(InputStream in, long length, String dstPath) throws Throwable;
 
     void put(File f, String dstPath) throws Throwable;
@@ -51,6 +63,16 @@ public interface TransferClient extends Channel {
 
     void mkdirs(String dir) throws Throwable;
 
+    /**
+     * Creates the directories (and their missing ancestors), e.g. a whole
+     * tree before its files are sent.
+     *
+     * @param dirs
+     *            the remote directories (relative to the base directory).
+     * @throws Throwable
+     */
+    void mkdirs(Collection<String> dirs) throws Throwable;
+
     boolean compress();
 
     void setCompress(boolean compress);
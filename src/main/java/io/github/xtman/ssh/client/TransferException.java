@@ -0,0 +1,35 @@
+package io.github.xtman.ssh.client;
+
+import java.io.IOException;
+
+/**
+ * Failure to transfer a specific remote file. Pipelined or parallel transfer
+ * clients may report the failure after the call that initiated the transfer
+ * returned, so {@link #path()} does not necessarily refer to the file of the
+ * call that throws it.
+ */
+public class TransferException extends IOException {
+
+    private static final long serialVersionUID = -2592838917386617524L;
+
+    private String _path;
+
+    public TransferException(String path, String message, Throwable cause) {
+        super(message, cause);
+        _path = path;
+    }
+
+    public TransferException(String path, String message) {
+        this(path, message, null);
+    }
+
+    /**
+     * The (destination) path of the file failed to transfer.
+     *
+     * @return
+     */
+    public String path() {
+        return _path;
+    }
+
+}
@@ -8,10 +8,13 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 
+import io.github.xtman.ssh.client.AsyncTransferClient;
 import io.github.xtman.ssh.client.Connection;
 import io.github.xtman.ssh.client.ConnectionBuilder;
 import io.github.xtman.ssh.client.ScpClient;
+import io.github.xtman.ssh.client.TransferClient;
 
 public class ScpCLI {
 
@@ -32,6 +35,7 @@ public class ScpCLI {
             int port = 22;
             String baseDir = dst[2];
             String password = null;
+            int channels = 1;
 
             List<Path> inputs = new ArrayList<Path>();
             for (int i = 0; i < args.length - 1;) {
@@ -43,6 +47,17 @@ public class ScpCLI {
                         throw new IllegalArgumentException("Invalid port: " + p);
                     }
                     i += 2;
+                } else if ("-c".equals(args[i])) {
+                    String c = args[i + 1];
+                    try {
+                        channels = Integer.parseInt(c);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid number of channels: " + c);
+                    }
+                    if (channels < 1) {
+                        throw new IllegalArgumentException("Invalid number of channels: " + c);
+                    }
+                    i += 2;
                 } else if ("--password".equals(args[i])) {
                     password = args[i + 1];
                     i += 2;
@@ -73,17 +88,10 @@ public class ScpCLI {
             builder.setServer(host, port, null).setUserCredentials(user, password);
             Connection cxn = builder.build();
             try {
-                ScpClient scp = cxn.createScpClient(baseDir, "UTF-8", 0755, 0644, false, false);
-                try {
-                    for (Path input : inputs) {
-                        if (Files.isDirectory(input)) {
-                            scp.putDirectory(input);
-                        } else {
-                            scp.put(input, input.getFileName().toString());
-                        }
-                    }
-                } finally {
-                    scp.close();
+                if (channels > 1) {
+                    putAsync(cxn, baseDir, inputs, channels);
+                } else {
+                    put(cxn, baseDir, inputs);
                 }
             } finally {
                 cxn.close();
@@ -96,9 +104,71 @@ public class ScpCLI {
         }
     }
 
+    private static void put(Connection cxn, String baseDir, List<Path> inputs) throws Throwable {
+        ScpClient scp = cxn.createScpClient(baseDir, "UTF-8", 0755, 0644, false, false);
+        try {
+            for (Path input : inputs) {
+                if (Files.isDirectory(input)) {
+                    scp.putDirectory(input);
+                } else {
+                    scp.put(input, input.getFileName().toString());
+                }
+            }
+        } finally {
+            scp.close();
+        }
+    }
+
+    /**
+     * Sends the inputs concurrently, each by one of the channels.
+     */
+    private static void putAsync(Connection cxn, String baseDir, List<Path> inputs, int channels) throws Throwable {
+        List<TransferClient> clients = new ArrayList<TransferClient>(channels);
+        try {
+            for (int i = 0; i < Math.min(channels, inputs.size()); i++) {
+                clients.add(cxn.createScpClient(baseDir, "UTF-8", 0755, 0644, false, false));
+            }
+        } catch (Throwable e) {
+            for (TransferClient client : clients) {
+                client.close();
+            }
+            throw e;
+        }
+        AsyncTransferClient async = new AsyncTransferClient(clients);
+        try {
+            List<CompletableFuture<AsyncTransferClient.Result>> futures =
+                    new ArrayList<CompletableFuture<AsyncTransferClient.Result>>();
+            for (Path input : inputs) {
+                if (Files.isDirectory(input)) {
+                    futures.add(async.putDirectoryAsync(input, true));
+                } else {
+                    futures.add(async.putAsync(input, input.getFileName().toString()));
+                }
+            }
+            Throwable error = null;
+            for (CompletableFuture<AsyncTransferClient.Result> future : futures) {
+                try {
+                    AsyncTransferClient.Result r = future.join();
+                    System.out.println(String.format("%32s    %8d bytes    %8d ms", r.path(), r.bytes(), r.duration()));
+                } catch (Throwable e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    System.err.println("Error: " + cause.getMessage());
+                    if (error == null) {
+                        error = cause;
+                    }
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        } finally {
+            async.close();
+        }
+    }
+
     private static void printUsage() {
         System.out.println("");
-        System.out.println("Usage: " + APP + " [-P port] <file|dir> [user@]host:dir");
+        System.out.println("Usage: " + APP + " [-P port] [-c channels] <file|dir> [user@]host:dir");
         System.out.println("");
         System.out.println("Examples:");
         System.out.println("    " + APP + " ~/file1.txt spartan.hpc.unimelb.edu.au:test");
@@ -0,0 +1,110 @@
+package io.github.xtman.ssh.client.jsch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.xtman.ssh.client.FileAttrs;
+import io.github.xtman.util.ShellUtils;
+
+/**
+ * Recursive listing of the regular files in a remote directory by a single
+ * (GNU) find command. The output of the command is parsed as it comes, one
+ * record per file, terminated by a NUL character (so that the file names can
+ * contain any other character).
+ */
+class FindListing extends OutputStream {
+
+    /*
+     * permissions (octal), size, mtime and atime (seconds since epoch, with
+     * fraction), then the path relative to the directory.
+     */
+    private static final String FORMAT = "%m %s %T@ %A@ %P\\0";
+
+    private static final int S_IFREG = 0100000;
+
+    /**
+     * The command to list the regular files in the directory.
+     *
+     * @param remoteDir
+     * @return
+     */
+    static String command(String remoteDir) {
+        if (remoteDir.startsWith("-")) {
+            // not an option.
+            remoteDir = "./" + remoteDir;
+        }
+        return "find " + ShellUtils.quote(remoteDir) + " -mindepth 1 -type f -printf " + ShellUtils.quote(FORMAT);
+    }
+
+    private String _encoding;
+    private ByteArrayOutputStream _record;
+    private List<FileAttrs> _files;
+
+    FindListing(String encoding) {
+        _encoding = encoding == null ? "UTF-8" : encoding;
+        _record = new ByteArrayOutputStream(256);
+        _files = new ArrayList<FileAttrs>();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (b == 0) {
+            parseRecord();
+        } else {
+            _record.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int start = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            if (b[i] == 0) {
+                _record.write(b, start, i - start);
+                parseRecord();
+                start = i + 1;
+            }
+        }
+        _record.write(b, start, end - start);
+    }
+
+    private void parseRecord() throws IOException {
+        String record = _record.toString(_encoding);
+        _record.reset();
+        String[] tokens = record.split(" ", 5);
+        if (tokens.length != 5 || tokens[4].isEmpty()) {
+            throw new IOException("Unexpected find output: '" + record + "'");
+        }
+        try {
+            int mode = Integer.parseInt(tokens[0], 8) | S_IFREG;
+            long size = Long.parseLong(tokens[1]);
+            _files.add(new FileAttrs(tokens[4], mode, size, seconds(tokens[2]), seconds(tokens[3])));
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected find output: '" + record + "'", e);
+        }
+    }
+
+    private static int seconds(String time) {
+        int idx = time.indexOf('.');
+        return Integer.parseInt(idx < 0 ? time : time.substring(0, idx));
+    }
+
+    /**
+     * The files listed.
+     *
+     * @return
+     * @throws IOException
+     *             if the output ends with an incomplete record.
+     */
+    List<FileAttrs> files() throws IOException {
+        if (_record.size() > 0) {
+            throw new IOException("Incomplete find output.");
+        }
+        return _files;
+    }
+
+}
@@ -16,7 +16,9 @@ import io.github.xtman.ssh.client.ConnectionDetails;
 import io.github.xtman.ssh.client.Executor;
 import io.github.xtman.ssh.client.ScpClient;
 import io.github.xtman.ssh.client.SftpClient;
+import io.github.xtman.ssh.client.SshMetrics;
 import io.github.xtman.ssh.client.TransferClient;
+import io.github.xtman.util.metrics.Metrics;
 
 public class JschConnection implements io.github.xtman.ssh.client.Connection {
 
@@ -50,10 +52,13 @@ public class JschConnection implements io.github.xtman.ssh.client.Connection {
 
     private boolean _verbose;
 
+    private Metrics _metrics;
+
     public JschConnection(ConnectionDetails cxnDetails, int maxChannels, boolean verbose) throws Throwable {
         _cxnDetails = cxnDetails;
         _maxChannels = maxChannels;
         _verbose = verbose;
+        _metrics = SshMetrics.connectionMetrics(cxnDetails);
 
         _channels = Collections.synchronizedCollection(new HashSet<com.jcraft.jsch.Channel>());
 
@@ -78,11 +83,26 @@ public class JschConnection implements io.github.xtman.ssh.client.Connection {
          */
         _jschSession = _jsch.getSession(_cxnDetails.username(), _cxnDetails.host(), _cxnDetails.port());
         _jschSession.setConfig("StrictHostKeyChecking", _cxnDetails.hostKey() != null ? "yes" : "no");
+        if (_cxnDetails.compressionLevel() > 0) {
+            // falls back to no compression if the server does not support it.
+            _jschSession.setConfig("compression.s2c", "zlib@openssh.com,zlib,none");
+            _jschSession.setConfig("compression.c2s", "zlib@openssh.com,zlib,none");
+            _jschSession.setConfig("compression_level", Integer.toString(_cxnDetails.compressionLevel()));
+        }
+        JschProfiles.configure(_jschSession, _cxnDetails.profile());
         _jschSession.setUserInfo(userInfo());
         if (_verbose) {
             System.out.print("opening connection to " + _cxnDetails.host() + ":" + _cxnDetails.port() + " ...");
         }
-        _jschSession.connect();
+        long start = System.currentTimeMillis();
+        try {
+            _jschSession.connect();
+        } catch (Throwable e) {
+            _metrics.increment(SshMetrics.CONNECTION_FAILURES);
+            throw e;
+        }
+        _metrics.record(SshMetrics.HANDSHAKE_TIME, System.currentTimeMillis() - start);
+        _metrics.increment(SshMetrics.CONNECTIONS);
         if (_verbose) {
             System.out.println("done");
         }
@@ -184,7 +204,8 @@ public class JschConnection implements io.github.xtman.ssh.client.Connection {
         return _maxChannels;
     }
 
-    private com.jcraft.jsch.Channel openChannel(String type) throws Throwable {
+    com.jcraft.jsch.Channel openChannel(String type) throws Throwable {
+        long start = System.currentTimeMillis();
         synchronized (_channels) {
             if (_maxChannels > 0) {
                 while (_channels.size() >= _maxChannels) {
@@ -199,8 +220,11 @@ public class JschConnection implements io.github.xtman.ssh.client.Connection {
                     }
                 }
             }
+            _metrics.record(SshMetrics.CHANNEL_OPEN_WAIT_TIME, System.currentTimeMillis() - start);
             com.jcraft.jsch.Channel channel = _jschSession.openChannel(type);
+            JschProfiles.configure(channel, _cxnDetails.profile());
             _channels.add(channel);
+            _metrics.increment(SshMetrics.CHANNELS);
             return channel;
         }
     }
@@ -251,4 +275,23 @@ public class JschConnection implements io.github.xtman.ssh.client.Connection {
         return _verbose;
     }
 
+    @Override
+    public Metrics metrics() {
+        return _metrics;
+    }
+
+    @Override
+    public boolean isAlive() {
+        if (!_jschSession.isConnected()) {
+            return false;
+        }
+        try {
+            // fails if the underlying socket is broken.
+            _jschSession.sendKeepAliveMsg();
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
 }
@@ -1,13 +1,76 @@
 package io.github.xtman.ssh.client.jsch;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 
+import io.github.xtman.io.util.StreamUtils;
 import io.github.xtman.ssh.client.Connection;
 import io.github.xtman.ssh.client.Executor;
+import io.github.xtman.ssh.client.RemoteCommandException;
+import io.github.xtman.util.ShellUtils;
 
 public class JschExecutor implements io.github.xtman.ssh.client.Executor {
 
+    private static final long EXIT_STATUS_POLL_INTERVAL = 10L;
+
+    private static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(int b) {
+
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+
+        }
+    };
+
+    /**
+     * Keeps the beginning of the standard error (for the exception message),
+     * discarding the rest.
+     */
+    private static class ErrorOutput extends OutputStream {
+
+        static final int MAX_SIZE = 4096;
+
+        private byte[] _buffer = new byte[MAX_SIZE];
+        private int _size = 0;
+
+        @Override
+        public void write(int b) {
+            if (_size < _buffer.length) {
+                _buffer[_size++] = (byte) b;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            int n = Math.min(len, _buffer.length - _size);
+            if (n > 0) {
+                System.arraycopy(b, off, _buffer, _size, n);
+                _size += n;
+            }
+        }
+
+        String toString(String encoding) {
+            try {
+                return new String(_buffer, 0, _size, encoding == null ? "UTF-8" : encoding).trim();
+            } catch (UnsupportedEncodingException e) {
+                return new String(_buffer, 0, _size).trim();
+            }
+        }
+    }
+
     private JschConnection _connection;
+
+    /*
+     * the channel opened with the executor, for the first command. An exec
+     * channel runs a single command: a new one is opened for each of the
+     * following commands.
+     */
     private com.jcraft.jsch.ChannelExec _channel;
     private String _remoteBaseDir;
     private String _encoding;
@@ -25,7 +88,18 @@ public class JschExecutor implements io.github.xtman.ssh.client.Executor {
 
     @Override
     public void close() throws IOException {
-        _channel.disconnect();
+        com.jcraft.jsch.ChannelExec channel;
+        synchronized (this) {
+            channel = _channel;
+            _channel = null;
+        }
+        if (channel != null) {
+            try {
+                channel.disconnect();
+            } finally {
+                _connection.removeChannel(channel);
+            }
+        }
     }
 
     @Override
@@ -35,8 +109,70 @@ public class JschExecutor implements io.github.xtman.ssh.client.Executor {
 
     @Override
     public void execute(String command) throws Throwable {
-        // TODO Auto-generated method stub
+        ErrorOutput err = new ErrorOutput();
+        int status = execute(command, null, err);
+        if (status != 0) {
+            throw new RemoteCommandException(command, status, err.toString(_encoding));
+        }
+    }
 
+    @Override
+    public int execute(String command, OutputStream out, OutputStream err) throws Throwable {
+        String cmd = remoteCommand(command);
+        com.jcraft.jsch.ChannelExec channel = takeChannel();
+        try {
+            channel.setCommand(cmd);
+            // no input: the end of file is sent (so that a command reading
+            // its standard input, e.g. the sftp server forced by the server
+            // configuration, does not wait for it).
+            channel.setInputStream(new ByteArrayInputStream(new byte[0]));
+            channel.setErrStream(err == null ? NULL_OUTPUT : err, true);
+            InputStream in = channel.getInputStream();
+            if (this.verbose) {
+                System.out.print("executing command: '" + cmd + "' ... ");
+            }
+            channel.connect();
+            if (out == null) {
+                StreamUtils.exhaustInputStream(in);
+            } else {
+                StreamUtils.transfer(in, -1, out);
+            }
+            // the exit status may arrive after the end of the output.
+            while (!channel.isClosed()) {
+                Thread.sleep(EXIT_STATUS_POLL_INTERVAL);
+            }
+            if (this.verbose) {
+                System.out.println("done");
+            }
+            return channel.getExitStatus();
+        } finally {
+            try {
+                channel.disconnect();
+            } finally {
+                _connection.removeChannel(channel);
+            }
+        }
+    }
+
+    private com.jcraft.jsch.ChannelExec takeChannel() throws Throwable {
+        synchronized (this) {
+            if (_channel != null) {
+                com.jcraft.jsch.ChannelExec channel = _channel;
+                _channel = null;
+                return channel;
+            }
+        }
+        return (com.jcraft.jsch.ChannelExec) _connection.openChannel(Executor.CHANNEL_TYPE_NAME);
+    }
+
+    /**
+     * The command line to run the command in the remote base directory.
+     */
+    private String remoteCommand(String command) {
+        if (Connection.DEFAULT_REMOTE_BASE_DIRECTORY.equals(_remoteBaseDir)) {
+            return command;
+        }
+        return "cd " + ShellUtils.quote(_remoteBaseDir) + " && " + command;
     }
 
     @Override
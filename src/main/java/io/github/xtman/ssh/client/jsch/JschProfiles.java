@@ -0,0 +1,227 @@
+package io.github.xtman.ssh.client.jsch;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jcraft.jsch.Cipher;
+import com.jcraft.jsch.JSch;
+
+import io.github.xtman.ssh.client.ConnectionProfile;
+
+/**
+ * Applies the {@link ConnectionProfile} to the JSch sessions and channels.
+ *
+ * For {@link ConnectionProfile#THROUGHPUT}, the CTR ciphers are ordered by
+ * their encryption throughput, measured once (per JVM) by a self-test of the
+ * cipher implementations on the first connection. JSch picks the first one in
+ * the list that the server supports. JSch has no AEAD cipher (aes-gcm,
+ * chacha20-poly1305), so the CTR ciphers are the candidates. The CBC ciphers
+ * are not ranked: they stay after the CTR ones, in the JSch default order, for
+ * the old servers. The MACs prefer the cheapest ones (hmac-md5, then
+ * hmac-sha1) over hmac-sha2-256. The preferred algorithms are moved to the
+ * front of the JSch defaults, the rest of which are kept for the servers that
+ * support none of them. The key exchange (once per connection) is left to
+ * the JSch defaults.
+ */
+class JschProfiles {
+
+    private static final Logger LOG = Logger.getLogger(JschProfiles.class.getName());
+
+    static final String[] CANDIDATE_CIPHERS = { "aes128-ctr", "aes192-ctr", "aes256-ctr" };
+
+    static final String[] THROUGHPUT_MACS = { "hmac-md5", "hmac-sha1" };
+
+    /*
+     * the channel (receive) window. The maximum packet size is left to the
+     * JSch default (32KB): the sftp downloads stall in the JSch input pipe
+     * with larger packets.
+     */
+    static final int THROUGHPUT_WINDOW_SIZE = 16 * 1024 * 1024;
+
+    private static final int SELF_TEST_BUFFER_SIZE = 32 * 1024;
+
+    private static final long SELF_TEST_DURATION = 50L;
+
+    /*
+     * the throughput of a cipher is the best of the runs, which are
+     * interleaved with the runs of the other ciphers so that a transient
+     * slowdown (JIT, GC, other threads) does not penalize a single cipher.
+     */
+    private static final int SELF_TEST_RUNS = 5;
+
+    private static String _ciphers;
+
+    /**
+     * Sets the algorithm preferences of the session (before it is connected).
+     *
+     * @param session
+     * @param profile
+     */
+    static void configure(com.jcraft.jsch.Session session, ConnectionProfile profile) {
+        if (profile != ConnectionProfile.THROUGHPUT) {
+            return;
+        }
+        String ciphers = ciphers();
+        if (ciphers != null) {
+            String[] names = ciphers.split(",");
+            session.setConfig("cipher.s2c", preferred(names, JSch.getConfig("cipher.s2c")));
+            session.setConfig("cipher.c2s", preferred(names, JSch.getConfig("cipher.c2s")));
+        }
+        session.setConfig("mac.s2c", preferred(THROUGHPUT_MACS, JSch.getConfig("mac.s2c")));
+        session.setConfig("mac.c2s", preferred(THROUGHPUT_MACS, JSch.getConfig("mac.c2s")));
+    }
+
+    /**
+     * Sets the window size of the channel (before it is connected). It limits
+     * the data in flight from the server, so it matters for the downloads on
+     * links with a high bandwidth-delay product. The setters are not public in
+     * JSch: the default size is kept if they are not accessible.
+     *
+     * @param channel
+     * @param profile
+     */
+    static void configure(com.jcraft.jsch.Channel channel, ConnectionProfile profile) {
+        if (profile != ConnectionProfile.THROUGHPUT) {
+            return;
+        }
+        invoke(channel, "setLocalWindowSizeMax", THROUGHPUT_WINDOW_SIZE);
+        invoke(channel, "setLocalWindowSize", THROUGHPUT_WINDOW_SIZE);
+    }
+
+    private static void invoke(com.jcraft.jsch.Channel channel, String methodName, int value) {
+        try {
+            Method method = com.jcraft.jsch.Channel.class.getDeclaredMethod(methodName, int.class);
+            method.setAccessible(true);
+            method.invoke(channel, value);
+        } catch (Throwable e) {
+            LOG.log(Level.FINE, "Failed to call Channel." + methodName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Moves the preferred algorithms to the front of the default list. The
+     * preferred algorithms that JSch does not implement are left out.
+     *
+     * @param preferred
+     * @param defaults
+     *            comma separated list.
+     * @return
+     */
+    static String preferred(String[] preferred, String defaults) {
+        Set<String> names = new LinkedHashSet<String>();
+        for (String name : preferred) {
+            if (JSch.getConfig(name) != null) {
+                names.add(name);
+            }
+        }
+        if (defaults != null) {
+            for (String name : defaults.split(",")) {
+                if (!name.isEmpty()) {
+                    names.add(name);
+                }
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String name : names) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(name);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The available candidate ciphers, fastest first, as a comma separated
+     * list. Null if none is available.
+     *
+     * @return
+     */
+    static synchronized String ciphers() {
+        if (_ciphers == null) {
+            final Map<String, Double> throughputs = selfTest();
+            if (throughputs.isEmpty()) {
+                return null;
+            }
+            List<String> names = new ArrayList<String>(throughputs.keySet());
+            Collections.sort(names, new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    return Double.compare(throughputs.get(b), throughputs.get(a));
+                }
+            });
+            StringBuilder sb = new StringBuilder();
+            for (String name : names) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(name);
+            }
+            _ciphers = sb.toString();
+            LOG.info("Cipher self-test (MB/s): " + throughputs + ". Preference: " + _ciphers);
+        }
+        return _ciphers;
+    }
+
+    /**
+     * Measures the encryption throughput (MB/s) of each candidate cipher: the
+     * best of {@link #SELF_TEST_RUNS} runs. The ciphers that cannot be
+     * initialized (e.g. restricted key lengths) are excluded.
+     *
+     * @return
+     */
+    static Map<String, Double> selfTest() {
+        Map<String, Cipher> ciphers = new LinkedHashMap<String, Cipher>();
+        byte[] buf = new byte[SELF_TEST_BUFFER_SIZE];
+        for (String name : CANDIDATE_CIPHERS) {
+            try {
+                Cipher cipher = (Cipher) Class.forName(JSch.getConfig(name)).getDeclaredConstructor().newInstance();
+                cipher.init(Cipher.ENCRYPT_MODE, new byte[cipher.getBlockSize() * 4],
+                        new byte[cipher.getIVSize()]);
+                // warm up.
+                encrypt(cipher, buf, SELF_TEST_DURATION);
+                ciphers.put(name, cipher);
+            } catch (Throwable e) {
+                LOG.log(Level.FINE, "Cipher " + name + " is not available: " + e.getMessage());
+            }
+        }
+        Map<String, Double> throughputs = new LinkedHashMap<String, Double>();
+        for (int i = 0; i < SELF_TEST_RUNS; i++) {
+            for (Map.Entry<String, Cipher> entry : ciphers.entrySet()) {
+                try {
+                    long start = System.nanoTime();
+                    long bytes = encrypt(entry.getValue(), buf, SELF_TEST_DURATION);
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    double throughput = Math.round(bytes / seconds / 1e4) / 1e2;
+                    Double best = throughputs.get(entry.getKey());
+                    if (best == null || throughput > best) {
+                        throughputs.put(entry.getKey(), throughput);
+                    }
+                } catch (Throwable e) {
+                    LOG.log(Level.FINE, "Cipher " + entry.getKey() + " is not available: " + e.getMessage());
+                }
+            }
+        }
+        return throughputs;
+    }
+
+    private static long encrypt(Cipher cipher, byte[] buf, long duration) throws Exception {
+        long bytes = 0;
+        long end = System.currentTimeMillis() + duration;
+        while (System.currentTimeMillis() < end) {
+            cipher.update(buf, 0, buf.length, buf, 0);
+            bytes += buf.length;
+        }
+        return bytes;
+    }
+
+}
@@ -5,25 +5,65 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
 import java.util.Stack;
 
 import com.jcraft.jsch.ChannelExec;
 
 import io.github.xtman.io.util.SizedInputStream;
+import io.github.xtman.io.util.SpooledContent;
 import io.github.xtman.io.util.StreamUtils;
 import io.github.xtman.ssh.client.Connection;
 import io.github.xtman.ssh.client.Executor;
 import io.github.xtman.ssh.client.FileAttrs;
 import io.github.xtman.ssh.client.ScpClient;
+import io.github.xtman.ssh.client.SshMetrics;
+import io.github.xtman.ssh.client.TransferException;
 import io.github.xtman.util.PathUtils;
 
 public class JschScpClient extends JschTransferClient<ChannelExec> implements ScpClient {
 
+    /**
+     * The scp protocol sends the file length before the content. The content
+     * of unknown length is spooled: in memory up to this size, otherwise to a
+     * temporary file.
+     */
+    public static final int MAX_MEMORY_SPOOL_SIZE = 4 * 1048576;
+
+    /**
+     * A message (or file content) sent to the remote scp, whose acknowledgement
+     * has not been received yet.
+     */
+    private static class PendingAck {
+        final String path;
+        final String message;
+
+        PendingAck(String path, String message) {
+            this.path = path;
+            this.message = message;
+        }
+    }
+
     private boolean _initializedPut = false;
 
     private InputStream _cin;
     private OutputStream _cout;
 
+    private boolean _pipelined = false;
+    private Queue<PendingAck> _pendingAcks = new ArrayDeque<PendingAck>();
+    private List<TransferException> _failures = new ArrayList<TransferException>();
+    private IOException _fatalError;
+
+    /*
+     * the remote directories (relative to the base directory) currently
+     * entered, so that consecutive puts only need to send the 'E' and 'D'
+     * messages to move from the previous directory to the next.
+     */
+    private List<String> _dirs = new ArrayList<String>();
+
     JschScpClient(JschConnection connection, ChannelExec channel, String remoteBaseDir, String encoding,
             Integer dirMode, Integer fileMode, boolean compress, boolean preserve, boolean verbose) throws Throwable {
         super(connection, channel, remoteBaseDir, encoding, dirMode, fileMode, compress, preserve, verbose);
@@ -31,8 +71,41 @@ public class JschScpClient extends JschTransferClient<ChannelExec> implements Sc
         _cout = new BufferedOutputStream(channel.getOutputStream());
     }
 
+    @Override
+    public boolean pipelined() {
+        return _pipelined;
+    }
+
+    @Override
+    public void setPipelined(boolean pipelined) {
+        _pipelined = pipelined;
+    }
+
     @Override
     public void close() throws IOException {
+        try {
+            if (_initializedPut && _fatalError == null) {
+                // go back to the base directory
+                while (!_dirs.isEmpty()) {
+                    sendPopDir(PathUtils.join(_dirs));
+                    _dirs.remove(_dirs.size() - 1);
+                }
+                // collect the outstanding acknowledgements
+                _cout.flush();
+                while (!_pendingAcks.isEmpty()) {
+                    TransferException e = receivePendingAck();
+                    if (e != null) {
+                        _failures.add(e);
+                    }
+                }
+                throwFailures();
+            }
+        } finally {
+            closeChannel();
+        }
+    }
+
+    private void closeChannel() throws IOException {
         try {
             if (_cout != null) {
                 if (this.verbose) {
@@ -49,67 +122,251 @@ public class JschScpClient extends JschTransferClient<ChannelExec> implements Sc
     }
 
     @Override
-    public void put(FileAttrs file, InputStream in) throws Throwable {
-        initializePut();
-
-        String path = file.path();
-        if (remoteBaseDirectory() != null && !remoteBaseDirectory().isEmpty()) {
-            path = PathUtils.join(remoteBaseDirectory(), path);
+    protected void doPut(FileAttrs file, InputStream in) throws Throwable {
+        if (_fatalError != null) {
+            throw new TransferException(file.path(),
+                    "Failed to transfer '" + file.path() + "': " + _fatalError.getMessage(), _fatalError);
         }
-        String parent = PathUtils.getRelativePath(PathUtils.getParent(path), remoteBaseDirectory());
-        String[] parentComponents = parent == null ? null : PathUtils.trimSlash(parent).split("/+");
-        if (parentComponents != null) {
-            for (int i = 0; i < parentComponents.length; i++) {
-                sendPushDir(parentComponents[i]);
+        try {
+            putFileOrDirectory(file, in);
+        } catch (TransferException e) {
+            if (e == _fatalError && !file.path().equals(e.path())) {
+                // the client cannot be used any more: this file is not sent
+                // either.
+                TransferException fe = new TransferException(file.path(),
+                        "Failed to transfer '" + file.path() + "': " + e.getMessage(), e);
+                fe.addSuppressed(e);
+                throw fe;
             }
+            throw e;
         }
+    }
+
+    private void putFileOrDirectory(FileAttrs file, InputStream in) throws Throwable {
+        initializePut();
+
         if (file.isDirectory()) {
-            sendPushDir(file.name());
-            sendPopDir();
+            // enter the directory (and stay there)
+            changeDirectory(relativeComponents(file.path(), false), file.path());
+        } else if (file.length() < 0) {
+            putSpooled(file, in);
+            return;
         } else {
+            changeDirectory(relativeComponents(file.path(), true), file.path());
             /*
              * send file
              */
             if (preserve() && file.mtime() != null && file.atime() != null) {
                 // send time
-                String cmd2 = String.format("T%d 0 %d 0\n", file.mtime(), file.atime());
-                if (this.verbose) {
-                    System.out.print("sending command: '" + cmd2.substring(0, cmd2.length() - 1) + "\\n' ... ");
-                }
-                _cout.write(cmd2.getBytes());
-                _cout.flush();
-                recvAck(_cin);
-                if (this.verbose) {
-                    System.out.println("done");
-                }
+                String cmd2 = ScpMessage.timeMessage(file.mtime(), file.atime());
+                sendMessage(cmd2, file.path(), false);
             }
-            // send file mode, length and name
-            String cmd3 = String.format("C%04o %d %s\n", file.mode(), file.length(), file.name());
+            // send file mode, length and name. The remote scp treats the
+            // bytes following a rejected 'C' message as control messages. So
+            // we must wait for its acknowledgement before sending the content.
+            String cmd3 = ScpMessage.fileMessage(file.mode(), file.length(), file.name());
+            sendMessage(cmd3, file.path(), true);
+
             if (this.verbose) {
-                System.out.print("sending command: '" + cmd3.substring(0, cmd3.length() - 1) + "\\n' ... ");
+                System.out.print("sending file content ... ");
             }
-            _cout.write(cmd3.getBytes(encoding()));
-            _cout.flush();
-            recvAck(_cin);
+            // send file content (flushed by the ack)
+            long n = StreamUtils.transfer(in, file.length(), _cout);
+            if (n < file.length()) {
+                _fatalError = new IOException("Unexpected end of input for file: '" + file.path() + "'. Sent " + n
+                        + " of " + file.length() + " bytes.");
+                throw _fatalError;
+            }
+            sendAck(_cout);
+            expectAck(file.path(), "file content", false);
             if (this.verbose) {
                 System.out.println("done");
             }
+        }
+        if (pipelined()) {
+            receiveAvailableAcks();
+            throwFailures();
+        }
+    }
 
-            if (this.verbose) {
-                System.out.print("sending file content ... ");
+    private void putSpooled(FileAttrs file, InputStream in) throws Throwable {
+        SpooledContent content = SpooledContent.spool(in, MAX_MEMORY_SPOOL_SIZE);
+        try {
+            if (content.inFile()) {
+                this.metrics.increment(SshMetrics.SPOOL_FILES);
+                this.metrics.increment(SshMetrics.SPOOL_FILE_BYTES, content.length());
             }
-            // send file content
-            StreamUtils.copy(in, file.length(), _cout);
-            sendAck(_cout);
+            InputStream ci = content.open();
+            try {
+                doPut(new FileAttrs(file.path(), file.mode(), content.length(), file.mtime(), file.atime()), ci);
+            } finally {
+                ci.close();
+            }
+        } finally {
+            content.close();
+        }
+    }
+
+    /**
+     * Split the specified path into components relative to the remote base
+     * directory.
+     * 
+     * @param path
+     *            the file path.
+     * @param parent
+     *            true to return the components of the parent directory of the
+     *            path.
+     * @return
+     */
+    private String[] relativeComponents(String path, boolean parent) {
+        if (remoteBaseDirectory() != null && !remoteBaseDirectory().isEmpty()) {
+            path = PathUtils.join(remoteBaseDirectory(), path);
+        }
+        String relative = PathUtils.getRelativePath(parent ? PathUtils.getParent(path) : path,
+                remoteBaseDirectory());
+        return relative == null ? new String[0] : PathUtils.trimSlash(relative).split("/+");
+    }
+
+    /**
+     * Move from the current remote directory to the specified directory, by
+     * sending 'E' messages up to the common ancestor, then 'D' messages down to
+     * the target directory.
+     * 
+     * @param dirs
+     *            the target directory components (relative to the base
+     *            directory).
+     * @param path
+     *            the path of the file being sent.
+     * @throws IOException
+     */
+    private void changeDirectory(String[] dirs, String path) throws IOException {
+        int common = 0;
+        while (common < _dirs.size() && common < dirs.length && _dirs.get(common).equals(dirs[common])) {
+            common++;
+        }
+        while (_dirs.size() > common) {
+            sendPopDir(path);
+            _dirs.remove(_dirs.size() - 1);
+        }
+        for (int i = common; i < dirs.length; i++) {
+            sendPushDir(dirs[i], path);
+            _dirs.add(dirs[i]);
+        }
+    }
+
+    /**
+     * Sends the specified message to the remote scp.
+     * 
+     * @param msg
+     *            the message including the trailing new line character.
+     * @param path
+     *            the path of the file the message is for.
+     * @param barrier
+     *            if true, waits for the acknowledgements of the message and all
+     *            the preceding messages before return.
+     * @throws IOException
+     */
+    private void sendMessage(String msg, String path, boolean barrier) throws IOException {
+        if (this.verbose) {
+            System.out.print("sending command: '" + msg.substring(0, msg.length() - 1) + "\\n' ... ");
+        }
+        _cout.write(msg.getBytes(encoding()));
+        expectAck(path, msg.substring(0, msg.length() - 1), barrier);
+        if (this.verbose) {
+            System.out.println("done");
+        }
+    }
+
+    private void expectAck(String path, String message, boolean barrier) throws IOException {
+        if (!pipelined()) {
+            _cout.flush();
+            long start = System.nanoTime();
             recvAck(_cin);
-            if (this.verbose) {
-                System.out.println("done");
+            recordAckWait(start);
+            return;
+        }
+        // the 'C' and 'D' messages are barriers. So at most the acks of the
+        // 'T' message, the content and the 'E' messages of one file are
+        // pending.
+        _pendingAcks.add(new PendingAck(path, message));
+        if (barrier) {
+            _cout.flush();
+            while (!_pendingAcks.isEmpty()) {
+                TransferException e = receivePendingAck();
+                if (e != null) {
+                    if (_pendingAcks.isEmpty()) {
+                        // the message itself was rejected.
+                        throw e;
+                    }
+                    _failures.add(e);
+                }
             }
         }
-        if (parentComponents != null) {
-            for (int i = 0; i < parentComponents.length; i++) {
-                sendPopDir();
+    }
+
+    /**
+     * Receives the acknowledgements already arrived, without blocking.
+     * 
+     * @throws IOException
+     */
+    private void receiveAvailableAcks() throws IOException {
+        while (!_pendingAcks.isEmpty() && _cin.available() > 0) {
+            TransferException e = receivePendingAck();
+            if (e != null) {
+                _failures.add(e);
+            }
+        }
+    }
+
+    private void recordAckWait(long start) {
+        metrics.record(SshMetrics.ACK_WAIT_TIME, (System.nanoTime() - start) / 1000L);
+    }
+
+    /**
+     * Receives the acknowledgement for the oldest pending message.
+     * 
+     * @return the (non-fatal) error for the file the message was sent for, or
+     *         null if the message was acknowledged successfully.
+     * @throws IOException
+     *             if a fatal error occurred. The client cannot be used any
+     *             more.
+     */
+    private TransferException receivePendingAck() throws IOException {
+        PendingAck pa = _pendingAcks.poll();
+        StringBuilder sb = new StringBuilder();
+        int b;
+        long start = System.nanoTime();
+        try {
+            b = recvAck(_cin, sb);
+            recordAckWait(start);
+        } catch (IOException e) {
+            _fatalError = new TransferException(pa.path, "Failed to transfer '" + pa.path + "': " + e.getMessage(),
+                    e);
+            _pendingAcks.clear();
+            throw _fatalError;
+        }
+        if (b == 0) {
+            return null;
+        } else if (b == 1) {
+            return new TransferException(pa.path, "Failed to transfer '" + pa.path + "' (" + pa.message
+                    + "): Remote server responded error(" + b + "): " + sb.toString());
+        } else {
+            _fatalError = new TransferException(pa.path, "Failed to transfer '" + pa.path + "' (" + pa.message
+                    + "): Remote server responded " + (b == 2 ? "fatal" : "unknown") + " error(" + b + "): "
+                    + sb.toString());
+            _pendingAcks.clear();
+            throw _fatalError;
+        }
+    }
+
+    private void throwFailures() throws TransferException {
+        if (!_failures.isEmpty()) {
+            TransferException e = _failures.get(0);
+            for (int i = 1; i < _failures.size(); i++) {
+                e.addSuppressed(_failures.get(i));
             }
+            _failures.clear();
+            throw e;
         }
     }
 
@@ -155,41 +412,29 @@ public class JschScpClient extends JschTransferClient<ChannelExec> implements Sc
      * 
      * @param dirName
      *            The name of the sub-directory.
+     * @param path
+     *            The path of the file being sent.
      * @throws IOException
      */
-    private void sendPushDir(String dirName) throws IOException {
-        String cmd = String.format("D%04o 0 %s\n", defaultDirectoryMode(), dirName);
-        if (this.verbose) {
-            System.out.print("sending command: '" + cmd.substring(0, cmd.length() - 1) + "\\n' ... ");
-        }
-        _cout.write(cmd.getBytes(encoding()));
-        _cout.flush();
-        recvAck(_cin);
-        if (this.verbose) {
-            System.out.println("done");
-        }
+    private void sendPushDir(String dirName, String path) throws IOException {
+        // The remote scp does not descend into a directory it failed to
+        // create. So this must not be pipelined either.
+        sendMessage(ScpMessage.directoryMessage(defaultDirectoryMode(), dirName), path, true);
     }
 
     /**
      * Go back to parent directory. (cd ..)
      * 
+     * @param path
+     *            The path of the file being sent.
      * @throws IOException
      */
-    private void sendPopDir() throws IOException {
-        String cmd = "E\n";
-        if (this.verbose) {
-            System.out.print("sending command: '" + cmd.substring(0, cmd.length() - 1) + "\\n' ... ");
-        }
-        _cout.write(cmd.getBytes(encoding()));
-        _cout.flush();
-        recvAck(_cin);
-        if (this.verbose) {
-            System.out.println("done");
-        }
+    private void sendPopDir(String path) throws IOException {
+        sendMessage("E\n", path, false);
     }
 
     @Override
-    public void get(String remotePath, GetHandler h) throws Throwable {
+    protected void doGet(String remotePath, GetHandler h) throws Throwable {
         if (remoteBaseDirectory() != null && !remoteBaseDirectory().isEmpty()) {
             remotePath = PathUtils.join(remoteBaseDirectory(), remotePath);
         }
@@ -223,66 +468,48 @@ public class JschScpClient extends JschTransferClient<ChannelExec> implements Sc
          */
         Stack<String> parents = new Stack<String>();
         String currentDir = null;
+        ScpMessage msg = new ScpMessage(encoding());
+        // times (T message) of the next file or directory
+        Integer mtime = null;
+        Integer atime = null;
         while (!this.channel.isClosed()) {
             sendAck(_cout);
-            String msg = StreamUtils.readLine(_cin, encoding());
-            if (msg == null) {
+            if (!msg.read(_cin)) {
                 break;
             }
             if (this.verbose) {
                 System.out.println("Received message: '" + msg + "'");
             }
-            switch (msg.charAt(0)) {
-            case 'C':
-                FileAttrs file = parseFileAttrs(msg, currentDir);
+            switch (msg.type()) {
+            case ScpMessage.TIME:
+                mtime = msg.mtime();
+                atime = msg.atime();
+                break;
+            case ScpMessage.FILE:
+                FileAttrs file = new FileAttrs(PathUtils.join(currentDir, msg.name()), msg.mode(), msg.length(),
+                        mtime, atime);
+                mtime = null;
+                atime = null;
                 if (this.verbose) {
                     System.out.print("Receiving file: '" + file.path() + "' ... ");
                 }
                 sendAck(_cout);
-                h.getFile(file, new SizedInputStream(_cin, file.length(), false));
+                SizedInputStream in = new SizedInputStream(_cin, file.length(), false);
+                h.getFile(file, in);
+                // skip the content not consumed by the handler
+                while (in.bytesRemaining() > 0 && in.skip(in.bytesRemaining()) > 0) {
+                }
                 recvAck(_cin);
                 if (this.verbose) {
                     System.out.println("done");
                 }
                 break;
-            case 'T':
-                int[] times = parseTimeAttrs(msg);
-                sendAck(_cout);
-                msg = StreamUtils.readLine(_cin);
-                FileAttrs attrs;
-                char c = msg.charAt(0);
-                if (c == 'C') {
-                    attrs = parseFileAttrs(msg, currentDir);
-                    attrs.setMTime(times[0]);
-                    attrs.setATime(times[1]);
-                    if (this.verbose) {
-                        System.out.print("Receiving file: '" + attrs.path() + "' ... ");
-                    }
-                    sendAck(_cout);
-                    h.getFile(attrs, new SizedInputStream(_cin, attrs.length(), false));
-                    recvAck(_cin);
-                    if (this.verbose) {
-                        System.out.println("done");
-                    }
-                } else if (c == 'D') {
-                    attrs = parseDirAttrs(msg, currentDir);
-                    attrs.setMTime(times[0]);
-                    attrs.setATime(times[1]);
-                    if (this.verbose) {
-                        System.out.print("Receiving directory: '" + attrs.path() + "' ... ");
-                    }
-                    h.getDirectory(attrs);
-                    parents.push(attrs.name());
-                    currentDir = attrs.path();
-                    if (this.verbose) {
-                        System.out.println("done");
-                    }
-                } else {
-                    throw new IOException("Unexpected response: " + msg);
-                }
-                break;
-            case 'D':
-                FileAttrs dir = parseDirAttrs(msg, currentDir);
+            case ScpMessage.DIRECTORY:
+                FileAttrs dir = new FileAttrs(
+                        currentDir == null ? msg.name() : PathUtils.join(currentDir, msg.name()), msg.mode(), mtime,
+                        atime);
+                mtime = null;
+                atime = null;
                 if (this.verbose) {
                     System.out.print("Receiving directory: '" + dir.path() + "' ... ");
                 }
@@ -293,7 +520,7 @@ public class JschScpClient extends JschTransferClient<ChannelExec> implements Sc
                     System.out.println("done");
                 }
                 break;
-            case 'E':
+            case ScpMessage.END:
                 if (this.verbose) {
                     System.out.print("Going back to parent directory ... ");
                 }
@@ -303,47 +530,32 @@ public class JschScpClient extends JschTransferClient<ChannelExec> implements Sc
                     System.out.println("done");
                 }
                 break;
-            case '\01':
-            case '\02':
-                throw new IOException(msg.substring(1));
             default:
-                throw new IOException(msg);
+                // warning or error
+                throw new IOException(msg.name());
             }
         }
 
     }
 
-    private int[] parseTimeAttrs(String msg) {
-        // T{mtime} 0 {atime} 0
-        String[] times = msg.substring(1).split(" ");
-        int mtime = Integer.parseInt(times[0]);
-        int atime = times.length < 3 ? mtime : Integer.parseInt(times[2]);
-        return new int[] { mtime, atime };
-    }
-
-    private FileAttrs parseFileAttrs(String msg, String currentDir) {
-        // C{mode} {length} {file_name}
-        String[] parts = msg.substring(1).split(" ");
-        int mode = Integer.parseInt(parts[0], 8);
-        long length = Long.parseLong(parts[1]);
-        String filename = parts[2];
-        return new FileAttrs(PathUtils.join(currentDir, filename), mode, length, null, null);
-    }
-
-    private FileAttrs parseDirAttrs(String msg, String currentDir) {
-        // D{mode} 0 {dir_name}
-        String[] parts = msg.substring(1).split(" ");
-        int mode = Integer.parseInt(parts[0], 8);
-        String dirname = parts[2];
-        return new FileAttrs(currentDir == null ? dirname : PathUtils.join(currentDir, dirname), mode, null, null);
-    }
-
     @Override
     public final String channelType() {
         return Executor.CHANNEL_TYPE_NAME;
     }
 
     private static void recvAck(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b = recvAck(in, sb);
+        if (b == 1) {
+            throw new IOException("Remote server responded error(" + b + "): " + sb.toString());
+        } else if (b == 2) {
+            throw new IOException("Remote server responded fatal error(" + b + "): " + sb.toString());
+        } else if (b != 0) {
+            throw new IOException("Remote server responded unknown error(" + b + "): " + sb.toString());
+        }
+    }
+
+    private static int recvAck(InputStream in, StringBuilder msg) throws IOException {
         final int b = in.read();
         // b may be
         // 0 for success,
@@ -354,20 +566,13 @@ public class JschScpClient extends JschTransferClient<ChannelExec> implements Sc
             // didn't receive any response
             throw new IOException("No response from remote server.");
         } else if (b != 0) {
-            StringBuffer sb = new StringBuffer();
             int c = in.read();
             while (c > 0 && c != '\n') {
-                sb.append((char) c);
+                msg.append((char) c);
                 c = in.read();
             }
-            if (b == 1) {
-                throw new IOException("Remote server responded error(" + b + "): " + sb.toString());
-            } else if (b == 2) {
-                throw new IOException("Remote server responded fatal error(" + b + "): " + sb.toString());
-            } else {
-                throw new IOException("Remote server responded unknown error(" + b + "): " + sb.toString());
-            }
         }
+        return b;
     }
 
     private static void sendAck(OutputStream out) throws IOException {
@@ -1,8 +1,19 @@
 package io.github.xtman.ssh.client.jsch;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.ChannelSftp.LsEntry;
@@ -10,16 +21,66 @@ import com.jcraft.jsch.ChannelSftp.LsEntrySelector;
 import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
 
+import io.github.xtman.file.util.FileUtils;
+import io.github.xtman.io.util.StreamUtils;
+import io.github.xtman.ssh.client.Executor;
 import io.github.xtman.ssh.client.FileAttrs;
+import io.github.xtman.ssh.client.RemoteCommandException;
 import io.github.xtman.ssh.client.SftpClient;
+import io.github.xtman.ssh.client.SshMetrics;
+import io.github.xtman.ssh.client.TransferException;
 import io.github.xtman.util.PathUtils;
+import io.github.xtman.util.ShellUtils;
 
 public class JschSftpClient extends JschTransferClient<ChannelSftp> implements SftpClient {
 
+    private boolean _resume;
+
+    private RemoteDirectoryCache _dirs;
+
+    private int _stripeChannels = 0;
+    private long _stripeThreshold = DEFAULT_STRIPE_THRESHOLD;
+    private boolean _stripeVerify = true;
+
+    /*
+     * maximum length of a mkdir command line: well below the minimum ARG_MAX
+     * of POSIX (4096 is the minimum, but 128KB or more is common).
+     */
+    private static final int MAX_COMMAND_LENGTH = 32768;
+
+    private static final String REMOTE_COMMAND_PROBE = "remote-commands";
+
+    /*
+     * JSch does not wait for the reply to the exec request: if the server
+     * rejects it, the channel stays open and the probe would wait forever.
+     */
+    private static final long REMOTE_COMMAND_PROBE_TIMEOUT = 10000L;
+
+    private boolean _remoteCommands = false;
+
+    /*
+     * false once the server did not run a remote command (e.g. exec channels
+     * are not allowed).
+     */
+    private boolean _remoteCommandsAllowed = true;
+
+    /*
+     * the command computing the SHA-256 digest of a remote file. Empty if
+     * none is found. Resolved on demand.
+     */
+    private String _sha256Command;
+
+    /*
+     * the executor (exec channels) for the remote commands, in the same
+     * directory as this channel. Opened on demand.
+     */
+    private Executor _executor;
+
     JschSftpClient(JschConnection connection, com.jcraft.jsch.ChannelSftp channel, String remoteBaseDir,
             String encoding, Integer dirMode, Integer fileMode, boolean compress, boolean preserve, boolean verbose)
             throws Throwable {
         super(connection, channel, remoteBaseDir, encoding, dirMode, fileMode, compress, preserve, verbose);
+        _dirs = new RemoteDirectoryCache();
         this.channel.connect();
         this.channel.setFilenameEncoding(encoding);
         this.channel.cd(remoteBaseDirectory());
@@ -28,7 +89,135 @@ public class JschSftpClient extends JschTransferClient<ChannelSftp> implements S
     @Override
     public void setRemoteBaseDirectory(String remoteBaseDir) throws Throwable {
         super.setRemoteBaseDirectory(remoteBaseDir);
+        // the cached paths are relative to the base directory.
+        _dirs.clear();
         this.channel.cd(remoteBaseDirectory());
+        closeExecutor();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            closeExecutor();
+        } finally {
+            super.close();
+        }
+    }
+
+    private void closeExecutor() throws IOException {
+        if (_executor != null) {
+            try {
+                _executor.close();
+            } finally {
+                _executor = null;
+            }
+        }
+    }
+
+    @Override
+    public boolean remoteCommands() {
+        return _remoteCommands && _remoteCommandsAllowed;
+    }
+
+    @Override
+    public void setRemoteCommands(boolean remoteCommands) {
+        _remoteCommands = remoteCommands;
+    }
+
+    /**
+     * Runs the remote command, in the current directory of this channel.
+     *
+     * @param command
+     * @param out
+     *            receives the standard output of the command.
+     * @return false if the remote commands are disabled, or the server does
+     *         not allow them (now or before).
+     * @throws RemoteCommandException
+     *             if the command fails.
+     */
+    private boolean executeRemoteCommand(String command, OutputStream out) throws Throwable {
+        if (!_remoteCommands) {
+            return false;
+        }
+        return runRemoteCommand(command, out);
+    }
+
+    /**
+     * Runs the remote command, even if the remote commands are not enabled
+     * for the operations on trees.
+     *
+     * @return false if the server does not allow remote commands (now or
+     *         before).
+     * @see #executeRemoteCommand(String, OutputStream)
+     */
+    private boolean runRemoteCommand(String command, OutputStream out) throws Throwable {
+        if (!_remoteCommandsAllowed) {
+            return false;
+        }
+        try {
+            if (_executor == null) {
+                _executor = connection().createExecutor(this.channel.pwd(), encoding());
+                // the server may run another command instead (e.g.
+                // ForceCommand internal-sftp), which exits successfully.
+                ByteArrayOutputStream probe = new ByteArrayOutputStream();
+                probe(_executor, probe);
+                if (!REMOTE_COMMAND_PROBE.equals(probe.toString(encoding()).trim())) {
+                    throw new IOException("Remote commands are not run by the server.");
+                }
+            }
+            if (this.verbose) {
+                System.out.println("executing remote command: " + command);
+            }
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            int status = _executor.execute(command, out, err);
+            if (status != 0) {
+                throw new RemoteCommandException(command, status, err.toString(encoding()).trim());
+            }
+            return true;
+        } catch (RemoteCommandException e) {
+            throw e;
+        } catch (Throwable e) {
+            if (e instanceof InterruptedException) {
+                throw e;
+            }
+            // e.g. exec channel is not allowed: use sftp.
+            if (this.verbose) {
+                System.out.println("disabled remote commands: " + e.getMessage());
+            }
+            _remoteCommandsAllowed = false;
+            closeExecutor();
+            return false;
+        }
+    }
+
+    /**
+     * Runs the probe command, in another thread. The thread is left blocked
+     * if the server does not reply (until the connection is closed).
+     */
+    private static void probe(final Executor executor, final OutputStream out) throws Throwable {
+        FutureTask<Integer> task = new FutureTask<Integer>(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                try {
+                    return executor.execute("echo " + REMOTE_COMMAND_PROBE, out, null);
+                } catch (Exception e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new ExecutionException(e);
+                }
+            }
+        });
+        Thread t = new Thread(task, "ssh-remote-command-probe");
+        t.setDaemon(true);
+        t.start();
+        try {
+            task.get(REMOTE_COMMAND_PROBE_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IOException("No reply to the remote command in " + REMOTE_COMMAND_PROBE_TIMEOUT + "ms.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof ExecutionException && cause.getCause() != null ? cause.getCause() : cause;
+        }
     }
 
     @Override
@@ -41,6 +230,188 @@ public class JschSftpClient extends JschTransferClient<ChannelSftp> implements S
         }
     }
 
+    @Override
+    public boolean resume() {
+        return _resume;
+    }
+
+    @Override
+    public void setResume(boolean resume) {
+        _resume = resume;
+    }
+
+    @Override
+    public int maxOutstandingRequests() {
+        return this.channel.getBulkRequests();
+    }
+
+    @Override
+    public void setMaxOutstandingRequests(int maxOutstandingRequests) {
+        try {
+            // JSch pipelines the write requests of put(), and the read
+            // requests of get(), up to this number.
+            this.channel.setBulkRequests(Math.min(Math.max(1, maxOutstandingRequests), MAX_OUTSTANDING_REQUESTS));
+        } catch (com.jcraft.jsch.JSchException e) {
+            // only thrown for a non-positive number.
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public int stripeChannels() {
+        return _stripeChannels;
+    }
+
+    @Override
+    public long stripeThreshold() {
+        return _stripeThreshold;
+    }
+
+    @Override
+    public boolean stripeVerify() {
+        return _stripeVerify;
+    }
+
+    @Override
+    public void setStriping(int channels, long threshold, boolean verify) {
+        _stripeChannels = channels < 0 ? 0 : channels;
+        _stripeThreshold = threshold < 0 ? 0 : threshold;
+        _stripeVerify = verify;
+    }
+
+    @Override
+    public String homeDirectory() throws Throwable {
+        return this.channel.getHome();
+    }
+
+    @Override
+    public String realPath(String remotePath) throws Throwable {
+        return this.channel.realpath(remotePath);
+    }
+
+    @Override
+    public List<FileAttrs> list(String remoteDir, boolean recursive) throws Throwable {
+        if (recursive && remoteCommands()) {
+            FindListing listing = new FindListing(encoding());
+            try {
+                if (executeRemoteCommand(FindListing.command(remoteDir), listing)) {
+                    return listing.files();
+                }
+            } catch (RemoteCommandException e) {
+                // e.g. the directory does not exist, or find does not support
+                // -printf: list by sftp.
+            }
+        }
+        final List<FileAttrs> files = new ArrayList<FileAttrs>();
+        final LinkedList<String> dirs = new LinkedList<String>();
+        dirs.add("");
+        while (!dirs.isEmpty()) {
+            final String dir = dirs.poll();
+            String dirPath = dir.isEmpty() ? remoteDir : PathUtils.join(remoteDir, dir);
+            try {
+                this.channel.ls(dirPath, new LsEntrySelector() {
+
+                    @Override
+                    public int select(LsEntry entry) {
+                        String name = entry.getFilename();
+                        if (".".equals(name) || "..".equals(name)) {
+                            return LsEntrySelector.CONTINUE;
+                        }
+                        String path = dir.isEmpty() ? name : PathUtils.join(dir, name);
+                        SftpATTRS attrs = entry.getAttrs();
+                        if (attrs.isDir()) {
+                            dirs.add(path);
+                        } else if (attrs.isReg()) {
+                            files.add(new FileAttrs(path, attrs.getPermissions(), attrs.getSize(), attrs.getMTime(),
+                                    attrs.getATime()));
+                        }
+                        return LsEntrySelector.CONTINUE;
+                    }
+                });
+            } catch (SftpException e) {
+                if (e.id != com.jcraft.jsch.ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                    throw e;
+                }
+            }
+            if (!recursive) {
+                break;
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public List<FileAttrs> ls(String remoteDir) throws Throwable {
+        final List<FileAttrs> entries = new ArrayList<FileAttrs>();
+        this.channel.ls(remoteDir, new LsEntrySelector() {
+
+            @Override
+            public int select(LsEntry entry) {
+                String name = entry.getFilename();
+                if (".".equals(name) || "..".equals(name)) {
+                    return LsEntrySelector.CONTINUE;
+                }
+                SftpATTRS attrs = entry.getAttrs();
+                if (attrs.isDir()) {
+                    entries.add(new FileAttrs(name, attrs.getPermissions(), attrs.getMTime(), attrs.getATime()));
+                } else if (attrs.isReg()) {
+                    entries.add(new FileAttrs(name, attrs.getPermissions(), attrs.getSize(), attrs.getMTime(),
+                            attrs.getATime()));
+                }
+                return LsEntrySelector.CONTINUE;
+            }
+        });
+        return entries;
+    }
+
+    @Override
+    public FileAttrs stat(String remotePath) throws Throwable {
+        SftpATTRS attrs = this.channel.stat(remotePath);
+        if (attrs.isDir()) {
+            return new FileAttrs(remotePath, attrs.getPermissions(), attrs.getMTime(), attrs.getATime());
+        } else {
+            return new FileAttrs(remotePath, attrs.getPermissions(), attrs.getSize(), attrs.getMTime(),
+                    attrs.getATime());
+        }
+    }
+
+    @Override
+    public void get(String remotePath, FileAttrs file, GetHandler h) throws Throwable {
+        try {
+            InputStream in = this.channel.get(remotePath);
+            try {
+                meter(h).getFile(file, in);
+            } finally {
+                in.close();
+            }
+        } catch (Throwable e) {
+            this.metrics.increment(SshMetrics.FAILURES);
+            throw e;
+        }
+    }
+
+    @Override
+    public void delete(String remotePath) throws Throwable {
+        this.channel.rm(remotePath);
+    }
+
+    /**
+     * The size of the remote file. -1 if it does not exist or it is not a
+     * regular file.
+     */
+    static long size(com.jcraft.jsch.ChannelSftp channel, String remotePath) throws Throwable {
+        try {
+            SftpATTRS attrs = channel.stat(remotePath);
+            return attrs.isReg() ? attrs.getSize() : -1;
+        } catch (SftpException e) {
+            if (e.id == com.jcraft.jsch.ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return -1;
+            } else {
+                throw e;
+            }
+        }
+    }
+
     static boolean exists(com.jcraft.jsch.ChannelSftp channel, String remotePath) throws Throwable {
         try {
             channel.stat(remotePath);
@@ -54,36 +425,157 @@ public class JschSftpClient extends JschTransferClient<ChannelSftp> implements S
         }
     }
 
-    static void mkdirs(com.jcraft.jsch.ChannelSftp channel, String dstDirPath, Integer mode, Integer mtime)
-            throws Throwable {
-        if (exists(channel, dstDirPath)) {
+    /**
+     * Checks if the remote directory exists, using the directory cache.
+     */
+    private boolean directoryExists(String dir) throws Throwable {
+        Boolean exists = _dirs.get(dir);
+        if (exists == null) {
+            exists = exists(this.channel, dir);
+            _dirs.put(dir, exists);
+        }
+        return exists;
+    }
+
+    /**
+     * Creates the remote directory and its missing ancestors. The directories
+     * known (cached) to exist are not checked again.
+     */
+    private void createDirectories(String dir, Integer mode, Integer mtime) throws Throwable {
+        if (dir == null || dir.equals("/") || dir.equals(".") || directoryExists(dir)) {
             return;
         }
-        String parentDirPath = PathUtils.getParent(dstDirPath);
-        if (parentDirPath != null && !parentDirPath.equals("/") && !parentDirPath.equals(".")
-                && !exists(channel, parentDirPath)) {
-            mkdirs(channel, parentDirPath, mode, mtime);
+        createDirectories(PathUtils.getParent(dir), mode, mtime);
+        try {
+            this.channel.mkdir(dir);
+        } catch (SftpException e) {
+            _dirs.invalidate(dir);
+            // may have been created by another client in the meantime.
+            if (!exists(this.channel, dir)) {
+                throw e;
+            }
         }
-        channel.mkdir(dstDirPath);
+        _dirs.put(dir, true);
         if (mode != null) {
-            channel.chmod(mode, dstDirPath);
+            this.channel.chmod(mode, dir);
         }
         if (mtime != null) {
-            channel.setMtime(dstDirPath, mtime);
+            this.channel.setMtime(dir, mtime);
         }
     }
 
+    /**
+     * Creates the directories by mkdir -p, as few commands as possible, if the
+     * remote commands are enabled, otherwise one by one. (The directories are
+     * created with the default mode of the server: one by one if the modes
+     * are to be set.)
+     */
     @Override
-    public void put(FileAttrs file, InputStream in) throws Throwable {
+    public void mkdirs(Collection<String> dirs) throws Throwable {
+        if (!remoteCommands() || preserve()) {
+            super.mkdirs(dirs);
+            return;
+        }
+        List<String> missing = new ArrayList<String>();
+        for (String dir : dirs) {
+            if (dir != null && !dir.equals("/") && !dir.equals(".") && !Boolean.TRUE.equals(_dirs.get(dir))) {
+                missing.add(dir);
+            }
+        }
+        int i = 0;
+        while (i < missing.size()) {
+            StringBuilder cmd = new StringBuilder("mkdir -p --");
+            int j = i;
+            while (j < missing.size()
+                    && (j == i || cmd.length() + missing.get(j).length() + 3 < MAX_COMMAND_LENGTH)) {
+                cmd.append(' ').append(ShellUtils.quote(missing.get(j)));
+                j++;
+            }
+            try {
+                if (!executeRemoteCommand(cmd.toString(), null)) {
+                    break;
+                }
+            } catch (RemoteCommandException e) {
+                // e.g. permission denied: sftp reports the directory.
+                break;
+            }
+            for (; i < j; i++) {
+                _dirs.put(missing.get(i), true);
+            }
+        }
+        if (i < missing.size()) {
+            super.mkdirs(missing.subList(i, missing.size()));
+        }
+    }
+
+    /**
+     * If the remote commands are enabled, the directories are created first,
+     * by mkdir -p, then the files are sent.
+     */
+    @Override
+    public void putDirectory(Path dir, boolean self) throws Throwable {
+        if (remoteCommands() && !preserve()) {
+            String dirName = dir.getFileName().toString();
+            List<String> dirs = FileUtils.listDirectories(dir);
+            if (self) {
+                for (int i = 0; i < dirs.size(); i++) {
+                    dirs.set(i, PathUtils.join(dirName, dirs.get(i)));
+                }
+                dirs.add(0, dirName);
+            }
+            mkdirs(dirs);
+        }
+        super.putDirectory(dir, self);
+    }
+
+    @Override
+    protected void doPut(FileAttrs file, InputStream in) throws Throwable {
         String path = file.path();
         if (file.isDirectory()) {
-            mkdirs(this.channel, path, preserve() ? file.mode() : null, preserve() ? file.mtime() : null);
+            createDirectories(path, preserve() ? file.mode() : null, preserve() ? file.mtime() : null);
         } else {
             String parent = PathUtils.getParent(path);
-            if (parent != null && !exists(this.channel, parent)) {
-                mkdirs(this.channel, parent, null, null);
+            createDirectories(parent, null, null);
+            int mode = com.jcraft.jsch.ChannelSftp.OVERWRITE;
+            if (_resume && file.length() > 0) {
+                long size = size(this.channel, path);
+                if (size == file.length()) {
+                    // completed by a previous transfer
+                    return;
+                }
+                if (size > 0 && size < file.length()) {
+                    // skip the bytes already sent, then append the rest. (Not
+                    // ChannelSftp.RESUME, which fails if InputStream.skip()
+                    // returns less than requested.)
+                    if (StreamUtils.skip(in, size) != size) {
+                        throw new IOException("Failed to resume '" + path + "': source is shorter than "
+                                + size + " bytes.");
+                    }
+                    mode = com.jcraft.jsch.ChannelSftp.APPEND;
+                }
+            }
+            try {
+                if (mode == com.jcraft.jsch.ChannelSftp.OVERWRITE && _stripeChannels > 1
+                        && file.length() >= _stripeThreshold && file.length() > 0) {
+                    putStriped(in, file.length(), path);
+                } else {
+                    this.channel.put(in, path, null, mode);
+                }
+            } catch (SftpException e) {
+                if (parent == null) {
+                    throw e;
+                }
+                // the cached parent directory may be stale.
+                _dirs.invalidate(parent);
+                if (e.id != com.jcraft.jsch.ChannelSftp.SSH_FX_NO_SUCH_FILE
+                        || mode != com.jcraft.jsch.ChannelSftp.OVERWRITE) {
+                    throw e;
+                }
+                // the parent directory was removed: the file was not opened
+                // (nothing was read from the input), so try again.
+                createDirectories(parent, null, null);
+                this.channel.put(in, path, null, mode);
             }
-            this.channel.put(in, path, null, com.jcraft.jsch.ChannelSftp.OVERWRITE);
             if (preserve()) {
                 // TODO test
                 SftpATTRS attrs = this.channel.stat(path);
@@ -94,8 +586,114 @@ public class JschSftpClient extends JschTransferClient<ChannelSftp> implements S
         }
     }
 
+    /**
+     * Writes the file over the stripe channels (opened for the file). Falls
+     * back to this channel if the connection cannot open more than one
+     * additional channel.
+     */
+    private void putStriped(InputStream in, long length, String path) throws Throwable {
+        JschConnection cxn = (JschConnection) connection();
+        int channels = _stripeChannels;
+        if (cxn.maxChannels() > 0) {
+            // this channel is open.
+            channels = Math.min(channels, cxn.maxChannels() - 1);
+        }
+        if (channels < 2) {
+            this.channel.put(in, path, null, com.jcraft.jsch.ChannelSftp.OVERWRITE);
+            return;
+        }
+        // creates (or truncates) the file: the chunks are written without
+        // truncating it.
+        OutputStream os = this.channel.put(path, com.jcraft.jsch.ChannelSftp.OVERWRITE);
+        os.close();
+        List<JschSftpClient> workers = new ArrayList<JschSftpClient>(channels);
+        String sha256;
+        try {
+            for (int i = 0; i < channels; i++) {
+                JschSftpClient worker = cxn.createSftpClient(remoteBaseDirectory(), encoding(),
+                        defaultDirectoryMode(), defaultFileMode(), false, false);
+                worker.setMaxOutstandingRequests(maxOutstandingRequests());
+                workers.add(worker);
+            }
+            sha256 = new StripedSftpWriter(workers, StripedSftpWriter.DEFAULT_CHUNK_SIZE, _stripeVerify).write(in,
+                    length, path);
+        } finally {
+            for (JschSftpClient worker : workers) {
+                try {
+                    worker.close();
+                } catch (Throwable e) {
+
+                }
+            }
+        }
+        if (sha256 != null) {
+            verifyStriped(path, sha256);
+        }
+    }
+
+    /**
+     * Compares the SHA-256 digest of the remote file, computed by sha256sum
+     * (or shasum) on the server, with the digest of the content sent. Skipped
+     * if the server does not allow remote commands, or has neither command.
+     */
+    private void verifyStriped(String path, String sha256) throws Throwable {
+        String command = sha256Command();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            if (command == null || !runRemoteCommand(command + " " + ShellUtils.quote(path), out)) {
+                if (this.verbose) {
+                    System.out.println("skipped the checksum of '" + path + "': no remote command.");
+                }
+                return;
+            }
+        } catch (RemoteCommandException e) {
+            throw new TransferException(path, "Remote checksum failed: " + e.getMessage(), e);
+        }
+        String output = out.toString(encoding()).trim();
+        if (output.startsWith("\\")) {
+            // the file name is escaped.
+            output = output.substring(1);
+        }
+        int idx = output.indexOf(' ');
+        String remoteSha256 = idx > 0 ? output.substring(0, idx) : output;
+        if (!sha256.equalsIgnoreCase(remoteSha256)) {
+            throw new TransferException(path, "Checksum mismatch: SHA-256 of the content sent is " + sha256
+                    + ", remote file SHA-256 is " + remoteSha256 + ".");
+        }
+    }
+
+    /*
+     * command -v prints the path of the command: the server may run another
+     * command instead (e.g. ForceCommand internal-sftp), which exits
+     * successfully.
+     */
+    private String sha256Command() throws Throwable {
+        if (_sha256Command == null) {
+            String[] commands = { "sha256sum", "shasum" };
+            String[] commandLines = { "sha256sum --", "shasum -a 256 --" };
+            for (int i = 0; i < commands.length && _sha256Command == null; i++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try {
+                    if (!runRemoteCommand("command -v " + commands[i], out)) {
+                        return null;
+                    }
+                } catch (RemoteCommandException e) {
+                    // not found.
+                    continue;
+                }
+                if (out.size() > 0) {
+                    _sha256Command = commandLines[i];
+                }
+            }
+            if (_sha256Command == null) {
+                _sha256Command = "";
+            }
+        }
+        return _sha256Command.isEmpty() ? null : _sha256Command;
+    }
+
     @Override
-    public void get(String remotePath, GetHandler h) throws Throwable {
+    protected void doGet(String remotePath, GetHandler h) throws Throwable {
         String base = PathUtils.getParent(remotePath);
         String name = PathUtils.getLastComponent(remotePath);
         get(base, name, h);
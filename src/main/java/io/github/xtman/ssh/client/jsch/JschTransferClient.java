@@ -1,6 +1,5 @@
 package io.github.xtman.ssh.client.jsch;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -13,13 +12,17 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
 
 import io.github.xtman.file.util.FileUtils;
+import io.github.xtman.io.util.CountingInputStream;
 import io.github.xtman.io.util.StreamUtils;
 import io.github.xtman.ssh.client.Connection;
 import io.github.xtman.ssh.client.FileAttrs;
+import io.github.xtman.ssh.client.SshMetrics;
 import io.github.xtman.ssh.client.TransferClient;
 import io.github.xtman.util.PathUtils;
+import io.github.xtman.util.metrics.Metrics;
 
 public abstract class JschTransferClient<T extends com.jcraft.jsch.Channel> implements TransferClient {
 
@@ -41,6 +44,8 @@ public abstract class JschTransferClient<T extends com.jcraft.jsch.Channel> impl
 
     protected boolean verbose;
 
+    protected Metrics metrics;
+
     protected JschTransferClient(JschConnection connection, T channel, String remoteBaseDir, String encoding,
             Integer dirMode, Integer fileMode, boolean compress, boolean preserve, boolean verbose) {
         _cxn = connection;
@@ -59,6 +64,8 @@ public abstract class JschTransferClient<T extends com.jcraft.jsch.Channel> impl
 
         this.verbose = verbose;
 
+        this.metrics = connection.metrics();
+
     }
 
     @Override
@@ -153,6 +160,72 @@ public abstract class JschTransferClient<T extends com.jcraft.jsch.Channel> impl
         _preserve = preserve;
     }
 
+    /**
+     * Records the number of files, bytes and time of the transfer, then
+     * delegates to {@link #doPut(FileAttrs, InputStream)}. If the length of
+     * the file is unknown (negative), the bytes read from the input are
+     * counted.
+     */
+    @Override
+    public void put(FileAttrs file, InputStream in) throws Throwable {
+        if (file.isDirectory()) {
+            doPut(file, in);
+            return;
+        }
+        CountingInputStream ci = file.length() < 0 ? new CountingInputStream(in) : null;
+        long start = System.currentTimeMillis();
+        try {
+            doPut(file, ci == null ? in : ci);
+        } catch (Throwable e) {
+            this.metrics.increment(SshMetrics.FAILURES);
+            throw e;
+        }
+        this.metrics.record(SshMetrics.FILE_PUT_TIME, System.currentTimeMillis() - start);
+        this.metrics.increment(SshMetrics.FILES_SENT);
+        this.metrics.increment(SshMetrics.BYTES_SENT, ci == null ? file.length() : ci.bytesRead());
+    }
+
+    protected abstract void doPut(FileAttrs file, InputStream in) throws Throwable;
+
+    /**
+     * Records the number of files, bytes and time of the transfer, then
+     * delegates to {@link #doGet(String, GetHandler)}.
+     */
+    @Override
+    public void get(String remotePath, final GetHandler h) throws Throwable {
+        try {
+            doGet(remotePath, meter(h));
+        } catch (Throwable e) {
+            this.metrics.increment(SshMetrics.FAILURES);
+            throw e;
+        }
+    }
+
+    /**
+     * Wraps the handler to record the number of files, bytes and time of the
+     * files received.
+     */
+    protected GetHandler meter(final GetHandler h) {
+        return new GetHandler() {
+
+            @Override
+            public void getFile(FileAttrs file, InputStream in) throws Throwable {
+                long start = System.currentTimeMillis();
+                h.getFile(file, in);
+                metrics.record(SshMetrics.FILE_GET_TIME, System.currentTimeMillis() - start);
+                metrics.increment(SshMetrics.FILES_RECEIVED);
+                metrics.increment(SshMetrics.BYTES_RECEIVED, file.length());
+            }
+
+            @Override
+            public void getDirectory(FileAttrs dir) throws Throwable {
+                h.getDirectory(dir);
+            }
+        };
+    }
+
+    protected abstract void doGet(String remotePath, GetHandler h) throws Throwable;
+
     @Override
     public void get(String remotePath, final File dstDir) throws Throwable {
         get(remotePath, new GetHandler() {
@@ -165,9 +238,10 @@ public abstract class JschTransferClient<T extends com.jcraft.jsch.Channel> impl
                 if (!dir.exists()) {
                     dir.mkdirs();
                 }
-                OutputStream os = new BufferedOutputStream(new FileOutputStream(of));
+                // unbuffered: written in blocks of the transfer buffer size.
+                OutputStream os = new FileOutputStream(of);
                 try {
-                    StreamUtils.copy(in, os);
+                    StreamUtils.transfer(in, -1, os);
                 } finally {
                     os.close();
                 }
@@ -196,7 +270,8 @@ public abstract class JschTransferClient<T extends com.jcraft.jsch.Channel> impl
 
             @Override
             public void getFile(FileAttrs file, InputStream in) throws Throwable {
-                StreamUtils.copy(in, out);
+                StreamUtils.transfer(in, -1, out);
+                out.flush();
             }
 
             @Override
@@ -228,6 +303,13 @@ public abstract class JschTransferClient<T extends com.jcraft.jsch.Channel> impl
         mkdirs(new FileAttrs(dir, this.defaultDirectoryMode(), null, null));
     }
 
+    @Override
+    public void mkdirs(Collection<String> dirs) throws Throwable {
+        for (String dir : dirs) {
+            mkdirs(dir);
+        }
+    }
+
     @Override
     public void put(InputStream in, long length, Integer mode, Integer mtime, Integer atime, String dstPath)
             throws Throwable {
@@ -241,7 +323,8 @@ public abstract class JschTransferClient<T extends com.jcraft.jsch.Channel> impl
 
     @Override
     public void put(File f, String dstPath) throws Throwable {
-        InputStream in = new BufferedInputStream(new FileInputStream(f));
+        // not buffered so that the content is read via the file channel.
+        InputStream in = new FileInputStream(f);
         try {
             int mode = FileUtils.getFilePermissions(f);
             int mtime = FileUtils.getMTime(f);
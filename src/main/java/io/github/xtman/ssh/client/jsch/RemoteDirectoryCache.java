@@ -0,0 +1,89 @@
+package io.github.xtman.ssh.client.jsch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.github.xtman.util.PathUtils;
+
+/**
+ * Bounded (least recently used) cache of the remote directories known to
+ * exist (positive entries) or known not to exist (negative entries), so that a
+ * client does not stat the same directory before every file. Paths are as
+ * sent to the server (relative to the current directory of the channel).
+ * Not thread safe: each instance belongs to a single channel.
+ */
+class RemoteDirectoryCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private Map<String, Boolean> _entries;
+
+    RemoteDirectoryCache(final int maxEntries) {
+        _entries = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    RemoteDirectoryCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * 
+     * @param dir
+     * @return true if the directory is known to exist, false if it is known
+     *         not to exist, or null if unknown.
+     */
+    Boolean get(String dir) {
+        Boolean exists = _entries.get(dir);
+        if (exists == null) {
+            // a directory whose parent does not exist does not exist either.
+            String parent = PathUtils.getParent(dir);
+            if (parent != null && !parent.equals(dir) && Boolean.FALSE.equals(_entries.get(parent))) {
+                return Boolean.FALSE;
+            }
+        }
+        return exists;
+    }
+
+    void put(String dir, boolean exists) {
+        _entries.put(dir, exists);
+        if (exists) {
+            // so are the ancestors
+            String parent = PathUtils.getParent(dir);
+            while (parent != null && !parent.equals(dir) && !Boolean.TRUE.equals(_entries.get(parent))) {
+                _entries.put(parent, Boolean.TRUE);
+                dir = parent;
+                parent = PathUtils.getParent(dir);
+            }
+        }
+    }
+
+    /**
+     * Forgets the directory and its ancestors, e.g. after an operation in the
+     * directory failed.
+     * 
+     * @param dir
+     */
+    void invalidate(String dir) {
+        while (dir != null) {
+            _entries.remove(dir);
+            String parent = PathUtils.getParent(dir);
+            dir = dir.equals(parent) ? null : parent;
+        }
+    }
+
+    void clear() {
+        _entries.clear();
+    }
+
+    int size() {
+        return _entries.size();
+    }
+
+}
@@ -0,0 +1,203 @@
+package io.github.xtman.ssh.client.jsch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Decoder (and encoder) of the scp control messages:
+ *
+ * <pre>
+ * C{mode} {length} {name}\n    --- file
+ * D{mode} 0 {name}\n           --- directory
+ * T{mtime} 0 {atime} 0\n       --- times of the next file/directory
+ * E\n                          --- end of directory
+ * \01{message}\n               --- warning
+ * \02{message}\n               --- error
+ * </pre>
+ *
+ * A message is read byte by byte (up to the new line) into a reusable buffer,
+ * so no byte following the message is consumed from the input stream, then
+ * its fields are parsed in place. The instance is reused for all the messages
+ * of a transfer.
+ */
+class ScpMessage {
+
+    public static final char FILE = 'C';
+    public static final char DIRECTORY = 'D';
+    public static final char TIME = 'T';
+    public static final char END = 'E';
+    public static final char WARNING = '\01';
+    public static final char ERROR = '\02';
+
+    private static final int MAX_LENGTH = 65536;
+
+    private Charset _charset;
+
+    private byte[] _buffer = new byte[1024];
+    private int _size;
+    private int _pos;
+
+    private char _type;
+    private int _mode;
+    private long _length;
+    private int _mtime;
+    private int _atime;
+    private String _name;
+
+    ScpMessage(String encoding) {
+        _charset = Charset.forName(encoding == null ? "UTF-8" : encoding);
+    }
+
+    /**
+     * Reads and parses the next message.
+     *
+     * @param in
+     * @return false if the end of the stream is reached before the message.
+     * @throws IOException
+     */
+    boolean read(InputStream in) throws IOException {
+        _size = 0;
+        int b = in.read();
+        if (b == -1) {
+            return false;
+        }
+        while (b != -1 && b != '\n') {
+            if (_size == _buffer.length) {
+                if (_size >= MAX_LENGTH) {
+                    throw new IOException("scp message exceeds " + MAX_LENGTH + " bytes.");
+                }
+                byte[] buffer = new byte[_buffer.length * 2];
+                System.arraycopy(_buffer, 0, buffer, 0, _size);
+                _buffer = buffer;
+            }
+            _buffer[_size++] = (byte) b;
+            b = in.read();
+        }
+        parse();
+        return true;
+    }
+
+    private void parse() throws IOException {
+        if (_size == 0) {
+            throw malformed();
+        }
+        _type = (char) _buffer[0];
+        _pos = 1;
+        _name = null;
+        switch (_type) {
+        case FILE:
+        case DIRECTORY:
+            _mode = (int) parseNumber(8);
+            _length = parseNumber(10);
+            if (_pos >= _size) {
+                throw malformed();
+            }
+            _name = new String(_buffer, _pos, _size - _pos, _charset);
+            break;
+        case TIME:
+            _mtime = (int) parseNumber(10);
+            parseNumber(10);
+            _atime = (int) parseNumber(10);
+            break;
+        case END:
+            break;
+        case WARNING:
+        case ERROR:
+            _name = new String(_buffer, 1, _size - 1, _charset);
+            break;
+        default:
+            throw malformed();
+        }
+    }
+
+    /**
+     * Parses the (non-negative) number at the current position and skips the
+     * following space.
+     */
+    private long parseNumber(int radix) throws IOException {
+        int start = _pos;
+        long n = 0;
+        while (_pos < _size && _buffer[_pos] != ' ') {
+            int d = _buffer[_pos] - '0';
+            if (d < 0 || d >= radix || n > (Long.MAX_VALUE - d) / radix) {
+                throw malformed();
+            }
+            n = n * radix + d;
+            _pos++;
+        }
+        if (_pos == start) {
+            throw malformed();
+        }
+        _pos++;
+        return n;
+    }
+
+    private IOException malformed() {
+        return new IOException("Malformed scp message: '" + toString() + "'");
+    }
+
+    char type() {
+        return _type;
+    }
+
+    int mode() {
+        return _mode;
+    }
+
+    long length() {
+        return _length;
+    }
+
+    int mtime() {
+        return _mtime;
+    }
+
+    int atime() {
+        return _atime;
+    }
+
+    /**
+     * The file/directory name. Or the text of the warning/error message.
+     *
+     * @return
+     */
+    String name() {
+        return _name;
+    }
+
+    @Override
+    public String toString() {
+        return new String(_buffer, 0, _size, _charset);
+    }
+
+    static String fileMessage(int mode, long length, String name) {
+        StringBuilder sb = new StringBuilder(name.length() + 32);
+        sb.append(FILE);
+        appendMode(sb, mode);
+        sb.append(' ').append(length).append(' ').append(name).append('\n');
+        return sb.toString();
+    }
+
+    static String directoryMessage(int mode, String name) {
+        StringBuilder sb = new StringBuilder(name.length() + 16);
+        sb.append(DIRECTORY);
+        appendMode(sb, mode);
+        sb.append(" 0 ").append(name).append('\n');
+        return sb.toString();
+    }
+
+    static String timeMessage(int mtime, int atime) {
+        StringBuilder sb = new StringBuilder(32);
+        sb.append(TIME).append(mtime).append(" 0 ").append(atime).append(" 0\n");
+        return sb.toString();
+    }
+
+    private static void appendMode(StringBuilder sb, int mode) {
+        // 4 octal digits
+        for (int shift = 9; shift >= 0; shift -= 3) {
+            sb.append((char) ('0' + ((mode >> shift) & 07)));
+        }
+    }
+
+}
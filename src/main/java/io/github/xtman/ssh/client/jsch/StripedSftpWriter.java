@@ -0,0 +1,204 @@
+package io.github.xtman.ssh.client.jsch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.jcraft.jsch.ChannelSftp;
+
+import io.github.xtman.io.util.ChecksumInputStream;
+import io.github.xtman.ssh.client.TransferException;
+
+/**
+ * Writes a large file over multiple sftp channels: the (sequential) input is
+ * read, by the calling thread, into chunks, which are written concurrently by
+ * the worker channels at their offsets in the remote file. The number of
+ * chunks in memory is bounded (two per worker): the reader blocks until a
+ * worker has written its chunk.
+ *
+ * Once all the chunks are written, the size of the remote file is checked.
+ * If digest is set, the SHA-256 digest of the input is computed as it is read,
+ * to be compared with the one of the remote file.
+ *
+ * A writer is used for a single file.
+ */
+class StripedSftpWriter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /*
+     * JSch opens the file with SSH_FXF_WRITE|SSH_FXF_CREAT (no truncation) for
+     * any mode but OVERWRITE. RESUME and APPEND also add the current size of
+     * the file to the offset: another mode is used to write at the offset.
+     * This relies on the implementation of ChannelSftp.put(String,
+     * SftpProgressMonitor, int, long), see StripedSftpWriterTest.
+     */
+    static final int OFFSET_WRITE_MODE = 3;
+
+    private static class Chunk {
+        final long offset;
+        final byte[] buffer;
+        final int length;
+
+        Chunk(long offset, byte[] buffer, int length) {
+            this.offset = offset;
+            this.buffer = buffer;
+            this.length = length;
+        }
+    }
+
+    private static final Chunk STOP = new Chunk(-1, null, 0);
+
+    private List<JschSftpClient> _workers;
+    private int _chunkSize;
+    private boolean _digest;
+    private BlockingQueue<Chunk> _queue;
+    private BlockingQueue<byte[]> _buffers;
+    private volatile Throwable _error;
+
+    /**
+     *
+     * @param workers
+     *            the clients of the worker channels, with the same remote base
+     *            directory. They are not closed.
+     * @param chunkSize
+     *            the size of the chunks.
+     * @param digest
+     *            compute the SHA-256 digest of the input.
+     */
+    StripedSftpWriter(List<JschSftpClient> workers, int chunkSize, boolean digest) {
+        _workers = workers;
+        _chunkSize = chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE;
+        _digest = digest;
+        _queue = new ArrayBlockingQueue<Chunk>(_workers.size() + 1);
+        _buffers = new ArrayBlockingQueue<byte[]>(_workers.size() * 2);
+    }
+
+    /**
+     * Writes the content of the input stream to the remote file. The file
+     * must exist (it is not truncated).
+     *
+     * @param in
+     * @param length
+     *            the content length.
+     * @param path
+     *            the remote file path.
+     * @return the SHA-256 digest (lower case hex) of the content. Null if not
+     *         computed.
+     * @throws Throwable
+     */
+    String write(InputStream in, long length, final String path) throws Throwable {
+        ChecksumInputStream cin = _digest ? new ChecksumInputStream(in, true) : null;
+        if (cin != null) {
+            in = cin;
+        }
+        List<Thread> threads = new ArrayList<Thread>(_workers.size());
+        for (int i = 0; i < _workers.size(); i++) {
+            final ChannelSftp channel = _workers.get(i).channel;
+            _buffers.add(new byte[_chunkSize]);
+            _buffers.add(new byte[_chunkSize]);
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work(channel, path);
+                }
+            }, "ssh-sftp-stripe-" + (i + 1));
+            t.setDaemon(true);
+            threads.add(t);
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        try {
+            long offset = 0;
+            while (offset < length && _error == null) {
+                byte[] buffer = _buffers.take();
+                int n = read(in, buffer, (int) Math.min(buffer.length, length - offset));
+                if (n <= 0) {
+                    throw new IOException("Unexpected end of input: '" + path + "'. Read " + offset + " of "
+                            + length + " bytes.");
+                }
+                _queue.put(new Chunk(offset, buffer, n));
+                offset += n;
+            }
+        } catch (Throwable e) {
+            if (_error == null) {
+                _error = e;
+            }
+        } finally {
+            // stop the workers (discarding the chunks not written on error).
+            if (_error != null) {
+                _queue.clear();
+            }
+            for (int i = 0; i < threads.size(); i++) {
+                _queue.put(STOP);
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+        }
+        if (_error != null) {
+            if (_error instanceof TransferException) {
+                throw _error;
+            }
+            throw new TransferException(path, _error.getMessage(), _error);
+        }
+        long size = JschSftpClient.size(_workers.get(0).channel, path);
+        if (size != length) {
+            throw new TransferException(path,
+                    "Size mismatch: remote file has " + size + " bytes, expected " + length + " bytes.");
+        }
+        return cin == null ? null : cin.sha256();
+    }
+
+    private void work(ChannelSftp channel, String path) {
+        while (true) {
+            Chunk chunk;
+            try {
+                chunk = _queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (chunk == STOP) {
+                break;
+            }
+            try {
+                if (_error == null) {
+                    write(channel, path, chunk);
+                }
+            } catch (Throwable e) {
+                if (_error == null) {
+                    _error = e;
+                }
+            } finally {
+                _buffers.offer(chunk.buffer);
+            }
+        }
+    }
+
+    private static void write(ChannelSftp channel, String path, Chunk chunk) throws Throwable {
+        OutputStream os = channel.put(path, null, OFFSET_WRITE_MODE, chunk.offset);
+        try {
+            os.write(chunk.buffer, 0, chunk.length);
+        } finally {
+            os.close();
+        }
+    }
+
+    private static int read(InputStream in, byte[] b, int len) throws IOException {
+        int off = 0;
+        while (off < len) {
+            int n = in.read(b, off, len - off);
+            if (n < 0) {
+                break;
+            }
+            off += n;
+        }
+        return off;
+    }
+
+}
@@ -0,0 +1,16 @@
+package io.github.xtman.util;
+
+public class ShellUtils {
+
+    /**
+     * Quotes the argument for a POSIX shell command line: enclosed in single
+     * quotes, with the embedded single quotes escaped.
+     *
+     * @param arg
+     * @return
+     */
+    public static String quote(String arg) {
+        return "'" + arg.replace("'", "'\\''") + "'";
+    }
+
+}
@@ -0,0 +1,91 @@
+package io.github.xtman.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of non-negative values, with power of 2 buckets: bucket
+ * i counts the values v where 2^(i-1) <= v < 2^i (bucket 0 counts the zeros).
+ * The percentiles are therefore approximated by the upper bound of the
+ * bucket.
+ */
+public class Histogram {
+
+    private static final int BUCKETS = 64;
+
+    private AtomicLongArray _buckets;
+    private AtomicLong _count;
+    private AtomicLong _sum;
+    private AtomicLong _min;
+    private AtomicLong _max;
+
+    public Histogram() {
+        _buckets = new AtomicLongArray(BUCKETS);
+        _count = new AtomicLong(0);
+        _sum = new AtomicLong(0);
+        _min = new AtomicLong(Long.MAX_VALUE);
+        _max = new AtomicLong(Long.MIN_VALUE);
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        _buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+        _count.incrementAndGet();
+        _sum.addAndGet(value);
+        long min;
+        while (value < (min = _min.get()) && !_min.compareAndSet(min, value)) {
+        }
+        long max;
+        while (value > (max = _max.get()) && !_max.compareAndSet(max, value)) {
+        }
+    }
+
+    public long count() {
+        return _count.get();
+    }
+
+    public long sum() {
+        return _sum.get();
+    }
+
+    public long min() {
+        return count() == 0 ? 0 : _min.get();
+    }
+
+    public long max() {
+        return count() == 0 ? 0 : _max.get();
+    }
+
+    public double mean() {
+        long count = count();
+        return count == 0 ? 0 : (double) sum() / count;
+    }
+
+    /**
+     * Approximated percentile: the upper bound of the bucket containing the
+     * percentile, capped by the maximum value.
+     *
+     * @param p
+     *            the percentile, between 0 and 100.
+     * @return
+     */
+    public long percentile(double p) {
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * p / 100.0);
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += _buckets.get(i);
+            if (n >= rank && n > 0) {
+                long upper = i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                return Math.min(upper, max());
+            }
+        }
+        return max();
+    }
+
+}
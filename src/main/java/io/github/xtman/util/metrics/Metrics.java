@@ -0,0 +1,108 @@
+package io.github.xtman.util.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named counters and histograms of a scope (e.g. a connection end point or a
+ * sink).
+ */
+public class Metrics {
+
+    private String _scope;
+    private volatile long _since;
+    private ConcurrentMap<String, AtomicLong> _counters;
+    private ConcurrentMap<String, Histogram> _histograms;
+
+    public Metrics(String scope) {
+        _scope = scope;
+        _since = System.currentTimeMillis();
+        _counters = new ConcurrentHashMap<String, AtomicLong>();
+        _histograms = new ConcurrentHashMap<String, Histogram>();
+    }
+
+    public String scope() {
+        return _scope;
+    }
+
+    /**
+     * The time (milliseconds since epoch) the metrics started to be recorded.
+     *
+     * @return
+     */
+    public long since() {
+        return _since;
+    }
+
+    /**
+     * Clears the counters and histograms.
+     */
+    public void reset() {
+        _counters.clear();
+        _histograms.clear();
+        _since = System.currentTimeMillis();
+    }
+
+    public void increment(String counter, long delta) {
+        AtomicLong c = _counters.get(counter);
+        if (c == null) {
+            AtomicLong nc = new AtomicLong(0);
+            c = _counters.putIfAbsent(counter, nc);
+            if (c == null) {
+                c = nc;
+            }
+        }
+        c.addAndGet(delta);
+    }
+
+    public void increment(String counter) {
+        increment(counter, 1);
+    }
+
+    public void record(String histogram, long value) {
+        Histogram h = _histograms.get(histogram);
+        if (h == null) {
+            Histogram nh = new Histogram();
+            h = _histograms.putIfAbsent(histogram, nh);
+            if (h == null) {
+                h = nh;
+            }
+        }
+        h.record(value);
+    }
+
+    public long counter(String counter) {
+        AtomicLong c = _counters.get(counter);
+        return c == null ? 0 : c.get();
+    }
+
+    public Histogram histogram(String histogram) {
+        return _histograms.get(histogram);
+    }
+
+    /**
+     * Snapshot of the counters, sorted by name.
+     *
+     * @return
+     */
+    public Map<String, Long> counters() {
+        Map<String, Long> counters = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : _counters.entrySet()) {
+            counters.put(entry.getKey(), entry.getValue().get());
+        }
+        return counters;
+    }
+
+    /**
+     * The histograms, sorted by name.
+     *
+     * @return
+     */
+    public Map<String, Histogram> histograms() {
+        return new TreeMap<String, Histogram>(_histograms);
+    }
+
+}
@@ -0,0 +1,71 @@
+package io.github.xtman.util.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * JVM wide registry of the {@link Metrics} by scope.
+ */
+public class MetricsRegistry {
+
+    private static ConcurrentMap<String, Metrics> _metrics = new ConcurrentHashMap<String, Metrics>();
+
+    /**
+     * Gets (or creates) the metrics of the specified scope.
+     *
+     * @param scope
+     * @return
+     */
+    public static Metrics get(String scope) {
+        Metrics m = _metrics.get(scope);
+        if (m == null) {
+            Metrics nm = new Metrics(scope);
+            m = _metrics.putIfAbsent(scope, nm);
+            if (m == null) {
+                m = nm;
+            }
+        }
+        return m;
+    }
+
+    /**
+     * All the metrics, sorted by scope.
+     *
+     * @return
+     */
+    public static List<Metrics> all() {
+        List<String> scopes = new ArrayList<String>(_metrics.keySet());
+        Collections.sort(scopes);
+        List<Metrics> ms = new ArrayList<Metrics>(scopes.size());
+        for (String scope : scopes) {
+            Metrics m = _metrics.get(scope);
+            if (m != null) {
+                ms.add(m);
+            }
+        }
+        return ms;
+    }
+
+    /**
+     * Resets the metrics of the specified scope, or all the metrics if the
+     * scope is null.
+     *
+     * @param scope
+     */
+    public static void reset(String scope) {
+        if (scope == null) {
+            for (Metrics m : _metrics.values()) {
+                m.reset();
+            }
+        } else {
+            Metrics m = _metrics.get(scope);
+            if (m != null) {
+                m.reset();
+            }
+        }
+    }
+
+}
@@ -21,7 +21,8 @@ if { [xvalue exists [plugin.module.exists :path ${plugin_namespace}/${plugin_jar
 
 # install the plugin module
 plugin.module.add :path ${plugin_namespace}/${plugin_jar} :class ${module_class} \
-    :lib ${plugin_namespace}/lib/jsch-0.1.54.jar
+    :lib ${plugin_namespace}/lib/jsch-0.1.54.jar \
+    :lib ${plugin_namespace}/lib/jzlib-1.0.7.jar
 
 # reload the services     
 system.service.reload
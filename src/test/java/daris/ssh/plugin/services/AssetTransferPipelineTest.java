@@ -0,0 +1,90 @@
+package daris.ssh.plugin.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.github.xtman.ssh.client.FileAttrs;
+
+public class AssetTransferPipelineTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private TransferCheckpoint _checkpoint;
+
+    @Before
+    public void prepare() throws Throwable {
+        // the previous run extracted the archive asset 1 into x
+        File file = new File(tmp.getRoot(), "checkpoint");
+        TransferCheckpoint checkpoint = new TransferCheckpoint(file, false);
+        checkpoint.completed("1", "x", 100);
+        checkpoint.close();
+        _checkpoint = new TransferCheckpoint(file, false);
+    }
+
+    @After
+    public void cleanup() throws Throwable {
+        _checkpoint.close();
+    }
+
+    private static IncrementalSync remoteTree() {
+        IncrementalSync sync = new IncrementalSync();
+        sync.load(Arrays.asList(new FileAttrs("x/1.txt", 0644, 10, 0, 0),
+                new FileAttrs("x/y/2.txt", 0644, 10, 0, 0), new FileAttrs("b.txt", 0644, 10, 0, 0),
+                new FileAttrs("c.txt", 0644, 10, 0, 0)));
+        return sync;
+    }
+
+    private static List<String> sorted(List<String> paths) {
+        List<String> list = new ArrayList<String>(paths);
+        Collections.sort(list);
+        return list;
+    }
+
+    @Test
+    public void testSkippedArchiveIsNotOrphan() throws Throwable {
+        IncrementalSync sync = remoteTree();
+        AssetTransferPipeline.Pager pager = new AssetTransferPipeline.Pager(null, "true", null, null, null,
+                _checkpoint, sync, true);
+        assertTrue(pager.skip("1", "x.zip", 100, 0));
+        assertFalse(pager.skip("2", "c.txt", 20, 0));
+        assertEquals(1, pager.skipped());
+        // the files extracted by the previous run are kept.
+        assertEquals(Arrays.asList("b.txt"), sorted(sync.orphans()));
+    }
+
+    @Test
+    public void testSkippedArchiveNotExtracted() throws Throwable {
+        IncrementalSync sync = remoteTree();
+        AssetTransferPipeline.Pager pager = new AssetTransferPipeline.Pager(null, "true", null, null, null,
+                _checkpoint, sync, false);
+        assertTrue(pager.skip("1", "x.zip", 100, 0));
+        // the archive is sent as a file: the directory does not belong to it.
+        assertEquals(Arrays.asList("b.txt", "c.txt", "x/1.txt", "x/y/2.txt"), sorted(sync.orphans()));
+    }
+
+    @Test
+    public void testUnchangedFileIsSkipped() throws Throwable {
+        IncrementalSync sync = new IncrementalSync();
+        sync.load(Arrays.asList(new FileAttrs("d.txt", 0644, 10, 2000, 2000)));
+        AssetTransferPipeline.Pager pager = new AssetTransferPipeline.Pager(null, "true", null, null, null, null,
+                sync, true);
+        assertTrue(pager.skip("3", "d.txt", 10, 1000000L));
+        assertFalse(pager.skip("4", "e.txt", 10, 1000000L));
+        assertTrue(sync.orphans().isEmpty());
+    }
+
+}
@@ -0,0 +1,87 @@
+package daris.ssh.plugin.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.github.xtman.ssh.client.FileAttrs;
+
+public class IncrementalSyncTest {
+
+    private static IncrementalSync remoteTree() {
+        IncrementalSync sync = new IncrementalSync();
+        sync.load(Arrays.asList(new FileAttrs("in.txt", 0644, 10, 0, 0), new FileAttrs("u/1.txt", 0644, 10, 0, 0),
+                new FileAttrs("u/v/2.txt", 0644, 10, 0, 0), new FileAttrs("x.zip", 0644, 10, 0, 0),
+                new FileAttrs("x/3.txt", 0644, 10, 0, 0), new FileAttrs("y.txt", 0644, 10, 0, 0)));
+        return sync;
+    }
+
+    private static List<String> sorted(List<String> paths) {
+        List<String> list = new ArrayList<String>(paths);
+        Collections.sort(list);
+        return list;
+    }
+
+    private static void assertRejected(String directory, String baseDir, String homeDir) {
+        try {
+            IncrementalSync.checkDeleteOrphans(directory, baseDir, homeDir);
+            fail("Orphans deleted in '" + baseDir + "' (directory: " + directory + ", home: " + homeDir + ")");
+        } catch (IllegalArgumentException e) {
+            // expected.
+        }
+    }
+
+    @Test
+    public void testDeleteOrphansWithoutDirectory() {
+        assertRejected(null, "/home/u/export", "/home/u");
+        assertRejected(" ", "/home/u/export", "/home/u");
+    }
+
+    @Test
+    public void testDeleteOrphansInHomeDirectory() {
+        assertRejected(".", "/home/u", "/home/u");
+        assertRejected("/home/u/", "/home/u", "/home/u/");
+        // ancestors.
+        assertRejected("..", "/home", "/home/u");
+        assertRejected("/", "/", "/home/u");
+    }
+
+    @Test
+    public void testDeleteOrphansInOtherDirectory() {
+        IncrementalSync.checkDeleteOrphans("export", "/home/u/export", "/home/u");
+        IncrementalSync.checkDeleteOrphans("/home/u2", "/home/u2", "/home/u");
+        IncrementalSync.checkDeleteOrphans("/data", "/data/", "/home/u");
+    }
+
+    @Test
+    public void testInputFileIsNotOrphan() {
+        IncrementalSync sync = remoteTree();
+        sync.seen("in.txt", true);
+        assertEquals(Arrays.asList("u/1.txt", "u/v/2.txt", "x.zip", "x/3.txt", "y.txt"), sorted(sync.orphans()));
+    }
+
+    @Test
+    public void testExtractedArchiveIsNotOrphan() {
+        IncrementalSync sync = remoteTree();
+        sync.seen("x.zip", true);
+        assertEquals(Arrays.asList("in.txt", "u/1.txt", "u/v/2.txt", "x.zip", "y.txt"), sorted(sync.orphans()));
+        // not extracted: the archive file is sent.
+        sync = remoteTree();
+        sync.seen("x.zip", false);
+        assertEquals(Arrays.asList("in.txt", "u/1.txt", "u/v/2.txt", "x/3.txt", "y.txt"), sorted(sync.orphans()));
+    }
+
+    @Test
+    public void testDirectoryTreeIsNotOrphan() {
+        IncrementalSync sync = remoteTree();
+        sync.seenDirectory("u");
+        assertEquals(Arrays.asList("in.txt", "x.zip", "x/3.txt", "y.txt"), sorted(sync.orphans()));
+    }
+
+}
@@ -0,0 +1,194 @@
+package daris.ssh.plugin.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TransferCheckpointTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File checkpointFile() {
+        return new File(tmp.getRoot(), "checkpoint");
+    }
+
+    private static List<String> lines(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), UTF8);
+    }
+
+    private static void append(File file, String text) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(text.getBytes(UTF8));
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void testLogFormat() throws Throwable {
+        File file = checkpointFile();
+        TransferCheckpoint checkpoint = new TransferCheckpoint(file, true);
+        try {
+            checkpoint.started("1", "a/1 b.txt");
+            checkpoint.completed("1", "a/1 b.txt", 10);
+            checkpoint.completed("2", "a/x", 20);
+            // recorded once.
+            checkpoint.completed("2", "a/x", 20);
+            checkpoint.failed("a/x/y/2.txt");
+            assertEquals(1, checkpoint.recorded());
+        } finally {
+            checkpoint.close();
+        }
+        assertEquals(Arrays.asList(">\t1\ta/1 b.txt", "+\t1\t10\ta/1 b.txt", "+\t2\t20\ta/x", "-\t2"), lines(file));
+    }
+
+    @Test
+    public void testReplay() throws Throwable {
+        File file = checkpointFile();
+        append(file, "+\t1\t10\ta.txt\n+\t2\t20\tb.txt\n-\t2\n+\t3\t30\tc.txt\n-\t3\n+\t3\t30\tc.txt\n");
+        TransferCheckpoint checkpoint = new TransferCheckpoint(file, false);
+        try {
+            assertTrue(checkpoint.isCompleted("1"));
+            assertFalse(checkpoint.isCompleted("2"));
+            assertTrue(checkpoint.isCompleted("3"));
+            assertFalse(checkpoint.isCompleted("4"));
+            assertEquals(0, checkpoint.recorded());
+        } finally {
+            checkpoint.close();
+        }
+    }
+
+    @Test
+    public void testTruncatedLineIgnored() throws Throwable {
+        File file = checkpointFile();
+        append(file, "+\t1\t10\ta.txt\n+\t2\t20");
+        TransferCheckpoint checkpoint = new TransferCheckpoint(file, false);
+        try {
+            assertTrue(checkpoint.isCompleted("1"));
+            assertFalse(checkpoint.isCompleted("2"));
+            checkpoint.completed("3", "c.txt", 30);
+        } finally {
+            checkpoint.close();
+        }
+        assertEquals(Arrays.asList("+\t1\t10\ta.txt", "+\t2\t20", "+\t3\t30\tc.txt"), lines(file));
+        checkpoint = new TransferCheckpoint(file, false);
+        try {
+            assertFalse(checkpoint.isCompleted("2"));
+            assertTrue(checkpoint.isCompleted("3"));
+        } finally {
+            checkpoint.close();
+        }
+    }
+
+    @Test
+    public void testCanResume() throws Throwable {
+        File file = checkpointFile();
+        append(file, ">\t1\ta.txt\n>\t2\tb.txt\n+\t2\t20\tb.txt\n>\t3\tc.txt\n");
+        TransferCheckpoint checkpoint = new TransferCheckpoint(file, true);
+        try {
+            // interrupted.
+            assertTrue(checkpoint.canResume("1", "a.txt"));
+            // completed.
+            assertFalse(checkpoint.canResume("2", "b.txt"));
+            // another destination.
+            assertFalse(checkpoint.canResume("3", "d.txt"));
+            // not started.
+            assertFalse(checkpoint.canResume("4", "e.txt"));
+        } finally {
+            checkpoint.close();
+        }
+        checkpoint = new TransferCheckpoint(file, false);
+        try {
+            assertFalse(checkpoint.canResume("1", "a.txt"));
+        } finally {
+            checkpoint.close();
+        }
+    }
+
+    @Test
+    public void testFailedArchiveFile() throws Throwable {
+        File file = checkpointFile();
+        TransferCheckpoint checkpoint = new TransferCheckpoint(file, false);
+        try {
+            checkpoint.completed("1", "a/x", 10);
+            checkpoint.completed("2", "a/x.txt", 20);
+            // a file extracted from the archive asset 1.
+            checkpoint.failed("a/x/y/z.txt");
+            assertFalse(checkpoint.isCompleted("1"));
+            assertTrue(checkpoint.isCompleted("2"));
+            // not recorded.
+            checkpoint.failed("b/c.txt");
+            assertTrue(checkpoint.isCompleted("2"));
+            checkpoint.failed("a/x.txt");
+            assertFalse(checkpoint.isCompleted("2"));
+            assertEquals(0, checkpoint.recorded());
+        } finally {
+            checkpoint.close();
+        }
+        checkpoint = new TransferCheckpoint(file, false);
+        try {
+            assertFalse(checkpoint.isCompleted("1"));
+            assertFalse(checkpoint.isCompleted("2"));
+        } finally {
+            checkpoint.close();
+        }
+    }
+
+    @Test
+    public void testFlushInterval() throws Throwable {
+        File file = checkpointFile();
+        TransferCheckpoint checkpoint = new TransferCheckpoint(file, false);
+        try {
+            for (int i = 1; i < TransferCheckpoint.FLUSH_INTERVAL; i++) {
+                checkpoint.completed(Integer.toString(i), "f" + i, i);
+            }
+            assertEquals(0, file.length());
+            checkpoint.completed(Integer.toString(TransferCheckpoint.FLUSH_INTERVAL),
+                    "f" + TransferCheckpoint.FLUSH_INTERVAL, TransferCheckpoint.FLUSH_INTERVAL);
+            assertEquals(TransferCheckpoint.FLUSH_INTERVAL, lines(file).size());
+            // a failure is flushed immediately.
+            checkpoint.failed("f1");
+            assertEquals(TransferCheckpoint.FLUSH_INTERVAL + 1, lines(file).size());
+            // so is a start, with the preceding records.
+            checkpoint.completed("1", "f1", 1);
+            checkpoint.started("g", "g");
+            assertEquals(TransferCheckpoint.FLUSH_INTERVAL + 3, lines(file).size());
+        } finally {
+            checkpoint.close();
+        }
+    }
+
+    @Test
+    public void testResolve() throws Throwable {
+        File dir = tmp.newFolder("checkpoints");
+        assertEquals(new File(dir, "a/b-1.log").getCanonicalPath(),
+                TransferCheckpoint.resolve(dir, "a/b-1.log").getCanonicalPath());
+        for (String name : new String[] { null, "", "/etc/passwd", "../x", "a/../../x", "a/./x", "a//x", "a/",
+                "a b", "a\\..\\x" }) {
+            try {
+                TransferCheckpoint.resolve(dir, name);
+                fail("Invalid name accepted: '" + name + "'");
+            } catch (IllegalArgumentException e) {
+                // expected.
+            }
+        }
+    }
+
+}
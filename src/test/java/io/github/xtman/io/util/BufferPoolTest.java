@@ -0,0 +1,46 @@
+package io.github.xtman.io.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testMaxBuffers() {
+        BufferPool pool = new BufferPool(16, 2);
+        byte[] b1 = pool.acquire();
+        byte[] b2 = pool.acquire();
+        byte[] b3 = pool.acquire();
+        assertEquals(16, b1.length);
+        pool.release(b1);
+        pool.release(b2);
+        // beyond the maximum: not retained.
+        pool.release(b3);
+        assertSame(b1, pool.acquire());
+        assertSame(b2, pool.acquire());
+        byte[] b4 = pool.acquire();
+        assertNotSame(b3, b4);
+        assertEquals(16, b4.length);
+    }
+
+    @Test
+    public void testReleaseOtherSize() {
+        BufferPool pool = new BufferPool(16, 2);
+        byte[] b = new byte[8];
+        pool.release(b);
+        pool.release(null);
+        byte[] b1 = pool.acquire();
+        assertNotSame(b, b1);
+        assertEquals(16, b1.length);
+        // the rejected buffers are not counted.
+        byte[] b2 = pool.acquire();
+        pool.release(b1);
+        pool.release(b2);
+        assertSame(b1, pool.acquire());
+        assertSame(b2, pool.acquire());
+    }
+
+}
@@ -0,0 +1,126 @@
+package io.github.xtman.io.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SpooledContentTest {
+
+    private static final int MAX_MEMORY_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] content(int length) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = (byte) (i * 31);
+        }
+        return b;
+    }
+
+    private static byte[] read(SpooledContent content) throws Throwable {
+        InputStream in = content.open();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            StreamUtils.copy(in, out);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private SpooledContent spool(byte[] b) throws IOException {
+        return SpooledContent.spool(new ByteArrayInputStream(b), MAX_MEMORY_SIZE, tmp.getRoot());
+    }
+
+    @Test
+    public void testInMemory() throws Throwable {
+        byte[] b = content(MAX_MEMORY_SIZE);
+        SpooledContent content = spool(b);
+        try {
+            assertFalse(content.inFile());
+            assertEquals(MAX_MEMORY_SIZE, content.length());
+            assertArrayEquals(b, read(content));
+            // can be read again.
+            assertArrayEquals(b, read(content));
+            assertEquals(0, tmp.getRoot().list().length);
+        } finally {
+            content.close();
+        }
+        try {
+            content.open();
+            fail("Spooled content opened after close.");
+        } catch (IOException e) {
+            // expected.
+        }
+    }
+
+    @Test
+    public void testInFile() throws Throwable {
+        byte[] b = content(MAX_MEMORY_SIZE + 1);
+        SpooledContent content = spool(b);
+        try {
+            assertTrue(content.inFile());
+            assertEquals(MAX_MEMORY_SIZE + 1, content.length());
+            assertArrayEquals(b, read(content));
+            assertEquals(1, tmp.getRoot().list().length);
+        } finally {
+            content.close();
+        }
+        // the temporary file is deleted.
+        assertEquals(0, tmp.getRoot().list().length);
+    }
+
+    @Test
+    public void testLargerThanBuffer() throws Throwable {
+        byte[] b = content(BufferPool.DEFAULT_BUFFER_SIZE * 2 + 3);
+        SpooledContent content = spool(b);
+        try {
+            assertTrue(content.inFile());
+            assertEquals(b.length, content.length());
+            assertArrayEquals(b, read(content));
+        } finally {
+            content.close();
+        }
+    }
+
+    @Test
+    public void testEmpty() throws Throwable {
+        SpooledContent content = spool(new byte[0]);
+        try {
+            assertFalse(content.inFile());
+            assertEquals(0, content.length());
+            assertEquals(-1, content.open().read());
+        } finally {
+            content.close();
+        }
+    }
+
+    @Test
+    public void testInputNotClosed() throws Throwable {
+        final boolean[] closed = new boolean[] { false };
+        InputStream in = new ByteArrayInputStream(content(MAX_MEMORY_SIZE + 1)) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        };
+        SpooledContent.spool(in, MAX_MEMORY_SIZE, tmp.getRoot()).close();
+        assertFalse(closed[0]);
+        assertEquals(0, tmp.getRoot().list().length);
+    }
+
+}
@@ -0,0 +1,152 @@
+package io.github.xtman.io.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StreamUtilsTest {
+
+    private static final long LENGTH_3GB = 3L * 1024L * 1024L * 1024L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * Input of the specified length. The bytes are not written into the
+     * buffer.
+     */
+    private static class NullInputStream extends InputStream {
+
+        private long _remaining;
+
+        NullInputStream(long length) {
+            _remaining = length;
+        }
+
+        @Override
+        public int read() {
+            if (_remaining <= 0) {
+                return -1;
+            }
+            _remaining--;
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (_remaining <= 0) {
+                return -1;
+            }
+            int n = (int) Math.min(len, _remaining);
+            _remaining -= n;
+            return n;
+        }
+    }
+
+    private static class NullOutputStream extends OutputStream {
+
+        long written;
+
+        @Override
+        public void write(int b) {
+            written++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            written += len;
+        }
+    }
+
+    private File file(String name, byte[] content) throws Throwable {
+        File f = tmp.newFile(name);
+        Files.write(f.toPath(), content);
+        return f;
+    }
+
+    private static byte[] content(int length) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = (byte) (i * 31);
+        }
+        return b;
+    }
+
+    @Test
+    public void testTransferPast2GB() throws Throwable {
+        NullOutputStream out = new NullOutputStream();
+        assertEquals(LENGTH_3GB, StreamUtils.transfer(new NullInputStream(LENGTH_3GB), -1, out));
+        assertEquals(LENGTH_3GB, out.written);
+    }
+
+    @Test
+    public void testCopyLengthPast2GB() throws Throwable {
+        NullOutputStream out = new NullOutputStream();
+        // the input is longer: only the specified length is copied.
+        StreamUtils.copy(new NullInputStream(LENGTH_3GB + 10), LENGTH_3GB, out);
+        assertEquals(LENGTH_3GB, out.written);
+
+        out = new NullOutputStream();
+        assertEquals(LENGTH_3GB, StreamUtils.transfer(new NullInputStream(LENGTH_3GB), LENGTH_3GB + 10, out));
+        assertEquals(LENGTH_3GB, out.written);
+    }
+
+    @Test
+    public void testTransferFileToFile() throws Throwable {
+        byte[] b = content(100000);
+        File src = file("src", b);
+        File dst = tmp.newFile("dst");
+        FileInputStream in = new FileInputStream(src);
+        try {
+            FileOutputStream out = new FileOutputStream(dst);
+            try {
+                assertEquals(10, StreamUtils.skip(in, 10));
+                assertEquals(50000, StreamUtils.transfer(in, 50000, out));
+                // the input is positioned after the bytes copied.
+                assertEquals(b[50010], (byte) in.read());
+                assertEquals(b.length - 50011, StreamUtils.transfer(in, -1, out));
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        byte[] expected = new byte[b.length - 11];
+        System.arraycopy(b, 10, expected, 0, 50000);
+        System.arraycopy(b, 50011, expected, 50000, b.length - 50011);
+        assertArrayEquals(expected, Files.readAllBytes(dst.toPath()));
+    }
+
+    @Test
+    public void testTransferFileToStream() throws Throwable {
+        // larger than a pooled buffer.
+        byte[] b = content(BufferPool.DEFAULT_BUFFER_SIZE * 3 + 7);
+        File src = file("src", b);
+        FileInputStream in = new FileInputStream(src);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(BufferPool.DEFAULT_BUFFER_SIZE + 1, StreamUtils.transfer(in, BufferPool.DEFAULT_BUFFER_SIZE + 1,
+                    out));
+            assertArrayEquals(Arrays.copyOf(b, BufferPool.DEFAULT_BUFFER_SIZE + 1), out.toByteArray());
+            out.reset();
+            // past the end of the file.
+            assertEquals(b.length - BufferPool.DEFAULT_BUFFER_SIZE - 1, StreamUtils.transfer(in, b.length, out));
+            assertArrayEquals(Arrays.copyOfRange(b, BufferPool.DEFAULT_BUFFER_SIZE + 1, b.length), out.toByteArray());
+        } finally {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+package io.github.xtman.ssh.client.jsch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.github.xtman.ssh.client.FileAttrs;
+
+public class FindListingTest {
+
+    private static final String OUTPUT = "644 10 1500000000.1234567890 1500000001.0000000000 a.txt\0"
+            + "600 0 1500000002 1500000003 dir/with space/b c.txt\0"
+            + "755 12345678901 1500000004.9999999999 1500000005.5 dir/new\nline\0";
+
+    private static void assertListing(List<FileAttrs> files) {
+        assertEquals(3, files.size());
+
+        FileAttrs a = files.get(0);
+        assertEquals("a.txt", a.path());
+        assertEquals(Integer.valueOf(0100644), a.mode());
+        assertTrue(a.isRegularFile());
+        assertEquals(10, a.length());
+        assertEquals(Integer.valueOf(1500000000), a.mtime());
+        assertEquals(Integer.valueOf(1500000001), a.atime());
+
+        FileAttrs b = files.get(1);
+        assertEquals("dir/with space/b c.txt", b.path());
+        assertEquals(Integer.valueOf(0100600), b.mode());
+        assertEquals(0, b.length());
+        assertEquals(Integer.valueOf(1500000002), b.mtime());
+        assertEquals(Integer.valueOf(1500000003), b.atime());
+
+        FileAttrs c = files.get(2);
+        assertEquals("dir/new\nline", c.path());
+        assertEquals(Integer.valueOf(0100755), c.mode());
+        assertEquals(12345678901L, c.length());
+        // the fraction is truncated.
+        assertEquals(Integer.valueOf(1500000004), c.mtime());
+        assertEquals(Integer.valueOf(1500000005), c.atime());
+    }
+
+    @Test
+    public void testSingleWrite() throws Throwable {
+        FindListing listing = new FindListing(null);
+        byte[] b = OUTPUT.getBytes("UTF-8");
+        listing.write(b, 0, b.length);
+        assertListing(listing.files());
+    }
+
+    @Test
+    public void testSplitWrites() throws Throwable {
+        byte[] b = OUTPUT.getBytes("UTF-8");
+        for (int chunk = 1; chunk <= 17; chunk++) {
+            FindListing listing = new FindListing("UTF-8");
+            for (int off = 0; off < b.length; off += chunk) {
+                listing.write(b, off, Math.min(chunk, b.length - off));
+            }
+            assertListing(listing.files());
+        }
+    }
+
+    @Test
+    public void testByteWrites() throws Throwable {
+        FindListing listing = new FindListing(null);
+        for (byte b : OUTPUT.getBytes("UTF-8")) {
+            listing.write(b);
+        }
+        assertListing(listing.files());
+    }
+
+    @Test
+    public void testMultiByteName() throws Throwable {
+        FindListing listing = new FindListing("UTF-8");
+        byte[] b = "644 1 1 1 café/été.txt\0".getBytes("UTF-8");
+        // split inside the multi-byte characters.
+        for (int off = 0; off < b.length; off += 3) {
+            listing.write(b, off, Math.min(3, b.length - off));
+        }
+        assertEquals("café/été.txt", listing.files().get(0).path());
+    }
+
+    @Test
+    public void testEmpty() throws Throwable {
+        assertTrue(new FindListing(null).files().isEmpty());
+    }
+
+    @Test
+    public void testTruncatedRecord() throws Throwable {
+        FindListing listing = new FindListing(null);
+        byte[] b = "644 10 1500000000.0 1500000000.0 a.txt\0".getBytes("UTF-8");
+        listing.write(b, 0, b.length);
+        assertEquals(1, listing.files().size());
+        b = "644 10 1500000000.0 15".getBytes("UTF-8");
+        listing.write(b, 0, b.length);
+        try {
+            listing.files();
+            fail("Truncated record accepted.");
+        } catch (IOException e) {
+            // expected.
+        }
+    }
+
+    @Test
+    public void testMalformedRecords() throws Throwable {
+        String[] records = { "\0", "644 10 1 1\0", "644 10 1 1 \0", "648 10 1 1 a\0", "644 x 1 1 a\0",
+                "644 10 x 1 a\0", "644 10 1 .5 a\0" };
+        for (String record : records) {
+            FindListing listing = new FindListing(null);
+            byte[] b = record.getBytes("UTF-8");
+            try {
+                listing.write(b, 0, b.length);
+                fail("Malformed record accepted: '" + record + "'");
+            } catch (IOException e) {
+                // expected.
+            }
+        }
+    }
+
+}
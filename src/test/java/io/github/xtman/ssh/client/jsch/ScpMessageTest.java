@@ -0,0 +1,133 @@
+package io.github.xtman.ssh.client.jsch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class ScpMessageTest {
+
+    private static InputStream input(String messages) throws IOException {
+        return new ByteArrayInputStream(messages.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void testFileMessage() throws Throwable {
+        ScpMessage msg = new ScpMessage(null);
+        InputStream in = input("C0644 12345678901 a file name.txt\ncontent");
+        assertTrue(msg.read(in));
+        assertEquals(ScpMessage.FILE, msg.type());
+        assertEquals(0644, msg.mode());
+        assertEquals(12345678901L, msg.length());
+        assertEquals("a file name.txt", msg.name());
+        // the content is not consumed.
+        assertEquals('c', in.read());
+    }
+
+    @Test
+    public void testEncode() throws Throwable {
+        assertEquals("C0644 10 a b\n", ScpMessage.fileMessage(0100644, 10, "a b"));
+        assertEquals("D0755 0 d\n", ScpMessage.directoryMessage(040755, "d"));
+        assertEquals("T1500000000 0 1500000001 0\n", ScpMessage.timeMessage(1500000000, 1500000001));
+        ScpMessage msg = new ScpMessage("UTF-8");
+        assertTrue(msg.read(input(ScpMessage.fileMessage(0600, 0, " é "))));
+        assertEquals(0600, msg.mode());
+        assertEquals(0, msg.length());
+        assertEquals(" é ", msg.name());
+    }
+
+    @Test
+    public void testSequence() throws Throwable {
+        ScpMessage msg = new ScpMessage(null);
+        InputStream in = input("D0755 0 dir\nT1500000000 0 1500000001 0\nC0600 3 f 1\nabcE\n\02no such file\n");
+        assertTrue(msg.read(in));
+        assertEquals(ScpMessage.DIRECTORY, msg.type());
+        assertEquals(0755, msg.mode());
+        assertEquals("dir", msg.name());
+
+        assertTrue(msg.read(in));
+        assertEquals(ScpMessage.TIME, msg.type());
+        assertEquals(1500000000, msg.mtime());
+        assertEquals(1500000001, msg.atime());
+        assertNull(msg.name());
+
+        assertTrue(msg.read(in));
+        assertEquals(ScpMessage.FILE, msg.type());
+        assertEquals(0600, msg.mode());
+        assertEquals(3, msg.length());
+        assertEquals("f 1", msg.name());
+        assertEquals(3, in.skip(3));
+
+        assertTrue(msg.read(in));
+        assertEquals(ScpMessage.END, msg.type());
+        assertNull(msg.name());
+
+        assertTrue(msg.read(in));
+        assertEquals(ScpMessage.ERROR, msg.type());
+        assertEquals("no such file", msg.name());
+
+        assertFalse(msg.read(in));
+    }
+
+    @Test
+    public void testBufferReuse() throws Throwable {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            name.append((char) ('a' + i % 26));
+        }
+        ScpMessage msg = new ScpMessage(null);
+        InputStream in = input("C0644 1 " + name + "\nC0644 2 b\nC0644 3 " + name.substring(0, 1500) + "\n");
+        assertTrue(msg.read(in));
+        assertEquals(name.toString(), msg.name());
+        // the shorter message does not keep the end of the longer one.
+        assertTrue(msg.read(in));
+        assertEquals(2, msg.length());
+        assertEquals("b", msg.name());
+        assertEquals("C0644 2 b", msg.toString());
+        assertTrue(msg.read(in));
+        assertEquals(3, msg.length());
+        assertEquals(name.substring(0, 1500), msg.name());
+    }
+
+    @Test
+    public void testTooLong() throws Throwable {
+        StringBuilder sb = new StringBuilder("C0644 1 ");
+        while (sb.length() <= 65536) {
+            sb.append('x');
+        }
+        try {
+            new ScpMessage(null).read(input(sb.append('\n').toString()));
+            fail("Too long message accepted.");
+        } catch (IOException e) {
+            // expected.
+        }
+    }
+
+    @Test
+    public void testMalformed() throws Throwable {
+        String[] messages = { "\n", "X\n", "C0644 10\n", "C0644 10 \n", "C0644  a\n", "C0648 10 a\n",
+                "C0644 -1 a\n", "C0644 1x a\n", "C0644 99999999999999999999 a\n", "C 10 a\n", "T1 0\n",
+                "T1 0 x 0\n", "D0755\n" };
+        for (String message : messages) {
+            ScpMessage msg = new ScpMessage(null);
+            try {
+                msg.read(input(message));
+                fail("Malformed message accepted: '" + message + "'");
+            } catch (IOException e) {
+                // expected.
+            }
+            // the next message is read from a clean state.
+            assertTrue(msg.read(input("C0644 5 ok\n")));
+            assertEquals(5, msg.length());
+            assertEquals("ok", msg.name());
+        }
+    }
+
+}